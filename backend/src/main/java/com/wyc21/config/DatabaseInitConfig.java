@@ -3,7 +3,7 @@ package com.wyc21.config;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Configuration;
-import com.wyc21.service.DatabaseInitService;
+import com.wyc21.service.SchemaMigrationService;
 import lombok.extern.slf4j.Slf4j;
 
 @Configuration
@@ -11,11 +11,11 @@ import lombok.extern.slf4j.Slf4j;
 public class DatabaseInitConfig implements CommandLineRunner {
 
     @Autowired
-    private DatabaseInitService databaseInitService;
+    private SchemaMigrationService schemaMigrationService;
 
     @Override
     public void run(String... args) {
-        log.info("开始检查数据库初始化状态...");
-        databaseInitService.initializeDatabase();
+        log.info("开始检查数据库迁移...");
+        schemaMigrationService.migrate();
     }
-}
\ No newline at end of file
+}
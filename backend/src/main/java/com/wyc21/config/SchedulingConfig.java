@@ -2,6 +2,7 @@ package com.wyc21.config;
 
 import com.wyc21.service.impl.OrderServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
@@ -20,12 +21,15 @@ public class SchedulingConfig implements SchedulingConfigurer {
     @Autowired
     private OrderServiceImpl orderService;
 
+    @Value("${order.expire.sweep-interval-ms:600000}")
+    private long sweepIntervalMillis;
+
     private ScheduledExecutorService executor;
 
     @Override
     public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
-        // 配置线程池
-        executor = Executors.newScheduledThreadPool(1);
+        // 配置线程池：库存落库、过期订单轮询等任务互不阻塞
+        executor = Executors.newScheduledThreadPool(4);
         taskRegistrar.setScheduler(executor);
     }
 
@@ -33,11 +37,11 @@ public class SchedulingConfig implements SchedulingConfigurer {
     public void startScheduledTasks() {
         // 应用完全启动后，等待10秒再开始执行定时任务
         executor.schedule(() -> {
-            // 开始定时执行任务
+            // 过期订单由延迟队列实时处理，这里只做低频兜底扫描
             executor.scheduleWithFixedDelay(
                 () -> orderService.checkExpiredOrders(),
                 0,  // 初始延迟0秒
-                1000000, // 每次执行间隔1000秒
+                sweepIntervalMillis,
                 TimeUnit.MILLISECONDS
             );
         }, 10, TimeUnit.SECONDS);
@@ -2,9 +2,9 @@ package com.wyc21.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.web.cors.CorsConfiguration;
@@ -13,6 +13,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import java.util.Arrays;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import com.wyc21.security.JwtAuthenticationFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,11 +27,6 @@ public class SecurityConfig {
 
         private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
 
-        @Bean
-        public BCryptPasswordEncoder passwordEncoder() {
-                return new BCryptPasswordEncoder();
-        }
-
         @Bean
         public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
                 http
@@ -54,15 +50,31 @@ public class SecurityConfig {
                                 .sessionManagement(session -> session
                                                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                                 .authorizeHttpRequests(auth -> auth
+                                                // 异步结果（CompletableFuture、StreamingResponseBody）和错误页的再次分派：
+                                                // 原始请求已经过鉴权，JWT 过滤器不会在再次分派时重新设置认证信息
+                                                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR)
+                                                .permitAll()
+                                                // 批量导入需要登录，须在 /products/{id} 之前匹配
+                                                .requestMatchers(HttpMethod.POST, "/products/import")
+                                                .authenticated()
+                                                // 按评论表重新计算评分会扫描评论表，只允许管理员调用
+                                                .requestMatchers(HttpMethod.POST, "/products/{productId}/reviews/recompute")
+                                                .hasRole("ADMIN")
                                                 // 允许匿名访问的路径
                                                 .requestMatchers(
                                                                 "/products/images/**",
                                                                 "/products/search",
+                                                                "/products/search/cursor",
                                                                 "/products/{productId}/reviews",
+                                                                "/products/{productId}/reviews/cursor",
+                                                                "/products/{productId}/reviews/summary",
                                                                 "/products/{id}",
                                                                 "/products",
                                                                 "/users/login",
                                                                 "/users/register",
+                                                                "/users/refresh",
+                                                                "/auth/refresh",
+                                                                "/payments/callback",
                                                                 "/error",
                                                                 "/swagger-ui/**",
                                                                 "/v3/api-docs/**",
@@ -78,7 +90,6 @@ public class SecurityConfig {
                                                                 "/cart/**",
                                                                 "/orders/**",
                                                                 "/users/info",
-                                                                "/users/refresh",
                                                                                 "/users/update","/users/password"
                                                                )
                                                 .authenticated()
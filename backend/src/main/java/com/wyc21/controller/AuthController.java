@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/auth")
@@ -27,37 +28,38 @@ public class AuthController {
      * 用户登录
      */
     @PostMapping("/login")
-    public JsonResult<Map<String, String>> login(@RequestBody User user) {
+    public CompletableFuture<JsonResult<Map<String, String>>> login(@RequestBody User user) {
         log.info("Attempting login for user: {}", user.getUsername());
 
-        Map<String, String> tokens = tokenService.login(user.getUsername(), user.getPassword());
-        if (tokens == null) {
-            log.warn("Login failed for user: {}", user.getUsername());
-            return new JsonResult<>(401, null, "用户名或密码错误");
-        }
+        return tokenService.login(user.getUsername(), user.getPassword()).thenApply(tokens -> {
+            if (tokens == null) {
+                log.warn("Login failed for user: {}", user.getUsername());
+                return new JsonResult<>(401, null, "用户名或密码错误");
+            }
 
-        log.info("Login successful for user: {}", user.getUsername());
-        return new JsonResult<>(200, tokens, "登录成功");
+            log.info("Login successful for user: {}", user.getUsername());
+            return new JsonResult<>(200, tokens, "登录成功");
+        });
     }
 
     /**
      * 刷新 token
      */
     @PostMapping("/refresh")
-    public JsonResult<String> refreshToken(@RequestBody Map<String, String> request) {
+    public JsonResult<Map<String, String>> refreshToken(@RequestBody Map<String, String> request) {
         String refreshToken = request.get("refreshToken");
-        log.info("Received我是续签token,续签的是哈哈哈-- refresh token: {}", refreshToken);
         if (refreshToken == null) {
             return new JsonResult<>(400, null, "Refresh token is required");
         }
 
-        String newAccessToken = tokenService.refreshAccessToken(refreshToken);
-        if (newAccessToken == null) {
-            log.warn("Invalid refresh token: {}", refreshToken);
+        // 刷新令牌只能使用一次，返回新的访问令牌和刷新令牌
+        Map<String, String> tokens = tokenService.refresh(refreshToken);
+        if (tokens == null) {
+            log.warn("Invalid refresh token");
             return new JsonResult<>(401, null, "Invalid refresh token");
         }
 
-        return new JsonResult<>(200, newAccessToken, "Token refreshed successfully");
+        return new JsonResult<>(200, tokens, "Token refreshed successfully");
     }
 
     /**
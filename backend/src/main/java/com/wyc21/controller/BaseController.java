@@ -15,6 +15,7 @@ import com.wyc21.service.ex.UserNotFoundException;
 import com.wyc21.service.ex.PasswordNotMatchException;
 import com.wyc21.service.ex.TokenExpiredException;
 import com.wyc21.service.ex.TokenInvalidException;
+import com.wyc21.service.ex.TooManyRequestsException;
 
 // 表示基类
 public class BaseController {
@@ -48,6 +49,10 @@ public class BaseController {
             result.setStatus(4002);
             result.setMessage("令牌无效，请重新登录");
             httpStatus = HttpStatus.UNAUTHORIZED;
+        } else if (e instanceof TooManyRequestsException) {
+            result.setStatus(429);
+            result.setMessage(e.getMessage());
+            httpStatus = HttpStatus.TOO_MANY_REQUESTS;
         } else if (e instanceof InsertException) {
             result.setStatus(5000);
             result.setMessage("注册时发生未知错误");
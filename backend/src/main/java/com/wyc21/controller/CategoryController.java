@@ -1,15 +1,15 @@
 package com.wyc21.controller;
 
-import com.wyc21.entity.Category;
+import com.wyc21.entity.CategoryTree;
 import com.wyc21.service.CategoryService;
-import com.wyc21.util.JsonResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/categories")
 public class CategoryController extends BaseController {
@@ -17,9 +17,14 @@ public class CategoryController extends BaseController {
     @Autowired
     private CategoryService categoryService;
 
+    // 直接输出预先序列化的分类树；If-None-Match 与 ETag 一致时返回 304
     @GetMapping
-    public JsonResult<List<Category>> getCategories() {
-        List<Category> categories = categoryService.getCategoryTree();
-        return new JsonResult<>(OK, categories);
+    public ResponseEntity<byte[]> getCategories() {
+        CategoryTree tree = categoryService.getSnapshot();
+        return ResponseEntity.ok()
+                .eTag(tree.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(tree.getJson());
     }
-}
\ No newline at end of file
+}
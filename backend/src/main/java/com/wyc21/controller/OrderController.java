@@ -4,7 +4,16 @@ import com.wyc21.entity.Order;
 import com.wyc21.entity.CartItem;
 import com.wyc21.service.IOrderService;
 import com.wyc21.service.ICartService;
+import com.wyc21.service.ex.AccessDeniedException;
 import com.wyc21.util.JsonResult;
+import com.wyc21.entity.CursorPage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +42,9 @@ public class OrderController extends BaseController {
     @Autowired
     private ICartService cartService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping("/create")
     public JsonResult<Order> createOrder(@RequestBody Map<String, Object> request, HttpServletRequest httpRequest) {
         String userId = httpRequest.getAttribute("uid").toString();
@@ -100,11 +112,41 @@ public class OrderController extends BaseController {
         }
     }
 
+    // 全部订单：按页查询并逐页写出，响应格式与 JsonResult<List<Order>> 相同
     @GetMapping
-    public JsonResult<List<Order>> getOrders(HttpServletRequest request) {
+    public ResponseEntity<StreamingResponseBody> getOrders(HttpServletRequest request) {
+        String userId = request.getAttribute("uid").toString();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeNumberField("status", OK);
+                generator.writeNullField("message");
+                generator.writeArrayFieldStart("data");
+                orderService.streamOrdersByUserId(userId, orders -> {
+                    try {
+                        for (Order order : orders) {
+                            objectMapper.writeValue(generator, order);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // 游标分页：传入上一页返回的 nextCursor 获取下一页，第一页不传
+    @GetMapping("/page")
+    public JsonResult<CursorPage<Order>> getOrdersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            HttpServletRequest request) {
         String userId = request.getAttribute("uid").toString();
-        List<Order> orders = orderService.getOrdersByUserId(userId);
-        return new JsonResult<>(OK, orders);
+        return new JsonResult<>(OK, orderService.getOrdersByCursor(userId, cursor, size));
     }
 
     @GetMapping("/{orderId}")
@@ -120,19 +162,13 @@ public class OrderController extends BaseController {
             HttpServletRequest request) {
         try {
             String userId = request.getAttribute("uid").toString();
-            if (userId == null) {
-                return new JsonResult<>(403, false, "未授权的访问");
-            }
-
-            // 验证订单所属权
-            Order order = orderService.getOrder(orderId);
-            if (order == null || !order.getUserId().equals(userId)) {
-                return new JsonResult<>(403, false, "无权访问此订单");
-            }
 
+            // 订单归属在支付时一并校验，不再单独查询订单
             String paymentId = paymentInfo.get("paymentId");
-            boolean success = orderService.payOrder(orderId, paymentId);
+            boolean success = orderService.payOrder(orderId, paymentId, userId);
             return new JsonResult<>(OK, success, success ? "支付成功" : "支付失败");
+        } catch (AccessDeniedException e) {
+            return new JsonResult<>(403, false, "无权访问此订单");
         } catch (Exception e) {
             log.error("支付订单时发生错误: ", e);
             return new JsonResult<>(500, false, "支付失败：" + e.getMessage());
@@ -204,7 +240,8 @@ public class OrderController extends BaseController {
         log.info("购物车项ID2233: {}", request.getCartItemIds());
 
         try {
-            Order order = orderService.createOrderFromCart(userId, request.getCartItemIds());
+            Order order = orderService.createOrderFromCart(userId,
+                    (String) httpRequest.getAttribute("username"), request.getCartItemIds());
             return new JsonResult<>(OK, order, "订单创建成功");
         } catch (Exception e) {
             log.error("创建订单失败: ", e);
@@ -0,0 +1,39 @@
+package com.wyc21.controller;
+
+import com.wyc21.service.PaymentCallbackService;
+import com.wyc21.util.JsonResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/payments")
+public class PaymentController extends BaseController {
+
+    @Autowired
+    private PaymentCallbackService paymentCallbackService;
+
+    /**
+     * 支付网关回调：校验签名后去重入队即返回，订单状态由后台批量更新。
+     * 重复回调同样返回成功，让网关停止重试。
+     */
+    @PostMapping("/callback")
+    public JsonResult<Boolean> callback(@RequestBody Map<String, String> callback,
+            @RequestHeader(value = "X-Payment-Signature", required = false) String signature) {
+        if (!paymentCallbackService.isEnabled()) {
+            return new JsonResult<>(503, false, "支付回调未启用");
+        }
+        String orderId = callback.get("orderId");
+        String paymentId = callback.get("paymentId");
+        if (!paymentCallbackService.verifySignature(orderId, paymentId, signature)) {
+            log.warn("支付回调签名无效: orderId={}, paymentId={}", orderId, paymentId);
+            return new JsonResult<>(401, false, "签名无效");
+        }
+
+        boolean queued = paymentCallbackService.accept(orderId, paymentId);
+        return new JsonResult<>(OK, queued, queued ? "已受理" : "重复回调");
+    }
+}
@@ -3,22 +3,26 @@ package com.wyc21.controller;
 import com.wyc21.entity.Product;
 import com.wyc21.entity.ProductReview;
 import com.wyc21.entity.PageResult;
+import com.wyc21.entity.CursorPage;
+import com.wyc21.entity.ProductImportResult;
+import com.wyc21.entity.RatingSummary;
 import com.wyc21.service.ProductService;
+import com.wyc21.service.BrowseHistoryService;
+import com.wyc21.service.ProductImportService;
+import com.wyc21.util.ImageStore;
 import com.wyc21.util.JsonResult;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -27,6 +31,7 @@ import com.wyc21.mapper.ProductMapper;
 import com.wyc21.service.ex.ProductNotFoundException;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/products")
@@ -41,15 +46,13 @@ public class ProductController extends BaseController {
     private ProductMapper productMapper;
 
     @Autowired
-    private ResourceLoader resourceLoader; // 用于加载资源
+    private ImageStore imageStore;
 
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private BrowseHistoryService browseHistoryService;
 
     @Autowired
-    private ObjectMapper objectMapper;
-
-    private static final String BROWSE_HISTORY_KEY = "browse:history:";
+    private ProductImportService productImportService;
 
     @GetMapping
     public PageResult<Product> getProducts(
@@ -60,57 +63,48 @@ public class ProductController extends BaseController {
             @RequestParam(name = "pageSize", defaultValue = "10") int limit) {
         log.info("Fetching products - categoryId: {}, keyword: {}, page: {}, size: {}",
                 categoryId, keyword, page, limit);
-        return productService.getProducts(categoryId, keyword, page, limit, imageUrl);
+        PageResult<Product> result = productService.getProducts(categoryId, keyword, page, limit, imageUrl);
+        result.getList().forEach(this::fillImageUrls);
+        return result;
+    }
+
+    // 游标分页：传入上一页返回的 nextCursor 获取下一页，第一页不传
+    @GetMapping("/cursor")
+    public CursorPage<Product> getProductsByCursor(
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        CursorPage<Product> result = productService.getProductsByCursor(categoryId, cursor, size, withTotal);
+        result.getList().forEach(this::fillImageUrls);
+        return result;
     }
 
     @GetMapping("/{id}")
     public JsonResult<Map<String, Object>> getProduct(
             @PathVariable Long id,
-            @RequestHeader(value = "X-Device-Fingerprint", required = false) String fingerprint) {
+            @RequestHeader(value = "X-Device-Fingerprint", required = false) String fingerprint,
+            HttpServletRequest request) {
         // 获取商品基本信息
         Product product = productService.getProduct(String.valueOf(id));
 
-        // 记录浏览历史到Redis
-        if (fingerprint != null) {
-            String key = BROWSE_HISTORY_KEY + fingerprint;
-            double score = System.currentTimeMillis();
-
-            // 存储商品信息到Redis
-            Map<String, String> productInfo = new HashMap<>();
-            productInfo.put("id", String.valueOf(id));
-            productInfo.put("name", product.getName());
-            productInfo.put("price", String.valueOf(product.getPrice()));
-            productInfo.put("imageUrl", product.getImageUrl());
-            productInfo.put("description", product.getDescription());
-
-            // 将商品信息转换为JSON字符串
-            try {
-                String value = objectMapper.writeValueAsString(productInfo);
-                redisTemplate.opsForZSet().add(key, value, score);
-            } catch (JsonProcessingException e) {
-                log.error("存储商品信息到Redis失败: {}", e.getMessage());
-                // 可以选择返回一个错误响应
-            }
+        // 记录浏览历史，只放入内存缓冲区，不在请求线程中访问Redis
+        if (fingerprint != null && product != null) {
+            Object uid = request.getAttribute("uid");
+            browseHistoryService.addBrowseHistory(uid != null ? uid.toString() : null, fingerprint,
+                    String.valueOf(id));
         }
 
         // 获取商品所有图片
         List<String> images = productMapper.findProductImages(id);
 
         if (product != null) {
-            // 补充图片的完整访问路径
-            String imageUrl = product.getImageUrl();
-            if (imageUrl != null && !imageUrl.startsWith("http")) {
-                product.setImageUrl("http://localhost:8088/products" + imageUrl);
-            }
+            // 补充图片的完整访问路径（带内容哈希，可长期缓存）和各档位缩略图
+            fillImageUrls(product);
 
             // 处理所有图片的URL
             List<String> fullImageUrls = images.stream()
-                    .map(img -> {
-                        if (img != null && !img.startsWith("http")) {
-                            return "http://localhost:8088/products" + img;
-                        }
-                        return img;
-                    })
+                    .map(imageStore::url)
                     .collect(Collectors.toList());
 
             // 构建返回结果
@@ -133,17 +127,47 @@ public class ProductController extends BaseController {
         return new JsonResult<>(OK, reviews);
     }
 
+    // 评分汇总：评论数、平均分和 1~5 星分布
+    @GetMapping("/{productId}/reviews/summary")
+    public JsonResult<RatingSummary> getRatingSummary(@PathVariable String productId) {
+        return new JsonResult<>(OK, productService.getRatingSummary(productId));
+    }
+
+    // 按评论表重新计算商品评分（修复聚合数据），仅管理员可调用，见 SecurityConfig
+    @PostMapping("/{productId}/reviews/recompute")
+    public JsonResult<Integer> recomputeRatings(@PathVariable String productId) {
+        return new JsonResult<>(OK, productService.recomputeRatings(productId));
+    }
+
+    @GetMapping("/{productId}/reviews/cursor")
+    public JsonResult<CursorPage<ProductReview>> getProductReviewsByCursor(
+            @PathVariable String productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        CursorPage<ProductReview> reviews = productService.getProductReviewsByCursor(productId, cursor, size, withTotal);
+        return new JsonResult<>(OK, reviews);
+    }
+
+    // 图片从启动时建立的索引中查找，支持条件请求和 Range 请求；带 w 参数时返回该宽度的缩略图，
+    // 缩略图暂时无法生成时返回原图且不允许缓存
     @GetMapping("/images/{imageName:.+}")
-    public ResponseEntity<Resource> getImage(@PathVariable String imageName) {
-        try {
-            Resource resource = resourceLoader.getResource("classpath:images/" + imageName);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, "image/jpeg") // 添加正确的Content-Type
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    public void getImage(@PathVariable String imageName,
+            @RequestParam(value = "v", required = false) String version,
+            @RequestParam(value = "w", required = false) Integer width,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        ImageStore.Image original = imageStore.get(imageName);
+        if (original == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ImageStore.Image image = width != null && width > 0 ? imageStore.get(original, width) : original;
+        if (image == null) {
+            imageStore.serveFallback(original, request, response);
+            return;
         }
+        imageStore.serve(image, original.getHash().equals(version), request, response);
     }
 
     // 上架商品
@@ -157,6 +181,20 @@ public class ProductController extends BaseController {
         return ResponseEntity.ok("商品上架成功");
     }
 
+    // 批量导入商品：请求体为 JSON Lines（每行一个商品）或 CSV（首行为列名），边读取边分批写入
+    @PostMapping("/import")
+    public JsonResult<ProductImportResult> importProducts(
+            @RequestParam(value = "format", required = false) String format,
+            HttpServletRequest request) throws IOException {
+        boolean csv = format != null
+                ? "csv".equalsIgnoreCase(format)
+                : request.getContentType() != null && request.getContentType().contains("csv");
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+            return new JsonResult<>(OK, productImportService.importProducts(reader, csv));
+        }
+    }
+
     // 更新商品
     @PutMapping("/update")
     public ResponseEntity<?> updateProduct(@RequestBody Product product) {
@@ -180,12 +218,24 @@ public class ProductController extends BaseController {
             // URL 解码
             String decodedKeyword = java.net.URLDecoder.decode(keyword, "UTF-8");
             PageResult<Product> result = productService.searchProducts(decodedKeyword, page, size);
+            result.getList().forEach(this::fillImageUrls);
             return ResponseEntity.ok(result);
         } catch (java.io.UnsupportedEncodingException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // 游标分页搜索：传入上一页返回的 nextCursor 获取下一页，第一页不传；翻页深度不受页码分页的上限限制
+    @GetMapping("/search/cursor")
+    public CursorPage<Product> searchProductsByCursor(
+            @RequestParam String keyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        CursorPage<Product> result = productService.searchProductsByCursor(keyword, cursor, size);
+        result.getList().forEach(this::fillImageUrls);
+        return result;
+    }
+
     @GetMapping("/my/products")
     public JsonResult<List<Product>> getMyProducts(HttpServletRequest request) {
         String userId = null;
@@ -221,4 +271,10 @@ public class ProductController extends BaseController {
         productService.deleteReview(reviewId, userId);
         return new JsonResult<>(OK);
     }
-}
\ No newline at end of file
+
+    // 图片路径转为完整地址，并补充 srcset，前端不再拼接地址
+    private void fillImageUrls(Product product) {
+        product.setImageSrcset(imageStore.srcset(product.getImageUrl()));
+        product.setImageUrl(imageStore.url(product.getImageUrl()));
+    }
+}
@@ -5,19 +5,23 @@ import org.springframework.web.bind.annotation.*;
 import com.wyc21.entity.User;
 import com.wyc21.service.IUserService;
 import com.wyc21.util.JsonResult;
-import com.wyc21.util.RedisUtil;
 import com.wyc21.util.CookieUtil;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.wyc21.service.TokenService;
 import com.wyc21.service.BrowseHistoryService;
 import com.wyc21.entity.BrowseHistory;
 import com.wyc21.model.PageResult;
+import com.wyc21.entity.CursorPage;
 import com.wyc21.service.ex.PasswordNotMatchException;
+import com.wyc21.service.ex.TooManyRequestsException;
+import io.jsonwebtoken.Claims;
 
 @RestController
 @RequestMapping("/users")
@@ -26,9 +30,6 @@ public class UserController extends BaseController {
     @Autowired
     private IUserService userService;
 
-    @Autowired
-    private RedisUtil redisUtil;
-
     @Autowired
     private TokenService tokenService; // 处理 token 逻辑
     @Autowired
@@ -39,13 +40,13 @@ public class UserController extends BaseController {
     private static final Logger log = LoggerFactory.getLogger(UserController.class);
 
     @PostMapping("/register")
-    public JsonResult<Void> register(@RequestBody User user) {
+    public CompletableFuture<JsonResult<Void>> register(@RequestBody User user) {
         // 参数验证
         if (user.getUsername() == null || user.getUsername().trim().isEmpty()) {
-            return new JsonResult<>(400, null, "用户名不能为空");
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "用户名不能为空"));
         }
         if (user.getPassword() == null || user.getPassword().trim().isEmpty()) {
-            return new JsonResult<>(400, null, "密码不能为空");
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "密码不能为空"));
         }
 
         // 设置默认值
@@ -54,40 +55,38 @@ public class UserController extends BaseController {
         user.setAvatar("default.jpg");
         user.setGender(0);
 
-        userService.reg(user);
-        return new JsonResult<>(OK, null, "注册成功");
+        return userService.reg(user).thenApply(v -> new JsonResult<>(OK, null, "注册成功"));
     }
 
     @PostMapping("/login")
-    public JsonResult<User> login(@RequestBody User user,
+    public CompletableFuture<JsonResult<User>> login(@RequestBody User user,
             HttpServletRequest request,
             HttpServletResponse response,
             @RequestHeader(value = "X-Device-Fingerprint", required = false) String fingerprint) {
         // 参数验证
         if (user.getUsername() == null || user.getUsername().trim().isEmpty()) {
-            return new JsonResult<>(400, null, "用户名不能为空");
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "用户名不能为空"));
         }
         if (user.getPassword() == null || user.getPassword().trim().isEmpty()) {
-            return new JsonResult<>(400, null, "密码不能为空");
-        }
-
-        // 登录并获取完整的用户信息
-        User data = userService.login(user.getUsername(), user.getPassword(), request, response);
-
-        // 登录成功后，关联用户ID和浏览器指纹
-        if (fingerprint != null) {
-            browseHistoryService.associateUserWithFingerprint(data.getUid(), fingerprint);
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "密码不能为空"));
         }
 
-        return new JsonResult<>(OK, data, "登录成功");
+        // 登录并获取完整的用户信息，密码校验期间不占用请求线程
+        return userService.login(user.getUsername(), user.getPassword(), request, response).thenApply(data -> {
+            // 登录成功后，关联用户ID和浏览器指纹
+            if (fingerprint != null) {
+                browseHistoryService.associateUserWithFingerprint(data.getUid(), fingerprint);
+            }
+            return new JsonResult<>(OK, data, "登录成功");
+        });
     }
 
     @PostMapping("/logout")
     public JsonResult<Void> logout(HttpServletRequest request, HttpServletResponse response) {
-        String uid = request.getAttribute("uid").toString(); // 改为String类型
-        if (uid != null) {
-            // 从Redis中删除token
-            redisUtil.deleteToken("token:" + uid);
+        Claims claims = (Claims) request.getAttribute("claims");
+        if (claims != null) {
+            // 结束会话并注销当前访问令牌
+            tokenService.revoke(claims);
             // 清除Cookie
             cookieUtil.clearTokenCookie(response);
             return new JsonResult<>(OK, null, "登出成功");
@@ -152,57 +151,64 @@ public class UserController extends BaseController {
     }
 
     @PatchMapping("/password")
-    public JsonResult<Void> updatePassword(@RequestBody Map<String, String> params, HttpServletRequest request) {
-        try {
-            String uid = request.getAttribute("uid").toString();
-            String oldPassword = params.get("oldPassword");
-            String newPassword = params.get("newPassword");
-
-            // 参数验证
-            if (oldPassword == null || oldPassword.trim().isEmpty()) {
-                return new JsonResult<>(400, null, "旧密码不能为空");
-            }
-            if (newPassword == null || newPassword.trim().isEmpty()) {
-                return new JsonResult<>(400, null, "新密码不能为空");
-            }
-
-            // 调用service层更新密码
-            userService.updatePassword(uid, oldPassword, newPassword);
+    public CompletableFuture<JsonResult<Void>> updatePassword(@RequestBody Map<String, String> params,
+            HttpServletRequest request) {
+        String uid = request.getAttribute("uid").toString();
+        String oldPassword = params.get("oldPassword");
+        String newPassword = params.get("newPassword");
 
-            return new JsonResult<>(OK, null, "密码修改成功");
-        } catch (PasswordNotMatchException e) {
-            // 原密码错误的情况
-            return new JsonResult<>(403, null, "原密码错误");
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new JsonResult<>(500, null, "修改密码失败：" + e.getMessage());
+        // 参数验证
+        if (oldPassword == null || oldPassword.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "旧密码不能为空"));
+        }
+        if (newPassword == null || newPassword.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(new JsonResult<>(400, null, "新密码不能为空"));
         }
+
+        // 调用service层更新密码，哈希线程池已满时抛出的异常由统一异常处理返回429
+        return userService.updatePassword(uid, oldPassword, newPassword)
+                .handle((v, e) -> {
+                    if (e == null) {
+                        return new JsonResult<>(OK, null, "密码修改成功");
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof PasswordNotMatchException) {
+                        // 原密码错误的情况
+                        return new JsonResult<>(403, null, "原密码错误");
+                    }
+                    if (cause instanceof TooManyRequestsException) {
+                        return new JsonResult<>(429, null, cause.getMessage());
+                    }
+                    log.error("修改密码失败", cause);
+                    return new JsonResult<>(500, null, "修改密码失败：" + cause.getMessage());
+                });
     }
 
     /**
      * 刷新 token
      */
     @PostMapping("/refresh")
-    public JsonResult<String> refreshToken(@RequestBody Map<String, String> request) {
+    public JsonResult<Map<String, String>> refreshToken(@RequestBody Map<String, String> request) {
         String refreshToken = request.get("refreshToken");
-        log.info("Received我是续签token,续签的是哈哈哈-- refresh token: {}", refreshToken);
         if (refreshToken == null) {
             return new JsonResult<>(400, null, "Refresh token is required");
         }
 
-        String newAccessToken = tokenService.refreshAccessToken(refreshToken);
-        if (newAccessToken == null) {
-            log.warn("Invalid refresh token: {}", refreshToken);
+        // 刷新令牌只能使用一次，返回新的访问令牌和刷新令牌
+        Map<String, String> tokens = tokenService.refresh(refreshToken);
+        if (tokens == null) {
+            log.warn("Invalid refresh token");
             return new JsonResult<>(401, null, "Invalid refresh token");
         }
 
-        return new JsonResult<>(200, newAccessToken, "Token refreshed successfully");
+        return new JsonResult<>(200, tokens, "Token refreshed successfully");
     }
 
     @GetMapping("/browse/history")
     public JsonResult<PageResult<BrowseHistory>> getBrowseHistory(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
             @RequestHeader(value = "X-Device-Fingerprint", required = false) String fingerprint,
             HttpServletRequest request) {
 
@@ -220,7 +226,7 @@ public class UserController extends BaseController {
         PageResult<BrowseHistory> result;
         if (userId != null) {
             // 用户已登录，获取关联的浏览记录
-            result = browseHistoryService.getBrowseHistoryByUserId(userId, page, size);
+            result = browseHistoryService.getBrowseHistoryByUserId(userId, page, size, withTotal);
         } else if (fingerprint != null) {
             // 用户未登录，通过浏览器指纹获取记录
             result = browseHistoryService.getBrowseHistoryByFingerprint(fingerprint, page, size);
@@ -233,4 +239,18 @@ public class UserController extends BaseController {
 
         return new JsonResult<>(OK, result);
     }
+
+    // 游标分页获取已登录用户的浏览记录
+    @GetMapping("/browse/history/cursor")
+    public JsonResult<CursorPage<BrowseHistory>> getBrowseHistoryByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            HttpServletRequest request) {
+        if (request.getAttribute("uid") == null) {
+            return new JsonResult<>(401, null, "用户未登录");
+        }
+        String userId = request.getAttribute("uid").toString();
+        return new JsonResult<>(OK, browseHistoryService.getBrowseHistoryByCursor(userId, cursor, size, withTotal));
+    }
 }
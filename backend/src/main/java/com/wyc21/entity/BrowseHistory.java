@@ -10,4 +10,6 @@ public class BrowseHistory {
     private String userId;
     private String productId;
     private Date browseTime;
+    // 浏览的商品信息，查询浏览记录时批量补全，不落库
+    private Product product;
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.wyc21.entity;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 分类树快照：构建后不再修改，读取时无需加锁；子树、祖先路径和分类名称路径的前缀树在构建时预先计算
+@Getter
+public class CategoryTree {
+    private final long version; // 构建时的分类版本号
+    private final List<Category> roots; // 顶级分类（含子分类），调用方不要修改
+    private final byte[] json; // 预先序列化的分类树接口响应
+    private final String etag; // 响应内容哈希，各节点一致
+    private final Map<String, Category> byId; // 分类ID -> 分类
+    private final Map<String, List<String>> subtreeIds; // 分类ID -> 自身及所有子孙分类ID
+    private final Map<String, List<Category>> ancestorPaths; // 分类ID -> 从顶级分类到自身的路径
+    private final Node trie; // 分类名称前缀树，根节点不对应分类
+
+    public CategoryTree(long version, List<Category> roots, byte[] json, String etag,
+            Map<String, Category> byId, Map<String, List<String>> subtreeIds,
+            Map<String, List<Category>> ancestorPaths, Node trie) {
+        this.version = version;
+        this.roots = Collections.unmodifiableList(roots);
+        this.json = json;
+        this.etag = etag;
+        this.byId = Collections.unmodifiableMap(byId);
+        this.subtreeIds = Collections.unmodifiableMap(subtreeIds);
+        this.ancestorPaths = Collections.unmodifiableMap(ancestorPaths);
+        this.trie = trie;
+    }
+
+    // 按名称路径逐级查找，返回已存在的最长前缀对应的分类ID
+    public List<String> resolve(List<String> names) {
+        List<String> ids = new ArrayList<>(names.size());
+        Node node = trie;
+        for (String name : names) {
+            node = node.children.get(name);
+            if (node == null) {
+                break;
+            }
+            ids.add(node.categoryId);
+        }
+        return ids;
+    }
+
+    // 前缀树节点，只在构建快照时写入
+    public static class Node {
+        private final String categoryId;
+        private final Map<String, Node> children = new HashMap<>();
+
+        public Node(String categoryId) {
+            this.categoryId = categoryId;
+        }
+
+        // 同一父分类下重名时保留先加入的
+        public Node add(String name, String categoryId) {
+            return children.computeIfAbsent(name, k -> new Node(categoryId));
+        }
+    }
+}
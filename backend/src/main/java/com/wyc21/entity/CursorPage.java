@@ -0,0 +1,20 @@
+package com.wyc21.entity;
+
+import java.util.List;
+import lombok.Data;
+
+// 游标分页结果：按 (时间, ID) 定位下一页，不计算偏移量
+@Data
+public class CursorPage<T> {
+    private List<T> list; // 当前页数据列表
+    private String nextCursor; // 下一页游标，没有下一页时为 null
+    private boolean hasMore; // 是否还有下一页
+    private Long total; // 近似总记录数（缓存），未请求时为 null
+
+    public CursorPage(List<T> list, String nextCursor, Long total) {
+        this.list = list;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+        this.total = total;
+    }
+}
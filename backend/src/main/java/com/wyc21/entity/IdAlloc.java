@@ -0,0 +1,12 @@
+package com.wyc21.entity;
+
+import lombok.Data;
+
+// 号段分配记录，对应 wz_id_generator 表
+@Data
+public class IdAlloc {
+    private String idType;
+    private Long currentMaxId;
+    private Integer step;
+    private Integer version;
+}
@@ -14,6 +14,7 @@ public class Product extends BaseEntity {
     private String brand;
     private String tags;
     private String imageUrl;
+    private String imageSrcset; // 各宽度缩略图地址，可直接用于 <img srcset>，只在接口响应中填充
     private BigDecimal rating;
     private Integer reviewCount;
     private Integer isActive;
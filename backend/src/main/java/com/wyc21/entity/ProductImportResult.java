@@ -0,0 +1,25 @@
+package com.wyc21.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+// 商品批量导入结果
+@Data
+public class ProductImportResult {
+    private int total; // 读取的商品行数（不含 CSV 列名行和空行）
+    private int imported; // 成功导入的商品数
+    private int failed; // 校验或写入失败的商品数
+    private long elapsedMillis; // 总耗时
+    private List<Chunk> chunks = new ArrayList<>(); // 每批写入的耗时和吞吐量
+    private List<String> errors = new ArrayList<>(); // 失败原因，超过上限后不再记录
+
+    @Data
+    public static class Chunk {
+        private int index; // 批次序号，从1开始
+        private int rows; // 本批商品数
+        private long millis; // 本批写入耗时
+        private long rowsPerSecond; // 本批吞吐量
+        private boolean success;
+    }
+}
@@ -0,0 +1,14 @@
+package com.wyc21.entity;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+// 商品评分汇总：评论数、平均分和 1~5 星分布，直接读取 wz_products 的聚合列
+@Data
+public class RatingSummary {
+    private String productId;
+    private int reviewCount;
+    private BigDecimal rating; // 平均评分
+    private long ratingSum; // 评分总和（乘以10）
+    private int[] distribution = new int[5]; // distribution[0] 为 1 星评论数，依次到 5 星
+}
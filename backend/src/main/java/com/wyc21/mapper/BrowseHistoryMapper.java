@@ -21,4 +21,12 @@ public interface BrowseHistoryMapper {
                                                 @Param("offset") int offset);
     
     int getCountByUserId(@Param("userId") String userId);
+
+    /**
+     * 游标分页查询浏览记录（按浏览时间、记录ID倒序）
+     */
+    List<BrowseHistory> findBrowseHistoryAfter(@Param("userId") String userId,
+                                               @Param("cursorTime") Date cursorTime,
+                                               @Param("cursorId") String cursorId,
+                                               @Param("limit") int limit);
 }
\ No newline at end of file
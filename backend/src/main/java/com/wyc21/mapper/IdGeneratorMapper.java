@@ -1,5 +1,6 @@
 package com.wyc21.mapper;
 
+import com.wyc21.entity.IdAlloc;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
@@ -9,6 +10,15 @@ public interface IdGeneratorMapper {
                           @Param("currentMaxId") Long currentMaxId);
     
     Long getCurrentMaxId(@Param("idType") String idType);
+
+    /**
+     * 不存在时插入，已存在时保持原值
+     */
+    Integer initIfAbsent(@Param("idType") String idType,
+                         @Param("currentMaxId") Long currentMaxId,
+                         @Param("step") Integer step);
+
+    IdAlloc findByIdType(@Param("idType") String idType);
     
     Integer updateMaxId(@Param("idType") String idType, 
                        @Param("newMaxId") Long newMaxId, 
@@ -31,21 +31,55 @@ public interface OrderMapper {
      */
     int updateOrder(Order order);
 
+    /**
+     * 待支付订单标记为已支付，带版本号校验
+     *
+     * @return 更新的行数，订单已不是待支付或版本号不一致时为0
+     */
+    int markPaid(Order order);
+
     /**
      * 查询过期订单
      */
     List<Order> findExpiredOrders(@Param("currentTime") LocalDateTime currentTime);
 
     /**
-     * 插入订单项
+     * 查询过期未支付的订单ID
+     */
+    List<String> findExpiredOrderIds(@Param("currentTime") LocalDateTime currentTime, @Param("limit") int limit);
+
+    /**
+     * 锁定仍处于待支付状态的订单
+     *
+     * @return 被锁定的订单ID
      */
-    void insertOrderItem(OrderItem orderItem);
+    List<String> lockPendingOrders(@Param("orderIds") List<String> orderIds);
+
+    /**
+     * 批量更新订单状态
+     */
+    int batchUpdateStatus(@Param("orderIds") List<String> orderIds,
+                          @Param("status") String status,
+                          @Param("modifiedUser") String modifiedUser);
 
     /**
      * 查询订单项
      */
     List<OrderItem> findOrderItems(@Param("orderId") String orderId);
 
+    /**
+     * 游标分页查询用户订单（按创建时间、订单ID倒序），不含订单项
+     */
+    List<Order> findOrdersAfter(@Param("userId") String userId,
+                                @Param("cursorTime") LocalDateTime cursorTime,
+                                @Param("cursorId") String cursorId,
+                                @Param("limit") int limit);
+
+    /**
+     * 批量查询多个订单的订单项
+     */
+    List<OrderItem> findOrderItemsByOrderIds(@Param("orderIds") List<String> orderIds);
+
     void updateOrderStatus(Map<String, Object> params);
 
     /**
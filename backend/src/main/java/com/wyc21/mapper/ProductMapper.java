@@ -5,10 +5,10 @@ import org.apache.ibatis.annotations.Param;
 
 import com.wyc21.entity.Product;
 import com.wyc21.entity.ProductReview;
-import com.wyc21.entity.Category;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ProductMapper {
@@ -38,6 +38,22 @@ public interface ProductMapper {
         // 添加这个方法
         int countReviewsByProductId(@Param("productId") String productId);
 
+        /**
+         * 游标分页查询上架商品（按创建时间、商品ID倒序）
+         */
+        List<Product> findProductsAfter(@Param("categoryId") Long categoryId,
+                        @Param("cursorTime") LocalDateTime cursorTime,
+                        @Param("cursorId") String cursorId,
+                        @Param("limit") int limit);
+
+        /**
+         * 游标分页查询商品评论（按创建时间、评论ID倒序）
+         */
+        List<ProductReview> findReviewsAfter(@Param("productId") String productId,
+                        @Param("cursorTime") LocalDateTime cursorTime,
+                        @Param("cursorId") String cursorId,
+                        @Param("limit") int limit);
+
         void insertProduct(Product product);
 
         void updateProduct(Product product);
@@ -48,14 +64,34 @@ public interface ProductMapper {
         void updateStock(@Param("productId") Long productId, @Param("stock") Integer stock);
 
         /**
-         * 扣减库存
+         * 恢复库存
          */
-        void decreaseStock(@Param("productId") String productId, @Param("quantity") Integer quantity);
+        void increaseStock(@Param("productId") String productId, @Param("quantity") Integer quantity);
 
         /**
-         * 恢复库存
+         * 一条语句批量扣减多个商品的库存，只有库存充足的商品会被扣减
+         *
+         * @param quantities 商品ID -> 数量
+         * @return 受影响的行数，小于商品数说明有商品库存不足
          */
-        void increaseStock(@Param("productId") String productId, @Param("quantity") Integer quantity);
+        int batchDecreaseStock(@Param("quantities") Map<String, Integer> quantities);
+
+        /**
+         * 一条语句批量恢复多个商品的库存
+         *
+         * @param quantities 商品ID -> 数量
+         */
+        int batchIncreaseStock(@Param("quantities") Map<String, Integer> quantities);
+
+        /**
+         * 查询指定商品的库存（只包含 productId 和 stock）
+         */
+        List<Product> findStockByIds(@Param("productIds") List<String> productIds);
+
+        /**
+         * 查询所有商品的库存（只包含 productId 和 stock）
+         */
+        List<Product> findAllStock();
 
         /**
          * 锁定商品
@@ -76,17 +112,36 @@ public interface ProductMapper {
 
         int countSearchProducts(@Param("keyword") String keyword);
 
-        List<Product> findProductsByUserId(@Param("userId") String userId);
+        /**
+         * 按ID批量查询商品
+         */
+        List<Product> findByIds(@Param("productIds") List<String> productIds);
 
-        void insertCategory(Category category);
+        /**
+         * 按商品ID顺序分批查询上架商品，用于重建搜索索引
+         */
+        List<Product> findActiveForIndex(@Param("afterId") String afterId, @Param("limit") int limit);
 
-        Category findCategoryByName(String name);
+        List<Product> findProductsByUserId(@Param("userId") String userId);
 
         // 添加评论
         void insertReview(ProductReview review);
 
-        // 删除评论
-        void deleteReview(@Param("reviewId") String reviewId,
+        // 查询未删除的评论
+        ProductReview findReviewById(@Param("reviewId") String reviewId);
+
+        // 删除评论，返回实际删除的行数（已删除或不属于该用户时为0）
+        int deleteReview(@Param("reviewId") String reviewId,
                         @Param("userId") String userId,
                         @Param("modifiedTime") LocalDateTime modifiedTime);
+
+        /**
+         * 查询评分聚合列，返回 review_count、rating、rating_sum、rating_1 ~ rating_5
+         */
+        Map<String, Object> findRatingAggregates(@Param("productId") String productId);
+
+        /**
+         * 按 wz_reviews 重新计算评分聚合列，productId 为 null 时重新计算全部商品
+         */
+        int recomputeRatings(@Param("productId") String productId);
 }
\ No newline at end of file
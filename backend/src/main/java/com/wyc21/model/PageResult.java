@@ -6,11 +6,11 @@ import java.util.List;
 @Data
 public class PageResult<T> {
     private List<T> records;
-    private int total;
+    private Integer total; // 总记录数，未请求时为 null
     private int page;
     private int size;
     
-    public PageResult(List<T> records, int total, int page, int size) {
+    public PageResult(List<T> records, Integer total, int page, int size) {
         this.records = records;
         this.total = total;
         this.page = page;
@@ -26,11 +26,11 @@ public class PageResult<T> {
         this.records = records;
     }
     
-    public int getTotal() {
+    public Integer getTotal() {
         return total;
     }
     
-    public void setTotal(int total) {
+    public void setTotal(Integer total) {
         this.total = total;
     }
     
@@ -5,12 +5,12 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.beans.factory.annotation.Autowired;
-import com.wyc21.util.JwtTokenUtil; 
 import java.io.IOException;
 import lombok.extern.slf4j.Slf4j;
 import com.wyc21.util.JsonResult;
@@ -19,13 +19,14 @@ import com.wyc21.service.ex.TokenExpiredException;
 import com.wyc21.service.ex.TokenInvalidException;
 import io.jsonwebtoken.Claims;
 import java.util.Collections;
+import java.util.Locale;
 
 @Slf4j
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     @Autowired
-    private JwtTokenUtil jwtTokenUtil; // 使用重命名后的JwtTokenUtil
+    private TokenVerifier tokenVerifier;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -38,22 +39,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = extractToken(request);
             
             if (token != null) {
-            
-
-             
-                Claims claims = jwtTokenUtil.validateToken(token);
+                // 每个请求只验证一次，重复的令牌命中本地缓存
+                Claims claims = tokenVerifier.verify(token);
 
                 if (claims != null) {
-                 
-                    String userId = jwtTokenUtil.getUserIdFromToken(token);
-                  
+                    String userId = claims.get("uid", String.class);
+                    // 用户权限 power（admin/user）映射为角色 ROLE_ADMIN/ROLE_USER
+                    String power = claims.get("power", String.class);
 
                     // 创建认证对象
                     UsernamePasswordAuthenticationToken authentication = 
-                        new UsernamePasswordAuthenticationToken(userId, null, null);
+                        new UsernamePasswordAuthenticationToken(userId, null, power != null
+                                ? Collections.singletonList(
+                                        new SimpleGrantedAuthority("ROLE_" + power.toUpperCase(Locale.ROOT)))
+                                : Collections.emptyList());
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authentication);
                     request.setAttribute("uid", userId);
+                    request.setAttribute("claims", claims);
+                    request.setAttribute("username", claims.get("name", String.class));
                   
                 }
             }
@@ -69,11 +73,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
     }
 
-    private boolean isRefreshToken(HttpServletRequest request) {
-        // 通过请求路径判断是否是刷新令牌的请求
-        return request.getRequestURI().contains("/refresh");
-    }
-
     private void sendErrorResponse(HttpServletResponse response, int status, String message)
             throws IOException {
         response.setStatus(status);
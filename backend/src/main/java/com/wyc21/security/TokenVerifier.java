@@ -0,0 +1,82 @@
+package com.wyc21.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.wyc21.service.TokenService;
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 访问令牌验证：每个令牌只做一次 HMAC 校验，验证通过的 Claims 在本地短时缓存，
+ * 缓存时间不超过令牌本身的过期时间，重复请求直接命中缓存。
+ * 注销状态每次都检查（本地布隆过滤器），刷新令牌不能当作访问令牌使用。
+ */
+@Component
+public class TokenVerifier {
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Value("${jwt.verify-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${jwt.verify-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    // 以令牌字符串为键（String 自带哈希缓存），只缓存验证通过的令牌
+    private Cache<String, Claims> verified;
+
+    @PostConstruct
+    public void init() {
+        long maxTtlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String token, Claims claims, long currentTime) {
+                        Date expiration = claims.getExpiration();
+                        if (expiration == null) {
+                            return maxTtlNanos;
+                        }
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(
+                                expiration.getTime() - System.currentTimeMillis());
+                        return Math.max(0, Math.min(maxTtlNanos, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, Claims claims, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, Claims claims, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 验证访问令牌，无效、已过期或已注销时返回 null
+     */
+    public Claims verify(String token) {
+        Claims claims = verified.getIfPresent(token);
+        if (claims == null) {
+            claims = tokenService.validateToken(token);
+            if (claims == null || tokenService.isRefreshToken(claims)) {
+                return null;
+            }
+            verified.put(token, claims);
+        }
+        return tokenService.isRevoked(claims) ? null : claims;
+    }
+}
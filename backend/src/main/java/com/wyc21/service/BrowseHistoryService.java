@@ -2,15 +2,36 @@ package com.wyc21.service;
 
 import com.wyc21.entity.BrowseHistory;
 import com.wyc21.model.PageResult;
+import com.wyc21.entity.CursorPage;
 
 public interface BrowseHistoryService {
     void addBrowseHistory(String userId, String fingerprint, String productId);
 
-    PageResult<BrowseHistory> getBrowseHistoryByUserId(String userId, int page, int size);
+    /**
+     * 分页获取用户已落库的浏览记录，所有页都从数据库读取；withTotal 为 true 时附带近似总数（缓存）
+     */
+    PageResult<BrowseHistory> getBrowseHistoryByUserId(String userId, int page, int size, boolean withTotal);
 
     PageResult<BrowseHistory> getBrowseHistoryByFingerprint(String fingerprint, int page, int size);
 
-    void syncBrowseHistoryToDatabase();
+    /**
+     * 游标分页获取用户已落库的浏览记录
+     */
+    CursorPage<BrowseHistory> getBrowseHistoryByCursor(String userId, String cursor, int size, boolean withTotal);
+
+    /**
+     * 增量同步 Redis 中的浏览记录到数据库，按指纹哈希分区，只处理 partitionIndex 对应的分区
+     *
+     * @return 同步的记录数
+     */
+    int syncBrowseHistoryToDatabase(int partitions, int partitionIndex);
+
+    /**
+     * 同步单个指纹的全部浏览记录，并关联到指定用户（登录时调用）
+     *
+     * @return 同步的记录数
+     */
+    int syncFingerprint(String fingerprint, String userId);
 
     void associateUserWithFingerprint(String userId, String fingerprint);
 }
\ No newline at end of file
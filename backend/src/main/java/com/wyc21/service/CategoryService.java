@@ -1,9 +1,35 @@
 package com.wyc21.service;
 
 import com.wyc21.entity.Category;
+import com.wyc21.entity.CategoryTree;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface CategoryService {
     // 获取分类树
     List<Category> getCategoryTree();
-}
\ No newline at end of file
+
+    // 获取当前分类树快照（含预先序列化的响应和 ETag）
+    CategoryTree getSnapshot();
+
+    // 获取分类自身及所有子孙分类的ID，分类不存在时返回空列表
+    List<String> getSubtreeIds(String categoryId);
+
+    // 获取从顶级分类到该分类的路径，分类不存在时返回空列表
+    List<Category> getAncestorPath(String categoryId);
+
+    // 按名称路径（顶级分类在前）解析分类ID，缺少的分类逐级创建；返回每一级的分类ID
+    List<String> resolvePath(List<String> names);
+
+    // 逗号分隔的分类名称路径拆分为各级名称: "数码,手机" -> [数码, 手机]
+    static List<String> splitPath(String path) {
+        List<String> names = new ArrayList<>();
+        for (String name : path.split(",")) {
+            names.add(name.trim());
+        }
+        return names;
+    }
+
+    // 分类写入后调用：事务提交后递增版本号并通知所有节点重建分类树
+    void categoriesChanged();
+}
@@ -3,6 +3,7 @@ package com.wyc21.service;
 import com.wyc21.entity.CartItem;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import lombok.Data;
 
 public interface ICartService {
@@ -52,9 +53,11 @@ public interface ICartService {
     List<CartItem> getCartItemsByIds(String userId, List<String> cartItemIds);
 
     /**
-     * 更新购物车项的已支付数量
+     * 订单支付后累加购物车项的已支付数量
+     *
+     * @param paidQuantities 订单中的商品ID -> 数量
      */
-    void updateCartItemPaid_quantity(String userId, String productId, Integer paidQuantity);
+    void updatePaidQuantities(String userId, String orderId, Map<String, Integer> paidQuantities);
 
     /**
      * 获取购物车项的可用数量
@@ -4,6 +4,8 @@ import com.wyc21.entity.Order;
 import java.util.List;
 import java.util.Map;
 import com.wyc21.entity.CartItem;
+import com.wyc21.entity.CursorPage;
+import java.util.function.Consumer;
 import com.wyc21.util.JsonResult;
 
 public interface IOrderService {
@@ -15,7 +17,7 @@ public interface IOrderService {
     /**
      * 从购物车创建订单
      */
-    Order createOrderFromCart(String userId, List<String> cartItemIds);
+    Order createOrderFromCart(String userId, String username, List<String> cartItemIds);
     
 
     /**
@@ -23,6 +25,16 @@ public interface IOrderService {
      */
     List<Order> getOrdersByUserId(String userId);
 
+    /**
+     * 游标分页获取用户订单（含订单项）
+     */
+    CursorPage<Order> getOrdersByCursor(String userId, String cursor, int size);
+
+    /**
+     * 按页依次把用户的全部订单（含订单项）交给 consumer，用于流式输出
+     */
+    void streamOrdersByUserId(String userId, Consumer<List<Order>> consumer);
+
     /**
      * 获取订单详情
      */
@@ -30,8 +42,10 @@ public interface IOrderService {
 
     /**
      * 支付订单
+     *
+     * @param userId 下单用户ID，为 null 时不校验订单归属（支付网关回调）
      */
-    boolean payOrder(String orderId, String paymentId);
+    boolean payOrder(String orderId, String paymentId, String userId);
 
     /**
      * 取消订单
@@ -43,6 +57,13 @@ public interface IOrderService {
      */
     void checkExpiredOrders();
 
+    /**
+     * 批量关闭过期订单并恢复库存，已支付或已取消的订单会被跳过
+     *
+     * @return 实际被关闭的订单ID
+     */
+    List<String> expireOrders(List<String> orderIds);
+
     /**
      * 更新订单状态
      */
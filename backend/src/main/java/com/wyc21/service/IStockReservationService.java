@@ -0,0 +1,52 @@
+package com.wyc21.service;
+
+import java.util.Map;
+
+// 库存预占业务层接口
+public interface IStockReservationService {
+    /**
+     * 为订单预占库存，所有商品全部成功或全部失败
+     *
+     * @param orderId    订单ID
+     * @param quantities 商品ID -> 数量
+     */
+    void reserve(String orderId, Map<String, Integer> quantities);
+
+    /**
+     * 释放订单预占的库存（订单取消或过期）
+     *
+     * @param orderId    订单ID
+     * @param quantities 商品ID -> 数量
+     */
+    void release(String orderId, Map<String, Integer> quantities);
+
+    /**
+     * 批量释放多个订单预占的库存
+     *
+     * @param orderQuantities 订单ID -> (商品ID -> 数量)
+     */
+    void releaseAll(Map<String, Map<String, Integer>> orderQuantities);
+
+    /**
+     * 订单支付成功后确认预占，之后不再释放
+     *
+     * @param orderId 订单ID
+     */
+    void confirm(String orderId);
+
+    /**
+     * 商品库存被直接修改后刷新预占引擎中的库存
+     *
+     * @param productId 商品ID
+     * @param stock     新库存
+     */
+    void refresh(String productId, Integer stock);
+
+    /**
+     * 查询商品当前可售库存（已扣除未支付订单的预占）
+     *
+     * @param productId 商品ID
+     * @return 可售库存，商品不存在时为 null
+     */
+    Integer getStock(String productId);
+}
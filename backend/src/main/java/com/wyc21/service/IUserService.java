@@ -3,15 +3,17 @@ package com.wyc21.service;
 import com.wyc21.entity.User;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
 
 // 用户模块业务层接口
 public interface IUserService {
     /**
-     * 用户注册
+     * 用户注册，密码哈希在专用线程池中异步计算
      * 
      * @param user 用户数据
+     * @return 注册完成时结束的 Future
      */
-    void reg(User user);
+    CompletableFuture<Void> reg(User user);
 
     /**
      * 用户登录
@@ -20,9 +22,9 @@ public interface IUserService {
      * @param password 密码
      * @param request  HTTP请求对象，用于获取IP信息
      * @param response HTTP响应对象，用于设置Cookie
-     * @return 登录成功的用户数据
+     * @return 登录成功的用户数据，密码校验完成后结束
      */
-    User login(String username, String password, HttpServletRequest request, HttpServletResponse response);
+    CompletableFuture<User> login(String username, String password, HttpServletRequest request, HttpServletResponse response);
 
     /**
      * 根据用户id获取用户信息
@@ -46,6 +48,7 @@ public interface IUserService {
      * @param uid 用户id
      * @param oldPassword 旧密码
      * @param newPassword 新密码
+     * @return 更新完成时结束的 Future
      */
-    void updatePassword(String uid, String oldPassword, String newPassword);
+    CompletableFuture<Void> updatePassword(String uid, String oldPassword, String newPassword);
 }
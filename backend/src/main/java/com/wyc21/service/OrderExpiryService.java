@@ -0,0 +1,110 @@
+package com.wyc21.service;
+
+import com.wyc21.util.OrderExpiryQueue;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单过期处理：从延迟队列领取到期订单，分批并行关闭并恢复库存
+ */
+@Slf4j
+@Service
+public class OrderExpiryService {
+
+    // 单次轮询最多连续领取的批数，避免积压时长时间占用调度线程
+    private static final int MAX_ROUNDS_PER_POLL = 20;
+
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+
+    @Autowired
+    private IOrderService orderService;
+
+    @Value("${order.expire.batch-size:200}")
+    private int batchSize;
+
+    @Value("${order.expire.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${order.expire.workers:4}")
+    private int workers;
+
+    @Value("${order.expire.lease-ms:60000}")
+    private long leaseMillis;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(workers);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Scheduled(fixedDelayString = "${order.expire.poll-interval-ms:1000}")
+    public void pollExpiredOrders() {
+        for (int round = 0; round < MAX_ROUNDS_PER_POLL; round++) {
+            List<String> claimed;
+            try {
+                claimed = orderExpiryQueue.claimDue(batchSize, leaseMillis);
+            } catch (DataAccessException e) {
+                log.warn("领取过期订单失败: {}", e.getMessage());
+                return;
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            log.info("领取到{}个过期订单", claimed.size());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < claimed.size(); from += chunkSize) {
+                List<String> chunk = claimed.subList(from, Math.min(from + chunkSize, claimed.size()));
+                futures.add(executor.submit(() -> processChunk(chunk)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    log.error("处理过期订单失败", e.getCause());
+                }
+            }
+
+            if (claimed.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void processChunk(List<String> orderIds) {
+        try {
+            // 每批一个事务：已支付或已取消的订单会被跳过
+            List<String> expired = orderService.expireOrders(orderIds);
+            orderExpiryQueue.complete(orderIds);
+            log.info("{}个订单已过期，库存已恢复", expired.size());
+        } catch (Exception e) {
+            // 不释放租约，租约到期后会被重新领取
+            log.error("处理过期订单失败，租约到期后重试: {}", orderIds, e);
+        }
+    }
+}
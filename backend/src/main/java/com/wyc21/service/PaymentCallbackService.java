@@ -0,0 +1,264 @@
+package com.wyc21.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wyc21.service.ex.ServiceException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付回调接收：按 paymentId 去重（本地缓存 + Redis SETNX），去重和入队在同一个 Lua 脚本中完成，
+ * 写入 Redis 队列后立即应答支付网关；后台定时取出队列，按订单分组后逐个订单确认支付。
+ * 网关重试风暴中的重复回调在本地缓存或 Redis 就被拦截，不会访问 wz_orders。
+ * 处理异常的回调放回队列重试，超过最大尝试次数后移入死信队列 payment:queue:failed 等待人工处理。
+ * 未配置签名密钥时不接收回调，也不处理队列（开发、测试环境）。
+ */
+@Service
+@Slf4j
+public class PaymentCallbackService {
+
+    private static final String DEDUPE_KEY = "payment:dedupe:";
+    private static final String QUEUE_KEY = "payment:queue";
+    private static final String PROCESSING_KEY = "payment:queue:processing";
+    private static final String FAILED_KEY = "payment:queue:failed";
+    private static final String ATTEMPTS_KEY = "payment:attempts";
+    private static final String APPLY_LOCK_KEY = "payment:apply:lock";
+
+    private static final long APPLY_LOCK_SECONDS = 60;
+
+    // 回调内容: orderId|paymentId
+    private static final String SEPARATOR = "|";
+
+    @Value("${payment.callback.secret:}")
+    private String secret;
+
+    @Value("${payment.callback.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${payment.callback.dedupe-ttl-hours:24}")
+    private long dedupeTtlHours;
+
+    @Value("${payment.callback.local-dedupe-max-size:100000}")
+    private long localDedupeMaxSize;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private IOrderService orderService;
+
+    private final DefaultRedisScript<Long> enqueueScript = loadScript("lua/payment_enqueue.lua", Long.class);
+    private final DefaultRedisScript<List<String>> drainScript = loadListScript("lua/payment_drain.lua");
+    private final DefaultRedisScript<Long> settleScript = loadScript("lua/payment_settle.lua", Long.class);
+    private final DefaultRedisScript<Long> unlockScript = loadScript("lua/unlock.lua", Long.class);
+    private final DefaultRedisScript<Long> renewScript = loadScript("lua/lease_renew.lua", Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 本节点已处理过的 paymentId，命中时不再访问 Redis
+    private Cache<String, Boolean> seen;
+
+    private boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        enabled = secret != null && !secret.isBlank();
+        if (!enabled) {
+            log.warn("未配置支付回调签名密钥（环境变量 PAYMENT_CALLBACK_SECRET），支付回调接口和队列处理已关闭");
+        }
+        seen = Caffeine.newBuilder()
+                .maximumSize(localDedupeMaxSize)
+                .expireAfterWrite(dedupeTtlHours, TimeUnit.HOURS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 校验回调签名: HMAC-SHA256(orderId|paymentId)，十六进制；未配置密钥时一律无效
+     */
+    public boolean verifySignature(String orderId, String paymentId, String signature) {
+        if (!enabled || orderId == null || paymentId == null || signature == null) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] expected = mac.doFinal((orderId + SEPARATOR + paymentId).getBytes(StandardCharsets.UTF_8));
+            byte[] actual = HexFormat.of().parseHex(signature.toLowerCase());
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("支付回调签名校验失败", e);
+        }
+    }
+
+    /**
+     * 接收一次支付回调
+     *
+     * @return true 已入队; false 重复回调
+     */
+    public boolean accept(String orderId, String paymentId) {
+        if (orderId.contains(SEPARATOR)) {
+            throw new ServiceException("订单号格式错误");
+        }
+        if (seen.getIfPresent(paymentId) != null) {
+            return false;
+        }
+        Long queued = stringRedisTemplate.execute(enqueueScript,
+                Arrays.asList(DEDUPE_KEY + paymentId, QUEUE_KEY),
+                String.valueOf(TimeUnit.HOURS.toSeconds(dedupeTtlHours)), orderId + SEPARATOR + paymentId);
+        seen.put(paymentId, Boolean.TRUE);
+        return queued != null && queued == 1;
+    }
+
+    /**
+     * 按订单分组处理队列中的回调；同一订单只确认一次，其余 paymentId 记录告警
+     */
+    @Scheduled(fixedDelayString = "${payment.callback.apply-interval-ms:200}")
+    public void apply() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            withApplyLock(this::applyQueued);
+        } catch (ApplyLockLostException e) {
+            // 未处理完的回调仍在 payment:queue:processing 中，由新的锁持有者继续；已确认的订单会被状态校验跳过
+            log.warn("支付回调处理锁已失效，本次中止: {}", e.getMessage());
+        } catch (DataAccessException e) {
+            // 回调仍保留在 payment:queue:processing 中，下次继续；已确认的订单会被状态校验跳过
+            log.error("支付回调处理失败: {}", e.getMessage());
+        }
+    }
+
+    private void applyQueued() {
+        List<String> callbacks = stringRedisTemplate.execute(drainScript, Arrays.asList(QUEUE_KEY, PROCESSING_KEY));
+        if (callbacks == null || callbacks.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> paymentByOrder = new LinkedHashMap<>();
+        for (String callback : callbacks) {
+            int index = callback.indexOf(SEPARATOR);
+            String orderId = callback.substring(0, index);
+            String paymentId = callback.substring(index + 1);
+            String existing = paymentByOrder.putIfAbsent(orderId, paymentId);
+            if (existing != null) {
+                log.warn("订单收到多个支付流水，只确认第一个: orderId={}, 已确认={}, 忽略={}",
+                        orderId, existing, paymentId);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        long renewedAt = start;
+        int paid = 0;
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : paymentByOrder.entrySet()) {
+            // 处理时间超过锁时长的三分之一时续期，锁已被其他节点持有时中止
+            if (System.currentTimeMillis() - renewedAt > TimeUnit.SECONDS.toMillis(APPLY_LOCK_SECONDS) / 3) {
+                renewApplyLock();
+                renewedAt = System.currentTimeMillis();
+            }
+            try {
+                if (orderService.payOrder(entry.getKey(), entry.getValue(), null)) {
+                    paid++;
+                }
+            } catch (ServiceException e) {
+                // 订单不存在、已支付或已过期，重试也不会成功
+                log.warn("支付回调未生效: orderId={}, paymentId={}, {}", entry.getKey(), entry.getValue(),
+                        e.getMessage());
+            } catch (DataAccessException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                log.error("支付回调处理异常，稍后重试: orderId={}, paymentId={}", entry.getKey(), entry.getValue(), e);
+                failed.add(entry.getKey() + SEPARATOR + entry.getValue());
+            }
+        }
+
+        // 失败的回调放回队列（或移入死信队列）与删除正在处理的队列在同一个脚本中完成，中途宕机不会丢失回调
+        List<String> args = new ArrayList<>(failed.size() + 2);
+        args.add(nodeId);
+        args.add(String.valueOf(maxAttempts));
+        args.addAll(failed);
+        Long requeued = stringRedisTemplate.execute(settleScript,
+                Arrays.asList(PROCESSING_KEY, QUEUE_KEY, FAILED_KEY, ATTEMPTS_KEY, APPLY_LOCK_KEY), args.toArray());
+        if (requeued == null || requeued < 0) {
+            throw new ApplyLockLostException(nodeId);
+        }
+        if (requeued < failed.size()) {
+            log.error("{}条支付回调超过最大尝试次数{}，已移入死信队列 {}", failed.size() - requeued, maxAttempts, FAILED_KEY);
+        }
+        log.info("支付回调处理完成: {}条回调, {}个订单, 确认支付{}个, 失败{}个, 耗时{}ms",
+                callbacks.size(), paymentByOrder.size(), paid, failed.size(), System.currentTimeMillis() - start);
+    }
+
+    private void withApplyLock(Runnable task) {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(APPLY_LOCK_KEY, nodeId,
+                APPLY_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            stringRedisTemplate.execute(unlockScript, Collections.singletonList(APPLY_LOCK_KEY), nodeId);
+        }
+    }
+
+    // 续期处理锁，锁已被其他节点持有时抛出异常
+    private void renewApplyLock() {
+        Long renewed = stringRedisTemplate.execute(renewScript, Collections.singletonList(APPLY_LOCK_KEY), nodeId,
+                String.valueOf(TimeUnit.SECONDS.toMillis(APPLY_LOCK_SECONDS)));
+        if (renewed == null || renewed == 0) {
+            throw new ApplyLockLostException(nodeId);
+        }
+    }
+
+    private static <T> DefaultRedisScript<T> loadScript(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    // 返回字符串列表的脚本；List.class 无法携带元素类型，在这里集中做一次转换
+    @SuppressWarnings("unchecked")
+    private static DefaultRedisScript<List<String>> loadListScript(String path) {
+        return loadScript(path, (Class<List<String>>) (Class<?>) List.class);
+    }
+
+    private static class ApplyLockLostException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private ApplyLockLostException(String nodeId) {
+            super("节点" + nodeId + "已不再持有支付回调处理锁");
+        }
+    }
+}
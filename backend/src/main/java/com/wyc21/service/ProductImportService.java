@@ -0,0 +1,257 @@
+package com.wyc21.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyc21.entity.Product;
+import com.wyc21.entity.ProductImportResult;
+import com.wyc21.service.ex.ServiceException;
+import com.wyc21.util.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 商品批量导入：逐行读取 JSON Lines 或 CSV，不把整个文件读入内存；
+ * 分类路径按内存前缀树解析（同一路径只解析一次），商品按批用 JDBC batch 写入，每批一个事务。
+ * 校验失败的行跳过并记录原因，某批写入失败时只影响该批。
+ */
+@Service
+@Slf4j
+public class ProductImportService {
+
+    private static final String INSERT_PRODUCT_SQL =
+            "INSERT INTO wz_products (product_id, name, price, stock, category_id, description, brand, tags, "
+                    + "rating, review_count, image_url, is_active, created_time) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0, 0, ?, 1, NOW())";
+
+    private static final int MAX_NAME_LENGTH = 100;
+
+    @Value("${product.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${product.import.max-errors:100}")
+    private int maxErrors;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 导入商品
+     *
+     * @param csv true: CSV，首行为列名（name,price,stock,categoryId,description,brand,tags,imageUrl）；
+     *            false: JSON Lines，每行一个与 /products/create 相同格式的商品
+     */
+    public ProductImportResult importProducts(BufferedReader reader, boolean csv) throws IOException {
+        long start = System.currentTimeMillis();
+        ProductImportResult result = new ProductImportResult();
+        // 分类路径 -> 顶级分类ID，同一次导入中每个路径只解析一次
+        Map<String, String> categoryByPath = new HashMap<>();
+        List<Object[]> rows = new ArrayList<>(chunkSize);
+        List<String> productIds = new ArrayList<>(chunkSize);
+        String[] header = null;
+
+        int lineNumber = 0;
+        int firstLine = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            if (csv && header == null) {
+                header = parseCsvLine(line).toArray(new String[0]);
+                continue;
+            }
+
+            result.setTotal(result.getTotal() + 1);
+            try {
+                Product product = csv ? fromCsv(header, parseCsvLine(line)) : fromJson(line);
+                validate(product);
+                String categoryId = categoryByPath.get(product.getCategoryId());
+                if (categoryId == null) {
+                    categoryId = categoryService.resolvePath(
+                            CategoryService.splitPath(product.getCategoryId())).get(0);
+                    categoryByPath.put(product.getCategoryId(), categoryId);
+                }
+
+                String productId = String.valueOf(idGenerator.nextId());
+                if (rows.isEmpty()) {
+                    firstLine = lineNumber;
+                }
+                rows.add(new Object[] { productId, product.getName().trim(), product.getPrice(),
+                        product.getStock(), categoryId, product.getDescription(), product.getBrand(),
+                        product.getTags(), product.getImageUrl() });
+                productIds.add(productId);
+            } catch (IllegalArgumentException | ServiceException e) {
+                result.setFailed(result.getFailed() + 1);
+                addError(result, "第" + lineNumber + "行: " + e.getMessage());
+            }
+
+            if (rows.size() >= chunkSize) {
+                flush(rows, productIds, firstLine, lineNumber, result);
+            }
+        }
+        if (!rows.isEmpty()) {
+            flush(rows, productIds, firstLine, lineNumber, result);
+        }
+
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("商品导入完成: 共{}行, 成功{}, 失败{}, {}批, 耗时{}ms", result.getTotal(), result.getImported(),
+                result.getFailed(), result.getChunks().size(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * 一批商品在一个事务中写入，提交后通知搜索索引更新
+     */
+    private void flush(List<Object[]> rows, List<String> productIds, int firstLine, int lastLine,
+            ProductImportResult result) {
+        ProductImportResult.Chunk chunk = new ProductImportResult.Chunk();
+        chunk.setIndex(result.getChunks().size() + 1);
+        chunk.setRows(rows.size());
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_PRODUCT_SQL, rows);
+                productIds.forEach(productSearchService::update);
+            });
+            chunk.setSuccess(true);
+            result.setImported(result.getImported() + rows.size());
+        } catch (DataAccessException e) {
+            result.setFailed(result.getFailed() + rows.size());
+            addError(result, "第" + firstLine + "-" + lastLine + "行写入失败: " + e.getMostSpecificCause().getMessage());
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        chunk.setMillis(millis);
+        chunk.setRowsPerSecond(rows.size() * 1000L / millis);
+        result.getChunks().add(chunk);
+        log.info("商品导入第{}批: {}条, {}, 耗时{}ms, {}条/秒", chunk.getIndex(), chunk.getRows(),
+                chunk.isSuccess() ? "成功" : "失败", chunk.getMillis(), chunk.getRowsPerSecond());
+        rows.clear();
+        productIds.clear();
+    }
+
+    // 与 createProduct 相同的校验规则
+    private void validate(Product product) {
+        if (product.getName() == null || product.getName().trim().isEmpty()) {
+            throw new IllegalArgumentException("商品名称不能为空");
+        }
+        if (product.getName().trim().length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("商品名称不能超过" + MAX_NAME_LENGTH + "个字符");
+        }
+        if (product.getPrice() == null || product.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("商品价格必须大于0");
+        }
+        if (product.getStock() == null || product.getStock() < 0) {
+            throw new IllegalArgumentException("商品库存不能为负数");
+        }
+        if (product.getCategoryId() == null || product.getCategoryId().trim().isEmpty()) {
+            throw new IllegalArgumentException("分类不能为空");
+        }
+    }
+
+    private Product fromJson(String line) {
+        try {
+            return objectMapper.readValue(line, Product.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("JSON格式错误: " + e.getOriginalMessage());
+        }
+    }
+
+    private Product fromCsv(String[] header, List<String> values) {
+        Product product = new Product();
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (header[i].trim().toLowerCase(Locale.ROOT)) {
+                case "name" -> product.setName(value);
+                case "price" -> product.setPrice(new BigDecimal(value));
+                case "stock" -> product.setStock(Integer.valueOf(value));
+                case "categoryid", "category" -> product.setCategoryId(value);
+                case "description" -> product.setDescription(value);
+                case "brand" -> product.setBrand(value);
+                case "tags" -> product.setTags(value);
+                case "imageurl" -> product.setImageUrl(value);
+                default -> {
+                    // 忽略未知列
+                }
+            }
+        }
+        return product;
+    }
+
+    /**
+     * 解析一行 CSV：逗号分隔，字段可用双引号包围，引号内的 "" 表示一个引号；不支持跨行字段
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("CSV引号未闭合");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private void addError(ProductImportResult result, String error) {
+        if (result.getErrors().size() < maxErrors) {
+            result.getErrors().add(error);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.wyc21.service;
+
+import com.wyc21.entity.CursorPage;
+import com.wyc21.entity.PageResult;
+import com.wyc21.entity.Product;
+import com.wyc21.mapper.ProductMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 商品全文检索：内存 Lucene 倒排索引，CJK 二元分词，替代 LIKE '%kw%' 全表扫描。
+ * 商品新增、修改、下架后通过 Redis 发布订阅通知所有节点增量更新；
+ * 全量重建在新索引上进行，完成后原子切换，重建期间的修改在切换后补齐。
+ */
+@Slf4j
+@Service
+public class ProductSearchService {
+
+    private static final String UPDATE_CHANNEL = "product:index:update";
+
+    private static final String FIELD_ID = "productId";
+    private static final String FIELD_CATEGORY = "categoryId";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_BRAND = "brand";
+    private static final String FIELD_TAGS = "tags";
+    private static final String FIELD_DESCRIPTION = "description";
+
+    // 重建索引时每批读取的商品数
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    // 页码分页最多排序的结果数（偏移量 + 每页条数），超出时只返回总数，更深的翻页使用游标
+    private static final int MAX_RESULT_WINDOW = 10000;
+
+    // 游标分页按相关度倒序，相关度相同时按商品ID，保证顺序稳定
+    private static final Sort RELEVANCE_ORDER = new Sort(SortField.FIELD_SCORE,
+            new SortField(FIELD_ID, SortField.Type.STRING));
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final Analyzer analyzer = new CJKAnalyzer();
+
+    // 当前提供查询的索引，首次构建完成前为 null
+    private volatile IndexHolder current;
+
+    // 重建期间被修改的商品，切换后重新写入新索引
+    private Set<String> pendingDuringRebuild;
+
+    private final Object swapLock = new Object();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener((message, pattern) ->
+                apply(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(UPDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        IndexHolder holder = current;
+        if (holder != null) {
+            holder.close();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        // 后台构建，构建完成前搜索回退到数据库查询
+        CompletableFuture.runAsync(this::rebuild);
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * 按相关度搜索上架商品，可按分类过滤
+     *
+     * @param pageNum  页码，从1开始
+     * @param pageSize 每页条数，调用方需限制上限
+     * @return 索引未就绪或关键词无法分词时返回 null，由调用方回退到数据库查询
+     */
+    public PageResult<Product> search(String keyword, String categoryId, int pageNum, int pageSize) {
+        IndexHolder holder = current;
+        if (holder == null) {
+            return null;
+        }
+        Query query = buildQuery(keyword, categoryId);
+        if (query == null) {
+            return null;
+        }
+
+        long offset = (long) (pageNum - 1) * pageSize;
+        List<String> productIds = new ArrayList<>();
+        long total;
+        try {
+            IndexSearcher searcher = holder.manager.acquire();
+            try {
+                if (offset + pageSize > MAX_RESULT_WINDOW) {
+                    // 超出排序窗口的页不分配结果队列，只计数
+                    total = searcher.count(query);
+                } else {
+                    // 一次遍历同时得到排序结果和精确命中数
+                    TopScoreDocCollector collector = TopScoreDocCollector.create((int) offset + pageSize,
+                            Integer.MAX_VALUE);
+                    searcher.search(query, collector);
+                    TopDocs topDocs = collector.topDocs((int) offset, pageSize);
+                    total = topDocs.totalHits.value;
+                    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                        productIds.add(searcher.storedFields().document(scoreDoc.doc).get(FIELD_ID));
+                    }
+                }
+            } finally {
+                holder.manager.release(searcher);
+            }
+        } catch (IOException e) {
+            log.error("商品搜索失败, keyword: {}", keyword, e);
+            return null;
+        }
+
+        return new PageResult<>(loadInOrder(productIds), total, pageNum, pageSize);
+    }
+
+    /**
+     * 游标分页搜索：用 searchAfter 从上一页最后一条（相关度, 商品ID）之后继续，结果队列只有一页大小，
+     * 翻页深度不影响内存。索引更新后相关度可能变化，游标按值定位，不会出错但个别商品可能重复或跳过。
+     *
+     * @param size 每页条数，调用方需限制上限
+     * @return 索引未就绪或关键词无法分词时返回 null
+     */
+    public CursorPage<Product> searchAfter(String keyword, String categoryId, String cursor, int size) {
+        IndexHolder holder = current;
+        if (holder == null) {
+            return null;
+        }
+        Query query = buildQuery(keyword, categoryId);
+        if (query == null) {
+            return null;
+        }
+
+        FieldDoc after = decodeCursor(cursor);
+        List<String> productIds = new ArrayList<>();
+        String nextCursor = null;
+        try {
+            IndexSearcher searcher = holder.manager.acquire();
+            try {
+                // 多取一条判断是否还有下一页
+                TopDocs topDocs = searcher.searchAfter(after, query, size + 1, RELEVANCE_ORDER, false);
+                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                int count = Math.min(size, scoreDocs.length);
+                for (int i = 0; i < count; i++) {
+                    FieldDoc fieldDoc = (FieldDoc) scoreDocs[i];
+                    productIds.add(((BytesRef) fieldDoc.fields[1]).utf8ToString());
+                }
+                if (scoreDocs.length > size) {
+                    nextCursor = encodeCursor((FieldDoc) scoreDocs[size - 1]);
+                }
+            } finally {
+                holder.manager.release(searcher);
+            }
+        } catch (IOException e) {
+            log.error("商品搜索失败, keyword: {}", keyword, e);
+            return null;
+        }
+        return new CursorPage<>(loadInOrder(productIds), nextCursor, null);
+    }
+
+    /**
+     * 商品新增、修改或下架后调用，事务提交后通知所有节点更新索引
+     */
+    public void update(String productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(productId);
+            }
+        });
+    }
+
+    /**
+     * 全量重建索引：在新索引上构建完成后原子切换，不影响查询
+     */
+    @Scheduled(cron = "${search.rebuild-cron:0 0 4 * * ?}")
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.info("商品索引正在重建，跳过");
+            return;
+        }
+        synchronized (swapLock) {
+            pendingDuringRebuild = new HashSet<>();
+        }
+        IndexHolder fresh = null;
+        try {
+            long start = System.currentTimeMillis();
+            fresh = new IndexHolder(analyzer);
+            int count = 0;
+            String afterId = null;
+            List<Product> batch;
+            do {
+                batch = productMapper.findActiveForIndex(afterId, REBUILD_BATCH_SIZE);
+                for (Product product : batch) {
+                    fresh.writer.addDocument(toDocument(product));
+                }
+                count += batch.size();
+                if (!batch.isEmpty()) {
+                    afterId = batch.get(batch.size() - 1).getProductId();
+                }
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+            fresh.writer.commit();
+            fresh.manager.maybeRefresh();
+
+            IndexHolder old;
+            Set<String> pending;
+            synchronized (swapLock) {
+                old = current;
+                current = fresh;
+                pending = pendingDuringRebuild;
+                pendingDuringRebuild = null;
+            }
+            // 重建期间的修改可能没有进入新索引，切换后按数据库最新状态补齐
+            pending.forEach(this::apply);
+            if (old != null) {
+                old.close();
+            }
+            log.info("商品索引重建完成，共{}个商品，耗时{}ms", count, System.currentTimeMillis() - start);
+        } catch (IOException | DataAccessException e) {
+            log.error("商品索引重建失败", e);
+            synchronized (swapLock) {
+                pendingDuringRebuild = null;
+            }
+            if (fresh != null) {
+                fresh.close();
+            }
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void publish(String productId) {
+        try {
+            stringRedisTemplate.convertAndSend(UPDATE_CHANNEL, productId);
+        } catch (DataAccessException e) {
+            // Redis 不可用时至少更新本节点，其他节点等待下次全量重建
+            log.warn("商品{}索引更新通知失败: {}", productId, e.getMessage());
+            apply(productId);
+        }
+    }
+
+    /**
+     * 按数据库最新状态更新单个商品的索引
+     */
+    private void apply(String productId) {
+        IndexHolder holder;
+        synchronized (swapLock) {
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(productId);
+            }
+            holder = current;
+        }
+        if (holder == null) {
+            return;
+        }
+        try {
+            Product product = productMapper.findById(productId);
+            Term idTerm = new Term(FIELD_ID, productId);
+            if (product == null || product.getIsActive() == null || product.getIsActive() == 0) {
+                holder.writer.deleteDocuments(idTerm);
+            } else {
+                holder.writer.updateDocument(idTerm, toDocument(product));
+            }
+            holder.manager.maybeRefresh();
+        } catch (IOException | RuntimeException e) {
+            // 旧索引可能刚被切换关闭，该商品已记入待补齐列表
+            log.error("更新商品{}索引失败", productId, e);
+        }
+    }
+
+    // 游标为 "相关度的浮点位|商品ID" 的 Base64 编码
+    private String encodeCursor(FieldDoc fieldDoc) {
+        String raw = Float.floatToIntBits((Float) fieldDoc.fields[0]) + "|"
+                + ((BytesRef) fieldDoc.fields[1]).utf8ToString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private FieldDoc decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            float score = Float.intBitsToFloat(Integer.parseInt(raw.substring(0, separator)));
+            // doc 取最大值：排序字段全部相同的只可能是游标对应的商品本身，不再返回
+            return new FieldDoc(Integer.MAX_VALUE, score,
+                    new Object[] { score, new BytesRef(raw.substring(separator + 1)) });
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
+    private Query buildQuery(String keyword, String categoryId) {
+        QueryBuilder builder = new QueryBuilder(analyzer);
+        BooleanQuery.Builder fields = new BooleanQuery.Builder();
+        addField(fields, builder.createBooleanQuery(FIELD_NAME, keyword, BooleanClause.Occur.MUST), 4f);
+        addField(fields, builder.createBooleanQuery(FIELD_BRAND, keyword, BooleanClause.Occur.MUST), 3f);
+        addField(fields, builder.createBooleanQuery(FIELD_TAGS, keyword, BooleanClause.Occur.MUST), 2f);
+        addField(fields, builder.createBooleanQuery(FIELD_DESCRIPTION, keyword, BooleanClause.Occur.MUST), 1f);
+        BooleanQuery fieldQuery = fields.build();
+        if (fieldQuery.clauses().isEmpty()) {
+            return null;
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(fieldQuery, BooleanClause.Occur.MUST);
+        if (categoryId != null) {
+            query.add(new TermQuery(new Term(FIELD_CATEGORY, categoryId)), BooleanClause.Occur.FILTER);
+        }
+        return query.build();
+    }
+
+    private void addField(BooleanQuery.Builder fields, Query query, float boost) {
+        if (query != null) {
+            fields.add(new BoostQuery(query, boost), BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    private List<Product> loadInOrder(List<String> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Product> byId = new LinkedHashMap<>();
+        for (Product product : productMapper.findByIds(productIds)) {
+            byId.put(product.getProductId(), product);
+        }
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = byId.get(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    private Document toDocument(Product product) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, product.getProductId(), Field.Store.YES));
+        doc.add(new SortedDocValuesField(FIELD_ID, new BytesRef(product.getProductId())));
+        if (product.getCategoryId() != null) {
+            doc.add(new StringField(FIELD_CATEGORY, product.getCategoryId(), Field.Store.NO));
+        }
+        addText(doc, FIELD_NAME, product.getName());
+        addText(doc, FIELD_BRAND, product.getBrand());
+        addText(doc, FIELD_TAGS, product.getTags());
+        addText(doc, FIELD_DESCRIPTION, product.getDescription());
+        return doc;
+    }
+
+    private void addText(Document doc, String field, String value) {
+        if (value != null && !value.isEmpty()) {
+            doc.add(new TextField(field, value, Field.Store.NO));
+        }
+    }
+
+    // 一份内存索引及其写入器和查询器
+    private static class IndexHolder {
+        private final ByteBuffersDirectory directory = new ByteBuffersDirectory();
+        private final IndexWriter writer;
+        private final SearcherManager manager;
+
+        private IndexHolder(Analyzer analyzer) throws IOException {
+            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            this.writer = new IndexWriter(directory, config);
+            this.manager = new SearcherManager(writer, null);
+        }
+
+        // 不关闭 directory，正在执行的查询仍持有旧的 reader
+        private void close() {
+            try {
+                manager.close();
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.wyc21.service;
 import com.wyc21.entity.Product;
 import com.wyc21.entity.ProductReview;
 import com.wyc21.entity.PageResult;
+import com.wyc21.entity.CursorPage;
+import com.wyc21.entity.RatingSummary;
 import java.util.List;
 
 public interface ProductService {
@@ -25,14 +27,29 @@ public interface ProductService {
 
     PageResult<Product> searchProducts(String keyword, int page, int size);
 
+    // 游标分页搜索商品（按相关度），用于页码分页无法到达的深度翻页
+    CursorPage<Product> searchProductsByCursor(String keyword, String cursor, int size);
+
     List<Product> getProductsByUserId(String userId);
 
     // 获取商品评论（分页）
     PageResult<ProductReview> getProductReviews(String productId, int page, int size);
 
+    // 游标分页获取商品列表，withTotal 为 true 时附带近似总数
+    CursorPage<Product> getProductsByCursor(Long categoryId, String cursor, int size, boolean withTotal);
+
+    // 游标分页获取商品评论
+    CursorPage<ProductReview> getProductReviewsByCursor(String productId, String cursor, int size, boolean withTotal);
+
     // 添加评论
     void addReview(ProductReview review);
 
     // 删除评论
     void deleteReview(String reviewId, String userId);
+
+    // 获取商品评分汇总（评论数、平均分、星级分布）
+    RatingSummary getRatingSummary(String productId);
+
+    // 按评论表重新计算商品评分，productId 为 null 时重新计算全部商品
+    int recomputeRatings(String productId);
 }
\ No newline at end of file
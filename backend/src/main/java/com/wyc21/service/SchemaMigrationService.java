@@ -0,0 +1,193 @@
+package com.wyc21.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * 版本化的数据库迁移：启动时按版本号顺序执行 db/migration/V{版本}__{描述}.sql 中尚未执行的脚本，
+ * 执行记录保存在 wz_schema_version 中，只前进不回滚；已执行的脚本不允许再修改。
+ */
+@Slf4j
+@Service
+public class SchemaMigrationService {
+
+    private static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private static final String HISTORY_TABLE = "wz_schema_version";
+
+    // 多实例同时启动时只允许一个实例执行迁移
+    private static final String LOCK_NAME = "wz_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${db.migration.enabled:true}")
+    private boolean enabled;
+
+    // 已有数据库首次接入迁移时视为已执行的版本（初始表结构和初始数据）
+    @Value("${db.migration.baseline-version:2}")
+    private int baselineVersion;
+
+    public void migrate() {
+        if (!enabled) {
+            log.info("数据库迁移已关闭");
+            return;
+        }
+        List<Migration> migrations = loadMigrations();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            acquireLock(connection);
+            try {
+                migrate(connection, migrations);
+            } finally {
+                releaseLock(connection);
+            }
+            return null;
+        });
+    }
+
+    private void migrate(Connection connection, List<Migration> migrations) {
+        createHistoryTable();
+        Map<Integer, Long> applied = jdbcTemplate.queryForList(
+                "SELECT version, checksum FROM " + HISTORY_TABLE).stream()
+                .collect(Collectors.toMap(row -> ((Number) row.get("version")).intValue(),
+                        row -> ((Number) row.get("checksum")).longValue()));
+
+        if (applied.isEmpty() && tableExists("wz_users")) {
+            // 迁移机制引入前已初始化的数据库，基线以内的脚本不再执行
+            for (Migration migration : migrations) {
+                if (migration.version <= baselineVersion) {
+                    record(migration, 0, true);
+                    applied.put(migration.version, migration.checksum);
+                }
+            }
+            log.info("已有数据库，基线版本: V{}", baselineVersion);
+        }
+
+        int executed = 0;
+        for (Migration migration : migrations) {
+            Long checksum = applied.get(migration.version);
+            if (checksum != null) {
+                if (checksum != migration.checksum) {
+                    throw new IllegalStateException("已执行的迁移脚本被修改: " + migration.fileName);
+                }
+                continue;
+            }
+            log.info("执行数据库迁移: {}", migration.fileName);
+            long start = System.currentTimeMillis();
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(migration.resource, StandardCharsets.UTF_8));
+            record(migration, System.currentTimeMillis() - start, false);
+            executed++;
+        }
+        log.info("数据库迁移完成，本次执行{}个脚本，当前版本: V{}", executed,
+                migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version);
+    }
+
+    private List<Migration> loadMigrations() {
+        try {
+            List<Migration> migrations = new ArrayList<>();
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                Matcher matcher = FILE_NAME.matcher(resource.getFilename());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                try (InputStream in = resource.getInputStream()) {
+                    CRC32 crc = new CRC32();
+                    crc.update(StreamUtils.copyToByteArray(in));
+                    migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2),
+                            resource.getFilename(), crc.getValue(), resource));
+                }
+            }
+            migrations.sort(Comparator.comparingInt(migration -> migration.version));
+            for (int i = 1; i < migrations.size(); i++) {
+                if (migrations.get(i).version == migrations.get(i - 1).version) {
+                    throw new IllegalStateException("迁移脚本版本号重复: V" + migrations.get(i).version);
+                }
+            }
+            return migrations;
+        } catch (IOException e) {
+            throw new IllegalStateException("读取迁移脚本失败", e);
+        }
+    }
+
+    private void createHistoryTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+                + "version INT PRIMARY KEY, "
+                + "description VARCHAR(200) NOT NULL, "
+                + "checksum BIGINT NOT NULL, "
+                + "execution_ms BIGINT NOT NULL DEFAULT 0, "
+                + "baseline TINYINT(1) NOT NULL DEFAULT 0, "
+                + "installed_time DATETIME DEFAULT CURRENT_TIMESTAMP)");
+    }
+
+    private boolean tableExists(String tableName) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?",
+                Integer.class, tableName);
+        return count != null && count > 0;
+    }
+
+    private void record(Migration migration, long executionMillis, boolean baseline) {
+        jdbcTemplate.update("INSERT INTO " + HISTORY_TABLE
+                + " (version, description, checksum, execution_ms, baseline) VALUES (?, ?, ?, ?, ?)",
+                migration.version, migration.description, migration.checksum, executionMillis, baseline ? 1 : 0);
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(
+                        "SELECT GET_LOCK('" + LOCK_NAME + "', " + LOCK_TIMEOUT_SECONDS + ")")) {
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new IllegalStateException("获取数据库迁移锁超时");
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT RELEASE_LOCK('" + LOCK_NAME + "')");
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String fileName;
+        private final long checksum;
+        private final Resource resource;
+
+        private Migration(int version, String description, String fileName, long checksum, Resource resource) {
+            this.version = version;
+            this.description = description;
+            this.fileName = fileName;
+            this.checksum = checksum;
+            this.resource = resource;
+        }
+    }
+}
@@ -1,179 +1,286 @@
 package com.wyc21.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import com.wyc21.mapper.UserMapper;
 import com.wyc21.entity.User;
+import com.wyc21.util.BloomFilter;
+import com.wyc21.util.PasswordHasher;
 import lombok.extern.slf4j.Slf4j;
-import com.wyc21.util.JwtUtil;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 令牌服务：签发、验证、刷新和注销访问令牌/刷新令牌。
+ * 每次登录生成一个会话(sid)，Redis 中只记录会话当前有效的刷新令牌 jti，刷新时原子轮换；
+ * 注销的访问令牌 jti 记录在 Redis 有序集合中，并在本地维护布隆过滤器，
+ * 绝大多数请求只需查询本地过滤器，只有可能被注销时才访问 Redis。
+ */
 @Service
 @Slf4j
 public class TokenService {
 
+    // 会话当前有效的刷新令牌：refresh_token:<uid>:<sid> -> jti
+    private static final String REFRESH_KEY = "refresh_token:";
+
+    // 已注销的访问令牌：member 为 jti，score 为令牌过期时间
+    private static final String REVOKED_KEY = "token:revoked";
+    private static final String REVOKED_CHANNEL = "token:revoked";
+
+    private static final String CLAIM_UID = "uid";
+    private static final String CLAIM_SID = "sid";
+    private static final String CLAIM_NAME = "name";
+    private static final String CLAIM_POWER = "power";
+    private static final String CLAIM_TYPE = "typ";
+    private static final String TYPE_REFRESH = "r";
+
     @Value("${jwt.secret}")
     private String secret;
 
-    @Value("${jwt.access-token-expiration}")
-    private long accessTokenExpiration; // 例如：15分钟
+    @Value("${jwt.access-token-expiration:900}")
+    private long accessTokenExpiration; // 秒
 
-    @Value("${jwt.refresh-token-expiration}")
-    private long refreshTokenExpiration; // 例如：7天
+    @Value("${jwt.refresh-token-expiration:604800}")
+    private long refreshTokenExpiration; // 秒
+
+    @Value("${jwt.revocation.expected-size:100000}")
+    private int revokedExpectedSize;
+
+    @Value("${jwt.revocation.fpp:0.01}")
+    private double revokedFpp;
 
     @Autowired
     private UserMapper userMapper;
 
     @Autowired
-    private BCryptPasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
 
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private RedisMessageListenerContainer listenerContainer;
 
-    // 登录方法
-    public Map<String, String> login(String username, String password) {
-        // 验证用户名密码
-        User user = userMapper.findByUsername(username);
-        if (user != null && passwordEncoder.matches(password, user.getPassword())) {
-            // 生成 tokens
-            String accessToken = generateAccessToken(user.getUsername(), user.getUid());
-            String refreshToken = generateRefreshToken(user.getUsername(), user.getUid());
+    private final DefaultRedisScript<Long> rotateScript = new DefaultRedisScript<>();
 
-            log.info("生成的 access token: {}", accessToken);
-            log.info("生成的 refresh token: {}", refreshToken);
+    private final SecureRandom secureRandom = new SecureRandom();
 
-            // 将 refresh token 存储到 Redis
-            storeRefreshToken(username, refreshToken);
+    // 密钥和解析器线程安全，启动时构建一次
+    private SecretKey signingKey;
 
-            Map<String, String> tokens = new HashMap<>();
-            tokens.put("accessToken", accessToken);
-            tokens.put("refreshToken", refreshToken);
-            return tokens;
-        }
-        return null;
+    private JwtParser parser;
+
+    private volatile BloomFilter revoked;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+        rotateScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/refresh_rotate.lua")));
+        rotateScript.setResultType(Long.class);
+
+        revoked = new BloomFilter(revokedExpectedSize, revokedFpp);
+        listenerContainer.addMessageListener((message, pattern) -> revoked.put(
+                new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(REVOKED_CHANNEL));
+        reloadRevoked();
     }
 
-    // 生成 access token
-    private String generateAccessToken(String username, String userId) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + accessTokenExpiration);
-        
-        log.info("生成token时的userId: {}", userId);
-        
-        return Jwts.builder()
-                .subject(username)
-                .claim("uid", userId)
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
+    // 登录方法，用户名或密码错误时结果为 null
+    public CompletableFuture<Map<String, String>> login(String username, String password) {
+        // 验证用户名密码
+        User user = userMapper.findByUsername(username);
+        if (user == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return passwordHasher.verify(password, user.getPassword())
+                .thenApply(matched -> matched ? issueTokens(user.getUid(), user.getUsername(), user.getPower()) : null);
     }
 
-    // 生成 refresh token
-    private String generateRefreshToken(String username, String userId) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + refreshTokenExpiration);
-
-        return Jwts.builder()
-                .subject(username)
-                .claim("uid", userId)
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
+    /**
+     * 为新会话签发访问令牌和刷新令牌，令牌中带上用户名，访问令牌另带用户权限，后续请求无需再查询用户表
+     */
+    public Map<String, String> issueTokens(String userId, String username, String power) {
+        String sid = newId();
+        String refreshJti = newId();
+        stringRedisTemplate.opsForValue().set(sessionKey(userId, sid), refreshJti,
+                refreshTokenExpiration, TimeUnit.SECONDS);
+        return tokenPair(userId, username, power, sid, refreshJti);
     }
 
-    // 验证 token
+    /**
+     * 验证令牌签名和有效期，无效时返回 null
+     */
     public Claims validateToken(String token) {
         try {
-            log.info("开始验证 token: {}", token);
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-
-            log.info("Token 验证成功，claims: {}", claims);
-            return claims;
+            return parser.parseSignedClaims(token).getPayload();
         } catch (Exception e) {
-            log.error("Token 验证失败: {}", e.getMessage());
+            log.debug("Token验证失败: {}", e.getMessage());
             return null;
         }
     }
 
-    // 存储 refresh token 到 Redis
-    private void storeRefreshToken(String username, String refreshToken) {
-        String key = "refresh_token:" + username;
-        // 存储 refresh token，并设置过期时间
-        redisTemplate.opsForValue().set(
-                key,
-                refreshToken,
-                refreshTokenExpiration,
-                TimeUnit.MILLISECONDS);
-    }
-
-    // 验证存储的 refresh token
-    private boolean validateStoredRefreshToken(String userid, String refreshToken) {
-        String key = "refresh_token:" + userid;
-        String storedToken = redisTemplate.opsForValue().get(key);
-        return refreshToken.equals(storedToken);
+    public boolean isRefreshToken(Claims claims) {
+        return TYPE_REFRESH.equals(claims.get(CLAIM_TYPE, String.class));
     }
 
-    // 刷新 access token
-    public String refreshAccessToken(String refreshToken) {
+    /**
+     * 访问令牌是否已注销：布隆过滤器判定不存在时直接返回，可能存在时再查询 Redis
+     */
+    public boolean isRevoked(Claims claims) {
+        String jti = claims.getId();
+        if (jti == null || !revoked.mightContain(jti)) {
+            return false;
+        }
         try {
-            Claims claims = validateToken(refreshToken);
-            if (claims == null) {
-                return null;
-            }
-
-            String username = claims.getSubject();
-            String userId = claims.get("uid", String.class);
-            
-            // 验证 refresh token 是否存在于 Redis 中
-            if (!validateStoredRefreshToken(userId, refreshToken)) {
-                return null;
-            }
+            return stringRedisTemplate.opsForZSet().score(REVOKED_KEY, jti) != null;
+        } catch (DataAccessException e) {
+            // Redis 不可用时按已注销处理，宁可让用户重新登录
+            log.warn("查询令牌注销状态失败: {}", e.getMessage());
+            return true;
+        }
+    }
 
-            // 生成新的 access token
-            return generateAccessToken(username, userId);
-        } catch (Exception e) {
-            log.error("刷新token失败: ", e);
+    /**
+     * 用刷新令牌换取新的令牌对，旧刷新令牌随即失效；令牌无效或已被使用、用户已删除时返回 null。
+     * 用户名和权限从用户表重新读取，改名或调整权限后刷新得到的令牌即为最新值
+     */
+    public Map<String, String> refresh(String refreshToken) {
+        Claims claims = validateToken(refreshToken);
+        if (claims == null || !isRefreshToken(claims)) {
+            return null;
+        }
+        String userId = claims.get(CLAIM_UID, String.class);
+        String sid = claims.get(CLAIM_SID, String.class);
+        User user = userMapper.findByUid(userId);
+        if (user == null) {
+            stringRedisTemplate.delete(sessionKey(userId, sid));
+            log.warn("刷新令牌的用户不存在或已删除, uid: {}", userId);
+            return null;
+        }
+        String newJti = newId();
+        Long rotated = stringRedisTemplate.execute(rotateScript,
+                Collections.singletonList(sessionKey(userId, sid)),
+                claims.getId(), newJti, String.valueOf(TimeUnit.SECONDS.toMillis(refreshTokenExpiration)));
+        if (rotated == null || rotated == 0) {
+            log.warn("刷新令牌已失效或被重复使用, uid: {}, sid: {}", userId, sid);
             return null;
         }
+        return tokenPair(userId, user.getUsername(), user.getPower(), sid, newJti);
     }
 
-    // 获取签名密钥
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    /**
+     * 凭刷新令牌登出：结束会话，之后无法再刷新
+     */
+    public void logout(String refreshToken) {
+        Claims claims = validateToken(refreshToken);
+        if (claims != null && isRefreshToken(claims)) {
+            stringRedisTemplate.delete(sessionKey(claims.get(CLAIM_UID, String.class),
+                    claims.get(CLAIM_SID, String.class)));
+        }
     }
 
-    // 登出
-    public void logout(String refreshToken) {
+    /**
+     * 凭访问令牌登出：结束会话并注销该访问令牌
+     */
+    public void revoke(Claims claims) {
+        String userId = claims.get(CLAIM_UID, String.class);
+        String sid = claims.get(CLAIM_SID, String.class);
+        if (sid != null) {
+            stringRedisTemplate.delete(sessionKey(userId, sid));
+        }
+        String jti = claims.getId();
+        if (jti == null) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().add(REVOKED_KEY, jti, claims.getExpiration().getTime());
+        revoked.put(jti);
+        stringRedisTemplate.convertAndSend(REVOKED_CHANNEL, jti);
+    }
+
+    /**
+     * 定期从 Redis 重建布隆过滤器，清除已过期的注销记录，
+     * 同时兜底重建期间或发布订阅断开时丢失的注销通知
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:30000}")
+    public void reloadRevoked() {
         try {
-            Claims claims = validateToken(refreshToken);
-            if (claims != null) {
-                String username = claims.getSubject();
-                String key = "refresh_token:" + username;
-                redisTemplate.delete(key);
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, 0, now);
+            Set<String> jtis = stringRedisTemplate.opsForZSet().range(REVOKED_KEY, 0, -1);
+            int size = jtis != null ? jtis.size() : 0;
+            BloomFilter filter = new BloomFilter(Math.max(revokedExpectedSize, size * 2), revokedFpp);
+            if (jtis != null) {
+                jtis.forEach(filter::put);
             }
-        } catch (Exception e) {
-            // 处理异常
+            revoked = filter;
+        } catch (DataAccessException e) {
+            log.warn("加载已注销令牌失败: {}", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // 刷新令牌不带权限，刷新时从用户表重新读取
+    private Map<String, String> tokenPair(String userId, String username, String power, String sid,
+            String refreshJti) {
+        long now = System.currentTimeMillis();
+        String accessToken = Jwts.builder()
+                .id(newId())
+                .claim(CLAIM_UID, userId)
+                .claim(CLAIM_NAME, username)
+                .claim(CLAIM_POWER, power)
+                .claim(CLAIM_SID, sid)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + TimeUnit.SECONDS.toMillis(accessTokenExpiration)))
+                .signWith(signingKey)
+                .compact();
+        String refreshToken = Jwts.builder()
+                .id(refreshJti)
+                .claim(CLAIM_UID, userId)
+                .claim(CLAIM_NAME, username)
+                .claim(CLAIM_SID, sid)
+                .claim(CLAIM_TYPE, TYPE_REFRESH)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + TimeUnit.SECONDS.toMillis(refreshTokenExpiration)))
+                .signWith(signingKey)
+                .compact();
+
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("accessToken", accessToken);
+        tokens.put("refreshToken", refreshToken);
+        return tokens;
+    }
+
+    private String sessionKey(String userId, String sid) {
+        return REFRESH_KEY + userId + ":" + sid;
+    }
+
+    // 96位随机标识，Base64url 编码后16个字符
+    private String newId() {
+        byte[] bytes = new byte[12];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,23 @@
+package com.wyc21.service.ex;
+
+// 请求过多异常（处理能力已满，需稍后重试）
+public class TooManyRequestsException extends ServiceException {
+    private static final long serialVersionUID = 1L;
+
+    public TooManyRequestsException() {
+        super();
+    }
+
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+    public TooManyRequestsException(Throwable cause) {
+        super(cause);
+    }
+    public TooManyRequestsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    public TooManyRequestsException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -5,11 +5,24 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wyc21.entity.BrowseHistory;
 import com.wyc21.mapper.BrowseHistoryMapper;
+import com.wyc21.mapper.ProductMapper;
+import com.wyc21.entity.Product;
 import com.wyc21.model.PageResult;
 import com.wyc21.service.BrowseHistoryService;
-import com.wyc21.util.RedisUtil;
-import com.wyc21.util.SnowflakeIdGenerator;
+import com.wyc21.util.CountCache;
+import com.wyc21.util.BrowseHistoryWriter;
+import com.wyc21.util.CursorUtil;
+import com.wyc21.entity.CursorPage;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,8 +30,8 @@ import java.util.Date;
 import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.RedisTemplate;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 public class BrowseHistoryServiceImpl implements BrowseHistoryService {
@@ -29,142 +42,103 @@ public class BrowseHistoryServiceImpl implements BrowseHistoryService {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private RedisUtil redisUtil;
+    private ObjectMapper objectMapper;
 
     @Autowired
-    private SnowflakeIdGenerator idGenerator;
+    private BrowseHistoryMapper browseHistoryMapper;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Autowired
-    private BrowseHistoryMapper browseHistoryMapper;
+    private CountCache countCache;
 
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private BrowseHistoryWriter browseHistoryWriter;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    // 浏览记录单页最大条数
+    private static final int MAX_PAGE_SIZE = 100;
 
     private static final String REDIS_BROWSE_HISTORY_KEY = "browse:history:";
-    private static final long REDIS_EXPIRE_TIME = 3600000; // 1小时
+
+    // 每个指纹已同步到数据库的最大浏览时间
+    private static final String SYNC_WATERMARK_KEY = "browse:sync:";
+
+    // 每次 SCAN 和批量同步的指纹数
+    private static final int SYNC_SCAN_BATCH = 200;
+
+    @Value("${browse.history.redis-ttl-hours:168}")
+    private long redisTtlHours;
 
     @Override
-    @Transactional
     public void addBrowseHistory(String userId, String fingerprint, String productId) {
-        // 使用当前时间戳作为score
-        double score = System.currentTimeMillis();
-        String key = REDIS_BROWSE_HISTORY_KEY + fingerprint;
-        
-        log.info("添加浏览记录 - 指纹: {}, 商品: {}, 时间戳: {}", fingerprint, productId, score);
-        
-        // 添加到Redis的ZSet中
-        redisTemplate.opsForZSet().add(key, productId, score);
-        
-        // 设置过期时间
-        redisTemplate.expire(key, REDIS_EXPIRE_TIME, TimeUnit.MILLISECONDS);
+        // 只写入内存缓冲区，由后台批量写入Redis并落库
+        browseHistoryWriter.record(userId, fingerprint, productId);
     }
 
     @Override
-    public PageResult<BrowseHistory> getBrowseHistoryByUserId(String userId, int page, int size) {
-        List<BrowseHistory> histories = new ArrayList<>();
-        
-        // 1. 先查找所有与该用户关联的浏览器指纹
-        String sql = "SELECT fingerprint_id FROM wz_browser_fingerprints WHERE user_id = ?";
-        List<String> fingerprints = jdbcTemplate.queryForList(sql, String.class, userId);
-        log.info("用户 {} 关联的浏览器指纹: {}", userId, fingerprints);
-
-        // 2. 遍历每个指纹，获取其浏览记录
-        for (String fingerprint : fingerprints) {
-            String key = REDIS_BROWSE_HISTORY_KEY + fingerprint;
-            Set<String> productIds = redisTemplate.opsForZSet().reverseRange(key, 0, -1);
-            log.info("指纹 {} 的浏览记录: {}", fingerprint, productIds);
-
-            if (productIds != null && !productIds.isEmpty()) {
-                for (String productId : productIds) {
-                    Double score = redisTemplate.opsForZSet().score(key, productId);
-                    if (score != null) {
-                        BrowseHistory history = new BrowseHistory();
-                        history.setHistoryId(String.valueOf(idGenerator.nextId()));
-                        history.setUserId(userId);
-                        history.setFingerprintId(fingerprint);
-                        history.setProductId(productId);
-                        history.setBrowseTime(new Date(score.longValue()));
-                        histories.add(history);
-                    }
-                }
-            }
-        }
+    public PageResult<BrowseHistory> getBrowseHistoryByUserId(String userId, int page, int size, boolean withTotal) {
+        page = Math.max(1, page);
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        int offset = (page - 1) * size;
 
-        // 3. 如果Redis中数据不足，从数据库补充
-        if (histories.size() < size) {
-            log.info("Redis中只有 {} 条记录，从数据库补充", histories.size());
-            List<BrowseHistory> dbHistories = browseHistoryMapper.getBrowseHistoryByUserId(
-                userId, 
-                size - histories.size(), 
-                (page - 1) * size + histories.size()
-            );
-            histories.addAll(dbHistories);
+        // 登录用户的浏览记录由写入器在几秒内落库，所有页都从数据库读取，翻页时不会在两个数据源之间跳过或重复
+        List<BrowseHistory> records = browseHistoryMapper.getBrowseHistoryByUserId(userId, size, offset);
+        hydrateProducts(records);
+
+        Integer total = null;
+        if (withTotal) {
+            total = (int) countCache.get("browse:" + userId, () -> (long) browseHistoryMapper.getCountByUserId(userId));
         }
+        return new PageResult<>(records, total, page, size);
+    }
 
-        // 4. 排序并分页
-        histories.sort((h1, h2) -> h2.getBrowseTime().compareTo(h1.getBrowseTime()));
-        int fromIndex = (page - 1) * size;
-        int toIndex = Math.min(fromIndex + size, histories.size());
-        List<BrowseHistory> pagedHistories = histories.subList(fromIndex, toIndex);
+    @Override
+    public CursorPage<BrowseHistory> getBrowseHistoryByCursor(String userId, String cursor, int size,
+            boolean withTotal) {
+        size = Math.min(Math.max(1, size), 100);
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+
+        // 多取一条判断是否还有下一页
+        List<BrowseHistory> histories = browseHistoryMapper.findBrowseHistoryAfter(userId,
+                position != null ? Date.from(position.getTime().atZone(ZoneId.systemDefault()).toInstant()) : null,
+                position != null ? position.getId() : null,
+                size + 1);
+        String nextCursor = null;
+        if (histories.size() > size) {
+            histories = histories.subList(0, size);
+            BrowseHistory last = histories.get(size - 1);
+            LocalDateTime lastTime = LocalDateTime.ofInstant(last.getBrowseTime().toInstant(), ZoneId.systemDefault());
+            nextCursor = CursorUtil.encode(lastTime, last.getHistoryId());
+        }
+        hydrateProducts(histories);
 
-        int total = browseHistoryMapper.getCountByUserId(userId);
-        log.info("用户 {} 的浏览记录总数: {}, 本次返回: {} 条", userId, total, pagedHistories.size());
-        
-        return new PageResult<>(pagedHistories, total, page, size);
+        Long total = null;
+        if (withTotal) {
+            total = countCache.get("browse:" + userId, () -> (long) browseHistoryMapper.getCountByUserId(userId));
+        }
+        return new CursorPage<>(histories, nextCursor, total);
     }
 
     @Override
     public PageResult<BrowseHistory> getBrowseHistoryByFingerprint(String fingerprint, int page, int size) {
-        List<BrowseHistory> histories = new ArrayList<>();
-        
-        // 直接使用指纹查询
-        String key = REDIS_BROWSE_HISTORY_KEY + fingerprint;
-        log.info("正在查询指纹的浏览记录，Redis键: {}", key);
-        
-        // 使用ZSet操作，获取指定范围的记录（按score降序）
-        Set<String> productInfos = redisTemplate.opsForZSet().reverseRange(key, 0, size - 1);
-        log.info("从Redis中获取到的商品信息: {}", productInfos);
-        
-        if (productInfos != null && !productInfos.isEmpty()) {
-            for (String productInfo : productInfos) {
-                // 解析JSON字符串
-                try {
-                    Map<String, String> productData = objectMapper.readValue(productInfo, new TypeReference<Map<String, String>>() {});
-                    String productId = productData.get("id");
-                    String productName = productData.get("name");
-                    String productPrice = productData.get("price");
-                    String productImageUrl = productData.get("imageUrl");
-                    String productDescription = productData.get("description");
-                    
-                    // 获取score（时间戳）
-                    Double score = redisTemplate.opsForZSet().score(key, productInfo);
-                    if (score != null) {
-                        BrowseHistory history = new BrowseHistory();
-                        history.setHistoryId(String.valueOf(idGenerator.nextId()));
-                        history.setFingerprintId(fingerprint);
-                        history.setProductId(productId);
-                        history.setBrowseTime(new Date(score.longValue()));
-                        // 这里可以添加其他信息到history中
-                        // 例如：history.setProductName(productName);
-                        // 例如：history.setProductPrice(productPrice);
-                        histories.add(history);
-                        log.info("构建浏览记录: fingerprint={}, productId={}, time={}", 
-                            fingerprint, productId, new Date(score.longValue()));
-                    }
-                } catch (JsonProcessingException e) {
-                    log.error("解析商品信息失败: {}", e.getMessage());
-                }
-            }
-        } else {
-            log.info("Redis中没有找到指纹 {} 的浏览记录", fingerprint);
-            
-            // 如果Redis中没有数据，从数据库查询
+        page = Math.max(1, page);
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        int offset = (page - 1) * size;
+
+        // 只读取请求的一页，成员和分数一次返回
+        List<List<BrowseHistory>> perFingerprint = new ArrayList<>();
+        long total = readRecent(Collections.singletonList(fingerprint), offset, offset + size - 1, perFingerprint);
+        List<BrowseHistory> records = perFingerprint.get(0);
+
+        if (total == 0) {
+            // Redis 中没有数据时从数据库查询
             String sql = "SELECT * FROM wz_browse_history WHERE fingerprint_id = ? " +
                         "ORDER BY browse_time DESC LIMIT ? OFFSET ?";
-            List<BrowseHistory> dbHistories = jdbcTemplate.query(sql,
+            records = jdbcTemplate.query(sql,
                     (rs, rowNum) -> {
                         BrowseHistory history = new BrowseHistory();
                         history.setHistoryId(rs.getString("history_id"));
@@ -174,51 +148,193 @@ public class BrowseHistoryServiceImpl implements BrowseHistoryService {
                         history.setBrowseTime(rs.getTimestamp("browse_time"));
                         return history;
                     },
-                    fingerprint, size, (page - 1) * size);
-            
-            log.info("从数据库中获取到 {} 条记录", dbHistories.size());
-            histories.addAll(dbHistories);
-        }
-
-        // 获取总记录数
-        long total = redisTemplate.opsForZSet().size(key);
-        if (total == 0) {
-            // 如果Redis中没有数据，从数据库获取总数
+                    fingerprint, size, offset);
             String countSql = "SELECT COUNT(*) FROM wz_browse_history WHERE fingerprint_id = ?";
             total = jdbcTemplate.queryForObject(countSql, Integer.class, fingerprint);
         }
 
-        log.info("浏览记录查询完成，总记录数: {}, 本次返回: {} 条", total, histories.size());
-        return new PageResult<>(histories, (int)total, page, size);
+        hydrateProducts(records);
+        return new PageResult<>(records, (int) total, page, size);
     }
 
-    @Override
-    @Transactional
-    public void syncBrowseHistoryToDatabase() {
-        Set<String> allKeys = redisUtil.keys(REDIS_BROWSE_HISTORY_KEY + "*");
-        if (allKeys == null || allKeys.isEmpty()) {
+    /**
+     * 管道读取多个指纹的最近浏览记录：每个指纹一条 ZREVRANGE WITHSCORES 和一条 ZCARD
+     *
+     * @param result 按指纹顺序存放读取结果，每个列表按浏览时间倒序
+     * @return 所有指纹的记录总数
+     */
+    @SuppressWarnings("unchecked")
+    private long readRecent(List<String> fingerprints, long start, long end, List<List<BrowseHistory>> result) {
+        if (fingerprints.isEmpty()) {
+            return 0;
+        }
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String fingerprint : fingerprints) {
+                String key = REDIS_BROWSE_HISTORY_KEY + fingerprint;
+                conn.zRevRangeWithScores(key, start, end);
+                conn.zCard(key);
+            }
+            return null;
+        });
+
+        long total = 0;
+        for (int i = 0; i < fingerprints.size(); i++) {
+            String fingerprint = fingerprints.get(i);
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) replies.get(i * 2);
+            Long count = (Long) replies.get(i * 2 + 1);
+            total += count != null ? count : 0;
+
+            List<BrowseHistory> histories = new ArrayList<>();
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    String productId = toProductId(tuple.getValue());
+                    if (productId == null || tuple.getScore() == null) {
+                        continue;
+                    }
+                    long browseTime = tuple.getScore().longValue();
+                    BrowseHistory history = new BrowseHistory();
+                    history.setHistoryId(BrowseHistoryWriter.historyId(fingerprint, productId, browseTime));
+                    history.setFingerprintId(fingerprint);
+                    history.setProductId(productId);
+                    history.setBrowseTime(new Date(browseTime));
+                    histories.add(history);
+                }
+            }
+            result.add(histories);
+        }
+        return total;
+    }
+
+    /**
+     * 一次批量查询补全本页记录的商品信息
+     */
+    private void hydrateProducts(List<BrowseHistory> records) {
+        if (records.isEmpty()) {
             return;
         }
+        List<String> productIds = records.stream()
+                .map(BrowseHistory::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : productMapper.findByIds(productIds)) {
+            products.put(product.getProductId(), product);
+        }
+        for (BrowseHistory record : records) {
+            record.setProduct(products.get(record.getProductId()));
+        }
+    }
+
+    @Override
+    public int syncBrowseHistoryToDatabase(int partitions, int partitionIndex) {
+        int synced = 0;
+        List<String> batch = new ArrayList<>(SYNC_SCAN_BATCH);
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(REDIS_BROWSE_HISTORY_KEY + "*")
+                .count(SYNC_SCAN_BATCH)
+                .build();
+        // 使用 SCAN 游标遍历，不阻塞 Redis
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                String fingerprint = key.substring(REDIS_BROWSE_HISTORY_KEY.length());
+                // 按指纹哈希分区，多个节点各自同步一部分
+                if (Math.floorMod(fingerprint.hashCode(), partitions) != partitionIndex) {
+                    continue;
+                }
+                batch.add(fingerprint);
+                if (batch.size() >= SYNC_SCAN_BATCH) {
+                    synced += syncFingerprints(batch, null);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            synced += syncFingerprints(batch, null);
+        }
+        return synced;
+    }
 
-        for (String key : allKeys) {
-            String value = redisUtil.get(key);
-            try {
-                BrowseHistory history = objectMapper.readValue(value, BrowseHistory.class);
+    @Override
+    public int syncFingerprint(String fingerprint, String userId) {
+        return syncFingerprints(Collections.singletonList(fingerprint), userId);
+    }
 
-                String sql = "INSERT INTO wz_browse_history (history_id, fingerprint_id, user_id, product_id, browse_time) "
-                        +
-                        "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE browse_time = VALUES(browse_time)";
+    /**
+     * 同步一批指纹的浏览记录：读取每个有序集合中水位线之后的新增记录，
+     * 批量写入数据库后再推进水位线。userId 不为空时同时关联到该用户。
+     */
+    @SuppressWarnings("unchecked")
+    private int syncFingerprints(List<String> fingerprints, String userId) {
+        // 1. 批量读取水位线（已同步到的最大浏览时间）
+        List<String> watermarks = stringRedisTemplate.opsForValue().multiGet(
+                fingerprints.stream().map(fp -> SYNC_WATERMARK_KEY + fp).collect(Collectors.toList()));
 
-                jdbcTemplate.update(sql,
-                        history.getHistoryId(),
-                        history.getFingerprintId(),
-                        history.getUserId(),
-                        history.getProductId(),
-                        history.getBrowseTime());
+        // 2. 管道读取每个指纹在水位线之后的记录；关联用户时读取全部
+        List<Object> deltas = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < fingerprints.size(); i++) {
+                String watermark = watermarks != null ? watermarks.get(i) : null;
+                double min = userId == null && watermark != null ? Long.parseLong(watermark) + 1 : 0;
+                conn.zRangeByScoreWithScores(REDIS_BROWSE_HISTORY_KEY + fingerprints.get(i), min, Double.MAX_VALUE);
+            }
+            return null;
+        });
 
-            } catch (JsonProcessingException e) {
-                // 记录日志但继续处理其他记录
+        List<BrowseHistory> histories = new ArrayList<>();
+        Map<String, Long> newWatermarks = new HashMap<>();
+        for (int i = 0; i < fingerprints.size(); i++) {
+            String fingerprint = fingerprints.get(i);
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) deltas.get(i);
+            if (tuples == null || tuples.isEmpty()) {
+                continue;
+            }
+            long maxScore = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                String productId = toProductId(tuple.getValue());
+                if (productId == null || tuple.getScore() == null) {
+                    continue;
+                }
+                long browseTime = tuple.getScore().longValue();
+                BrowseHistory history = new BrowseHistory();
+                history.setHistoryId(BrowseHistoryWriter.historyId(fingerprint, productId, browseTime));
+                history.setFingerprintId(fingerprint);
+                history.setUserId(userId);
+                history.setProductId(productId);
+                history.setBrowseTime(new Date(browseTime));
+                histories.add(history);
+                maxScore = Math.max(maxScore, browseTime);
             }
+            newWatermarks.put(fingerprint, maxScore);
+        }
+
+        // 3. 批量写入数据库，成功后再推进水位线，失败时下次重试
+        int synced = browseHistoryWriter.upsert(histories);
+        long ttlMillis = TimeUnit.HOURS.toMillis(redisTtlHours);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            newWatermarks.forEach((fingerprint, watermark) ->
+                    conn.pSetEx(SYNC_WATERMARK_KEY + fingerprint, ttlMillis, String.valueOf(watermark)));
+            return null;
+        });
+        return synced;
+    }
+
+    /**
+     * 有序集合成员为商品ID；旧版本写入的是商品信息JSON，兼容解析
+     */
+    private String toProductId(String member) {
+        if (member == null || !member.startsWith("{")) {
+            return member;
+        }
+        try {
+            Map<String, String> productData = objectMapper.readValue(member,
+                    new TypeReference<Map<String, String>>() {});
+            return productData.get("id");
+        } catch (JsonProcessingException e) {
+            log.warn("解析浏览记录失败: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -1,44 +1,29 @@
 package com.wyc21.service.impl;
 
-import com.wyc21.entity.Cart;
 import com.wyc21.entity.CartItem;
 import com.wyc21.entity.Product;
-import com.wyc21.entity.User;
 import com.wyc21.service.ICartService;
 import com.wyc21.service.ex.CartNotFoundException;
 import com.wyc21.service.ex.ProductNotFoundException;
-import com.wyc21.service.ex.UserNotFoundException;
 import com.wyc21.mapper.CartMapper;
-import com.wyc21.mapper.ProductMapper;
-import com.wyc21.mapper.UserMapper;
-import com.wyc21.util.JsonResult;
-import com.wyc21.util.SnowflakeIdGenerator;
+import com.wyc21.util.ProductCache;
+import com.wyc21.util.CartStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import com.wyc21.entity.Order;
-import com.wyc21.entity.OrderItem;
-import com.wyc21.entity.OrderStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Date;
-import java.time.LocalDateTime;
-import java.text.SimpleDateFormat;
-import java.util.Random;
-import com.wyc21.mapper.OrderMapper;
 import com.wyc21.service.ex.InsuffientStockException;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import java.util.concurrent.TimeUnit;
-import com.wyc21.service.ex.InsertException;
-// 导入 Map 和 HashMap
+// 导入 Map
 import java.util.Map;
-import java.util.HashMap;
-import com.wyc21.util.JsonResult; // 导入 JsonResult 类
+import java.util.HashSet;
+import java.util.Set;
 import java.util.ArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import lombok.extern.slf4j.Slf4j;
-import lombok.Data;
 import java.util.stream.Collectors;
 import java.util.Objects;
 
@@ -52,26 +37,15 @@ public class CartServiceImpl implements ICartService {
     private CartMapper cartMapper;
 
     @Autowired
-    private ProductMapper productMapper;
+    private ProductCache productCache;
 
     @Autowired
-    private UserMapper userMapper;
-
-    @Autowired
-    private SnowflakeIdGenerator idGenerator;
-
-    @Autowired
-    private OrderMapper orderMapper;
-
-    @Autowired
-    private StringRedisTemplate redisTemplate;
-
-    private static final long ORDER_EXPIRE_MINUTES = 30;
+    private CartStore cartStore;
 
     @Override
     public List<CartItem> getCartItems(String userId) {
-        // 获取用户的购物车商品
-        List<CartItem> cartItems = cartMapper.findCartItems(userId);
+        // 获取用户的购物车商品（只读 Redis）
+        List<CartItem> cartItems = cartStore.getItems(userId);
 
         // 过滤掉已支付的商品，并更新商品数量
     List<CartItem> availableItems = cartItems.stream()
@@ -94,57 +68,41 @@ public class CartServiceImpl implements ICartService {
 
     @Override
     public CartItem getCartItem(String userId, String cartItemId) {
-        Cart userCart = cartMapper.findByUserId(userId);
-        if (userCart == null) {
-            throw new CartNotFoundException("购物车不存在");
-        }
-
-        CartItem item = cartMapper.findCartItemById(cartItemId);
-        if (item == null || !item.getCartId().equals(userCart.getCartId())) {
-            throw new CartNotFoundException("购物车商品不存在");
+        for (CartItem item : cartStore.getItems(userId)) {
+            if (item.getCartItemId().equals(cartItemId)) {
+                return item;
+            }
         }
-        return item;
+        throw new CartNotFoundException("购物车商品不存在");
     }
 
     @Override
-    @Transactional
     public CartItem updateQuantity(String userId, String cartItemId, Integer quantity) {
         CartItem item = getCartItem(userId, cartItemId);
 
         // 检查库存
-        Product product = productMapper.findById(item.getProductId());
+        Product product = productCache.get(item.getProductId());
         if (product.getStock() < quantity) {
             throw new ProductNotFoundException("商品库存不足");
         }
 
-        item.setQuantity(quantity);
-        cartMapper.updateCartItem(item);
-        return item;
+        CartItem updated = cartStore.setQuantity(userId, item, quantity);
+        if (updated == null) {
+            throw new CartNotFoundException("购物车商品不存在");
+        }
+        return updated;
     }
 
     @Override
-    @Transactional
     public void deleteCartItem(String userId, String cartItemId) {
-        CartItem item = cartMapper.findCartItemById(cartItemId);
-        if (item == null) {
+        if (cartStore.remove(userId, cartItemId) == null) {
             throw new CartNotFoundException("购物车商品不存在");
         }
-
-        Cart cart = cartMapper.findByUserId(userId);
-        if (cart == null || !item.getCartId().equals(cart.getCartId())) {
-            throw new CartNotFoundException("无权操作此购物车商品");
-        }
-
-        cartMapper.deleteCartItem(userId, cartItemId);
     }
 
     @Override
-    @Transactional
     public void clearCart(String userId) {
-        Cart cart = cartMapper.findByUserId(userId);
-        if (cart != null) {
-            cartMapper.deleteAllCartItems(cart.getCartId());
-        }
+        cartStore.clear(userId);
     }
 
     @Override
@@ -156,205 +114,70 @@ public class CartServiceImpl implements ICartService {
     }
 
     @Override
-    @Transactional
     public CartItem addToCartWithCheck(String userId, String productId, Integer quantity) {
-        // 检查用户是否存在
-        User user = userMapper.findByUid(userId);
-        if (user == null) {
-            throw new UserNotFoundException("用户不存在");
-        }
-
-        // 获取或创建购物车
-        Cart userCart = cartMapper.findByUserId(userId);
-        if (userCart == null) {
-            userCart = new Cart();
-            userCart.setCartId(idGenerator.nextId().toString());
-            userCart.setUserId(userId);
-            userCart.setCreatedUser("system");
-            userCart.setCreatedTime(LocalDateTime.now());
-            cartMapper.insertCart(userCart);
-        }
-
-        // 检查商品是否已在购物车中
-        CartItem existingItem = cartMapper.findCartItemByProductId(userCart.getCartId(), productId);
-        if (existingItem != null) {
-            // 更新数量
-            existingItem.setQuantity(existingItem.getQuantity() + quantity);
-            cartMapper.updateCartItem(existingItem);
-            return existingItem;
-        }
-
-        // 检查商品是否存在并验证库存
-        Product product = productMapper.findById(productId);
-        if (product == null) {
-            throw new ProductNotFoundException("商品不存在");
-        }
-        if (product.getStock() < quantity) {
-            throw new InsuffientStockException("商品库存不足");
-        }
-
-        // 创建新的购物车项
-        CartItem cartItem = new CartItem();
-        cartItem.setCartItemId(idGenerator.nextId().toString());
-        cartItem.setCartId(userCart.getCartId());
-        cartItem.setProductId(productId);
-        cartItem.setQuantity(quantity);
-        cartItem.setPrice(product.getPrice());
-        cartItem.setProductName(product.getName());
-        cartItem.setCreatedUser("system");
-        cartItem.setCreatedTime(LocalDateTime.now());
-        cartMapper.insertCartItem(cartItem);
-
-        return cartItem;
+        // 用户ID来自已验证的令牌，无需再查询用户表
+        Product product = validateProduct(productId, quantity);
+        return cartStore.add(userId, product, quantity);
     }
 
     @Override
-    @Transactional
     public List<CartItem> batchAddToCart(String userId, List<ICartService.CartItemRequest> items) {
-        // 检查用户是否存在
-        User user = userMapper.findByUid(userId);
-        if (user == null) {
-            throw new UserNotFoundException("用户不存在");
-        }
-
-        // 获取或创建购物车
-        Cart userCart = cartMapper.findByUserId(userId);
-        if (userCart == null) {
-            userCart = new Cart();
-            userCart.setCartId(idGenerator.nextId().toString());
-            userCart.setUserId(userId);
-            userCart.setCreatedUser("system");
-            userCart.setCreatedTime(LocalDateTime.now());
-            cartMapper.insertCart(userCart);
-        }
-
-        List<CartItem> newCartItems = new ArrayList<>();
-
+        // 先校验全部商品，有一个不满足时整批不加入
+        List<Product> products = new ArrayList<>(items.size());
         for (ICartService.CartItemRequest itemRequest : items) {
-            // 检查商品是否存在并验证库存
-            Product product = productMapper.findById(itemRequest.getProductId());
+            Product product = productCache.get(itemRequest.getProductId());
             if (product == null) {
                 throw new ProductNotFoundException("商品不存在: " + itemRequest.getProductId());
             }
             if (product.getStock() < itemRequest.getQuantity()) {
                 throw new InsuffientStockException("商品库存不足: " + product.getName());
             }
-
-            // 检查商品是否已在购物车中
-            CartItem existingItem = cartMapper.findCartItemByProductId(userCart.getCartId(),
-                    itemRequest.getProductId());
-            if (existingItem != null) {
-                // 更新数量
-                existingItem.setQuantity(existingItem.getQuantity() + itemRequest.getQuantity());
-                cartMapper.updateCartItem(existingItem);
-                newCartItems.add(existingItem);
-            } else {
-                // 创建新的购物车项
-                CartItem cartItem = new CartItem();
-                cartItem.setCartItemId(idGenerator.nextId().toString());
-                cartItem.setCartId(userCart.getCartId());
-                cartItem.setProductId(itemRequest.getProductId());
-                cartItem.setQuantity(itemRequest.getQuantity());
-                cartItem.setPrice(product.getPrice());
-                cartItem.setProductName(product.getName());
-                cartItem.setCreatedUser("system");
-                cartItem.setCreatedTime(LocalDateTime.now());
-                newCartItems.add(cartItem);
-            }
-        }
-
-        // 批量插入新的购物车项
-        if (!newCartItems.isEmpty()) {
-            cartMapper.batchInsertCartItems(newCartItems);
+            products.add(product);
         }
 
-        return newCartItems;
-    }
-
-    private CartItem validateCartItem(String userId, String cartItemId) {
-        CartItem item = cartMapper.findCartItemById(cartItemId);
-        Cart userCart = cartMapper.findByUserId(userId);
-        if (item == null || userCart == null) {
-            throw new CartNotFoundException("购物车商品不存在");
+        List<CartItem> cartItems = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            cartItems.add(cartStore.add(userId, products.get(i), items.get(i).getQuantity()));
         }
-        return item;
-    }
-
-    private void validateCartItemOwnership(String userId, CartItem item) {
-        List<CartItem> userCartItems = cartMapper.findCartItemsByUserId(userId);
-        if (userCartItems.isEmpty()) {
-            throw new CartNotFoundException("无权操作此购物车商品");
-        }
-    }
-
-    private boolean checkExistingItems(List<CartItem> existingItems) {
-        return existingItems.stream()
-                .anyMatch(item -> {
-                    String orderStatus = item.getOrderStatus();
-                    return orderStatus == null ||
-                            orderStatus.equals("PENDING_PAY") ||
-                            orderStatus.equals("CREATED");
-                });
-    }
-
-    private CartItem createNewCartItem(String userId, Integer quantity, Product product) {
-        CartItem newItem = new CartItem();
-        newItem.setCartItemId(String.valueOf(idGenerator.nextId()));
-        newItem.setCartId(String.valueOf(userId));
-        newItem.setProductId(String.valueOf(product.getProductId()));
-        newItem.setQuantity(quantity);
-        newItem.setPrice(product.getPrice());
-        newItem.setProductName(product.getName());
-        newItem.setImageUrl(product.getImageUrl());
-        newItem.setOrderStatus("CREATED");
-        return newItem;
+        return cartItems;
     }
 
     @Override
     public List<CartItem> getCartItemsByIds(String userId, List<String> cartItemIds) {
-        // 验证用户
-        User user = userMapper.findByUid(userId);
-        if (user == null) {
-            throw new UserNotFoundException("用户不存在");
-        }
-        // 获取该用户的所有购物车项
-        List<CartItem> allCartItems = cartMapper.findCartItemsByUserId(userId);
-
-        // 筛选出需要的购物车项
-        List<CartItem> filteredCartItems = allCartItems.stream()
-                .filter(cartItem -> cartItemIds.contains(cartItem.getCartItemId()))
+        // 用户ID来自已验证的令牌；购物车只属于该用户，按ID集合一次筛选
+        Set<String> selected = new HashSet<>(cartItemIds);
+        return cartStore.getItems(userId).stream()
+                .filter(cartItem -> selected.contains(cartItem.getCartItemId()))
                 .collect(Collectors.toList());
-        
-        return filteredCartItems;
     }
 
-    private void validateProduct(String productId, Integer quantity) {
-        Product product = productMapper.findById(productId);
+    private Product validateProduct(String productId, Integer quantity) {
+        Product product = productCache.get(productId);
         if (product == null) {
             throw new ProductNotFoundException("商品不存在");
         }
         if (product.getStock() < quantity) {
             throw new InsuffientStockException("商品库存不足");
         }
+        return product;
     }
 
     @Override
     @Transactional
-    public void updateCartItemPaid_quantity(String userId, String productId, Integer paidQuantity) {
-        if (userId == null || productId == null || paidQuantity == null) {
-            log.error("更新购物车支付数量参数错误: userId={}, productId={}, paidQuantity={}",
-                    userId, productId, paidQuantity);
+    public void updatePaidQuantities(String userId, String orderId, Map<String, Integer> paidQuantities) {
+        if (userId == null || orderId == null) {
+            log.error("更新购物车支付数量参数错误: userId={}, orderId={}", userId, orderId);
             throw new IllegalArgumentException("参数不能为空");
         }
-
-        try {
-            cartMapper.updateCartItemPaid_quantity(userId, productId, paidQuantity);
-            log.info("更新购物车支付数量成功: userId={}, productId={}, paidQuantity={}",
-                    userId, productId, paidQuantity);
-        } catch (Exception e) {
-            log.error("更新购物车支付数量失败", e);
-            throw new RuntimeException("更新购物车支付数量失败: " + e.getMessage());
+        if (paidQuantities.isEmpty()) {
+            return;
         }
+
+        // 一条语句按订单商品更新该用户所有购物车项
+        int updated = cartMapper.addPaidQuantitiesByOrder(userId, orderId);
+        // 事务提交后同步 Redis 中的购物车快照
+        afterCommit(() -> cartStore.addPaidQuantities(userId, paidQuantities));
+        log.info("更新购物车支付数量成功: userId={}, orderId={}, 更新{}行", userId, orderId, updated);
     }
 
     @Override
@@ -362,4 +185,17 @@ public class CartServiceImpl implements ICartService {
         return cartMapper.selectCartItemPaid_quantity(cartId);
     }
 
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
 }
\ No newline at end of file
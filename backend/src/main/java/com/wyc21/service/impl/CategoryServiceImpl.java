@@ -1,51 +1,353 @@
 package com.wyc21.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyc21.controller.BaseController;
 import com.wyc21.entity.Category;
+import com.wyc21.entity.CategoryTree;
 import com.wyc21.mapper.CategoryMapper;
 import com.wyc21.service.CategoryService;
+import com.wyc21.service.ex.InsertException;
+import com.wyc21.util.JsonResult;
+import com.wyc21.util.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * 分类树保存为不可变快照，读取时直接返回，不查询数据库。
+ * 分类写入后递增 Redis 中的版本号并通过发布订阅通知所有节点，版本号大于快照版本时重建；
+ * 另有定时任务比较版本号，防止错过通知。
+ * 分类名称路径按快照中的前缀树解析，缺少的分类在数据库命名锁内逐级检查后创建，并发创建同一路径时不会重复插入。
+ */
 @Service
+@Slf4j
 public class CategoryServiceImpl implements CategoryService {
 
+    private static final String VERSION_KEY = "category:tree:version";
+    private static final String CHANGED_CHANNEL = "category:tree:changed";
+
+    // 创建分类时持有的 MySQL 命名锁
+    private static final String CREATE_LOCK_NAME = "wz_category_create";
+    private static final int CREATE_LOCK_TIMEOUT_SECONDS = 10;
+
+    private static final int MAX_NAME_LENGTH = 50;
+
+    private static final String FIND_CHILD_SQL =
+            "SELECT category_id FROM wz_categories WHERE parent_id <=> ? AND name = ? LIMIT 1";
+    private static final String INSERT_SQL =
+            "INSERT INTO wz_categories (category_id, name, parent_id, level, sort_order, is_active, "
+                    + "created_time, modified_time) VALUES (?, ?, ?, ?, 1, 1, NOW(), NOW())";
+
     @Autowired
     private CategoryMapper categoryMapper;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    private final AtomicReference<CategoryTree> snapshot = new AtomicReference<>();
+
+    // 已知的最新版本号，大于快照版本时需要重建
+    private final AtomicLong latestVersion = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // 数据库迁移在 CommandLineRunner 中执行，此时分类表可能还不存在，先使用空快照
+        snapshot.set(build(-1, Collections.emptyList()));
+    }
+
+    // 应用就绪时迁移已完成，订阅版本通知后加载分类树
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                onVersion(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8)));
+            } catch (NumberFormatException e) {
+                log.warn("分类版本通知格式错误: {}", e.getMessage());
+            }
+        }, new ChannelTopic(CHANGED_CHANNEL));
+        checkVersion();
+    }
+
     @Override
     public List<Category> getCategoryTree() {
-        // 获取所有分类
-        List<Category> allCategories = categoryMapper.findAll();
-
-        // 按照父ID分组
-        Map<String, List<Category>> parentIdMap = allCategories.stream()
-                .collect(Collectors.groupingBy(
-                        category -> category.getParentId() != null ? category.getParentId() : "root"));
-
-        // 获取顶级分类
-        List<Category> rootCategories = allCategories.stream()
-                .filter(category -> category.getParentId() == null)
-                .collect(Collectors.toList());
-
-        // 递归设置子分类
-        rootCategories.forEach(category -> {
-            setChildren(category, parentIdMap);
+        return snapshot.get().getRoots();
+    }
+
+    @Override
+    public CategoryTree getSnapshot() {
+        return snapshot.get();
+    }
+
+    @Override
+    public List<String> getSubtreeIds(String categoryId) {
+        return snapshot.get().getSubtreeIds().getOrDefault(categoryId, Collections.emptyList());
+    }
+
+    @Override
+    public List<Category> getAncestorPath(String categoryId) {
+        return snapshot.get().getAncestorPaths().getOrDefault(categoryId, Collections.emptyList());
+    }
+
+    @Override
+    public List<String> resolvePath(List<String> names) {
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("分类不能为空");
+        }
+        for (String name : names) {
+            if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("分类名称不能为空且不能超过" + MAX_NAME_LENGTH + "个字符");
+            }
+        }
+        List<String> ids = snapshot.get().resolve(names);
+        if (ids.size() == names.size()) {
+            return ids;
+        }
+        return createPath(names);
+    }
+
+    /**
+     * 在命名锁内逐级查找或创建分类。使用独立连接并立即提交，
+     * 调用方的事务回滚时已创建的分类保留（空分类不影响展示）。
+     */
+    private List<String> createPath(List<String> names) {
+        List<String> ids = new ArrayList<>(names.size());
+        int created = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            acquireCreateLock(connection);
+            try {
+                connection.setAutoCommit(false);
+                String parentId = null;
+                for (int i = 0; i < names.size(); i++) {
+                    String id = findChild(connection, parentId, names.get(i));
+                    if (id == null) {
+                        id = String.valueOf(idGenerator.nextId());
+                        insert(connection, id, names.get(i), parentId, i + 1);
+                        created++;
+                    }
+                    ids.add(id);
+                    parentId = id;
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                // 命名锁属于连接，归还连接池前必须释放
+                releaseCreateLock(connection);
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new InsertException("创建分类失败: " + String.join(",", names), e);
+        }
+        if (created > 0) {
+            log.info("创建分类{}个: {}", created, String.join(",", names));
+            publishChange();
+        }
+        return ids;
+    }
+
+    private String findChild(Connection connection, String parentId, String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(FIND_CHILD_SQL)) {
+            ps.setString(1, parentId);
+            ps.setString(2, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private void insert(Connection connection, String categoryId, String name, String parentId, int level)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+            ps.setString(1, categoryId);
+            ps.setString(2, name);
+            ps.setString(3, parentId);
+            ps.setInt(4, level);
+            ps.executeUpdate();
+        }
+    }
+
+    private void acquireCreateLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(
+                        "SELECT GET_LOCK('" + CREATE_LOCK_NAME + "', " + CREATE_LOCK_TIMEOUT_SECONDS + ")")) {
+            if (!rs.next() || rs.getInt(1) != 1) {
+                throw new SQLException("获取分类创建锁超时");
+            }
+        }
+    }
+
+    private void releaseCreateLock(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT RELEASE_LOCK('" + CREATE_LOCK_NAME + "')");
+        }
+    }
+
+    @Override
+    public void categoriesChanged() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publishChange();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publishChange();
+            }
         });
+    }
+
+    /**
+     * 兜底：定时读取版本号，订阅断开或启动时加载失败后也能追上
+     */
+    @Scheduled(initialDelayString = "${category.tree.check-interval-ms:60000}",
+            fixedDelayString = "${category.tree.check-interval-ms:60000}")
+    public void checkVersion() {
+        long version = 0;
+        try {
+            String value = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+            version = value != null ? Long.parseLong(value) : 0;
+        } catch (DataAccessException | NumberFormatException e) {
+            log.warn("读取分类版本号失败: {}", e.getMessage());
+        }
+        onVersion(version);
+    }
 
-        return rootCategories;
+    private void publishChange() {
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+            stringRedisTemplate.convertAndSend(CHANGED_CHANNEL, String.valueOf(version));
+        } catch (DataAccessException e) {
+            // 其他节点在下次定时检查时重建，本节点立即重建（版本号不变）
+            log.warn("分类版本通知失败: {}", e.getMessage());
+            refresh(true);
+        }
+    }
+
+    private void onVersion(long version) {
+        latestVersion.accumulateAndGet(version, Math::max);
+        refresh(false);
+    }
+
+    // 串行重建；重建期间收到的多个版本合并为一次
+    private synchronized void refresh(boolean force) {
+        long version = latestVersion.get();
+        if (!force && snapshot.get().getVersion() >= version) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            CategoryTree tree = build(version, categoryMapper.findAll());
+            snapshot.set(tree);
+            log.info("分类树已重建: 版本{}, {}个分类, {}字节, 耗时{}ms",
+                    version, tree.getById().size(), tree.getJson().length, System.currentTimeMillis() - start);
+        } catch (DataAccessException e) {
+            // 保留旧快照，下次定时检查时重试
+            log.error("分类树重建失败，继续使用版本{}: {}", snapshot.get().getVersion(), e.getMessage());
+        }
+    }
+
+    private CategoryTree build(long version, List<Category> allCategories) {
+        Map<String, Category> byId = new HashMap<>();
+        Map<String, List<Category>> childrenMap = new HashMap<>();
+        List<Category> roots = new ArrayList<>();
+        for (Category category : allCategories) {
+            byId.put(category.getCategoryId(), category);
+        }
+        // findAll 已按 level、sort_order 排序，子分类列表保持该顺序
+        for (Category category : allCategories) {
+            if (category.getParentId() == null) {
+                roots.add(category);
+            } else if (byId.containsKey(category.getParentId())) {
+                childrenMap.computeIfAbsent(category.getParentId(), k -> new ArrayList<>()).add(category);
+            }
+        }
+        childrenMap.forEach((parentId, children) ->
+                byId.get(parentId).setChildren(Collections.unmodifiableList(children)));
+
+        // 从顶级分类向下遍历，预先计算祖先路径、子树和名称前缀树
+        Map<String, List<String>> subtreeIds = new HashMap<>();
+        Map<String, List<Category>> ancestorPaths = new HashMap<>();
+        CategoryTree.Node trie = new CategoryTree.Node(null);
+        for (Category root : roots) {
+            index(root, Collections.emptyList(), trie, subtreeIds, ancestorPaths);
+        }
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(new JsonResult<>(BaseController.OK, roots));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("分类树序列化失败", e);
+        }
+        String etag = "\"" + HexFormat.of().formatHex(sha256().digest(json), 0, 8) + "\"";
+        return new CategoryTree(version, roots, json, etag, byId, subtreeIds, ancestorPaths, trie);
+    }
+
+    private List<String> index(Category category, List<Category> parentPath, CategoryTree.Node parentNode,
+            Map<String, List<String>> subtreeIds, Map<String, List<Category>> ancestorPaths) {
+        CategoryTree.Node node = parentNode.add(category.getName(), category.getCategoryId());
+        List<Category> path = new ArrayList<>(parentPath.size() + 1);
+        path.addAll(parentPath);
+        path.add(category);
+        ancestorPaths.put(category.getCategoryId(), Collections.unmodifiableList(path));
+
+        List<String> ids = new ArrayList<>();
+        ids.add(category.getCategoryId());
+        if (category.getChildren() != null) {
+            for (Category child : category.getChildren()) {
+                ids.addAll(index(child, path, node, subtreeIds, ancestorPaths));
+            }
+        }
+        subtreeIds.put(category.getCategoryId(), Collections.unmodifiableList(ids));
+        return ids;
     }
 
-    private void setChildren(Category parent, Map<String, List<Category>> parentIdMap) {
-        List<Category> children = parentIdMap.getOrDefault(parent.getCategoryId(), new ArrayList<>());
-        if (!children.isEmpty()) {
-            parent.setChildren(children);
-            // 递归设置子分类的子分类
-            children.forEach(child -> setChildren(child, parentIdMap));
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
-}
\ No newline at end of file
+}
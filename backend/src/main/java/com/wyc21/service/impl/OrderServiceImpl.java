@@ -1,10 +1,16 @@
 package com.wyc21.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -31,7 +37,6 @@ import org.springframework.transaction.annotation.Propagation;
 import com.wyc21.service.ex.OrderStatusException;
 import com.wyc21.service.ex.OrderExpiredException;
 import com.wyc21.service.ex.OrderNotFoundException;
-import org.springframework.jdbc.core.JdbcTemplate;
 import java.util.Collections;
 import com.wyc21.service.ex.AccessDeniedException;
 import java.util.Map;
@@ -39,7 +44,15 @@ import java.util.HashMap;
 import com.wyc21.util.JsonResult;
 import com.wyc21.service.ICartService;
 import com.wyc21.service.ex.CartNotFoundException;
+import com.wyc21.service.IStockReservationService;
 import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import com.wyc21.util.OrderExpiryQueue;
+import com.wyc21.util.ProductCache;
+import com.wyc21.util.CursorUtil;
+import com.wyc21.entity.CursorPage;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -62,19 +75,36 @@ public class OrderServiceImpl implements IOrderService {
     private ProductMapper productMapper;
 
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private ProductCache productCache;
 
     @Autowired
     private ICartService cartService;
 
+    @Autowired
+    private IStockReservationService stockReservationService;
+
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     // 订单过期时间
     private static final long ORDER_EXPIRE_MINUTES = 30;
 
+    // 兜底扫描单批处理的过期订单数
+    private static final int EXPIRE_SWEEP_BATCH_SIZE = 500;
+
+    // 订单列表每页（每批）条数上限
+    private static final int ORDER_PAGE_SIZE = 100;
+
+    private final DefaultRedisScript<String> payScript = loadScript("lua/order_pay.lua", String.class);
+
     @Override
     @Transactional
     public Order createOrderDirect(String userId, String productId, Integer quantity) {
         // 获取商品信息
-        Product product = productMapper.findById(productId);
+        Product product = productCache.get(productId);
         if (product == null) {
             throw new ProductNotFoundException("商品不存在");
         }
@@ -97,68 +127,27 @@ public class OrderServiceImpl implements IOrderService {
 
         // 插入订单到数据库
         orderMapper.insert(order);
+
+        // 加入过期延迟队列
+        orderExpiryQueue.add(order.getOrderId(), order.getExpireTime());
         return order;
     }
 
     @Override
     @Transactional
-    public Order createOrderFromCart(String userId, List<String> cartItemIds) {
-        // 验证用户
-        User user = userMapper.findByUid(userId);
-        if (user == null) {
-            throw new UserNotFoundException("用户不存在");
-        }
-        
+    public Order createOrderFromCart(String userId, String username, List<String> cartItemIds) {
+        // 用户身份来自已验证的令牌，不再查询用户表；旧令牌中没有用户名时记录用户ID
+        String operator = username != null ? username : userId;
+
         // 获取购物车商品
         List<CartItem> cartItems = cartService.getCartItemsByIds(userId, cartItemIds);
         if (cartItems.isEmpty()) {
             throw new CartNotFoundException("未找到选中的商品");
         }
+        validateCartItems(cartItems);
 
         // 创建订单
-        Order order = createOrderFromItems(userId, cartItems);
-
-     
-
-        return order;
-    }
-
-    private Product validateProduct(String productId, Integer quantity) {
-        Product product = productMapper.findById(productId);
-        if (product == null) {
-            throw new ProductNotFoundException("商品不存在");
-        }
-        if (product.getStock() < quantity) {
-            throw new InsuffientStockException("商品库存不足");
-        }
-        return product;
-    }
-
-    private Order createOrder(String userId) {
-        Order order = new Order();
-        order.setOrderId(idGenerator.nextId().toString());
-        order.setUserId(userId);
-        order.setStatus(OrderStatus.PENDING_PAY);
-        order.setCreatedTime(LocalDateTime.now());
-        order.setExpireTime(LocalDateTime.now().plusMinutes(ORDER_EXPIRE_MINUTES));
-        return order;
-    }
-
-    private OrderItem createOrderItem(String orderId, Product product, Integer quantity) {
-        OrderItem orderItem = new OrderItem();
-        orderItem.setOrderItemId(idGenerator.nextId().toString());
-        orderItem.setOrderId(orderId);
-        orderItem.setProductId(String.valueOf(product.getProductId()));
-        orderItem.setProductName(product.getName());
-        orderItem.setQuantity(quantity);
-        orderItem.setPrice(product.getPrice());
-        orderItem.setCreatedTime(LocalDateTime.now());
-        return orderItem;
-    }
-
-    private void saveOrder(Order order, OrderItem orderItem) {
-        orderMapper.insert(order);
-        orderMapper.insertOrderItem(orderItem);
+        return createOrderFromItems(userId, operator, cartItems);
     }
 
     private void saveOrder(Order order, List<OrderItem> orderItems) {
@@ -166,13 +155,6 @@ public class OrderServiceImpl implements IOrderService {
         orderMapper.batchInsertOrderItems(orderItems);
     }
 
-    private void processCartItems(List<CartItem> cartItems) {
-        for (CartItem item : cartItems) {
-            decreaseStock(item.getProductId(), item.getQuantity());
-            cartService.deleteCartItem(item.getCartId(), item.getCartItemId());
-        }
-    }
-
     @Override
     @Transactional
     public Order createOrder(String userId, List<CartItem> items) {
@@ -184,7 +166,7 @@ public class OrderServiceImpl implements IOrderService {
 
         // 2. 验证商品库存
         for (CartItem item : items) {
-            Product product = productMapper.findById(item.getProductId());
+            Product product = productCache.get(item.getProductId());
             if (product == null) {
                 throw new ProductNotFoundException("商品不存在：" + item.getProductId());
             }
@@ -222,10 +204,14 @@ public class OrderServiceImpl implements IOrderService {
         order.setModifiedTime(LocalDateTime.now());
         order.setModifiedUser(user.getUsername());
 
-        // 5. 保存订单
+        // 5. 一次性预占所有商品的库存
+        stockReservationService.reserve(orderId, toQuantities(items));
+
+        // 6. 保存订单
         orderMapper.insert(order);
 
-        // 6. 保存订单商品并扣减库存
+        // 7. 批量保存订单商品
+        List<OrderItem> orderItems = new ArrayList<>(items.size());
         for (CartItem item : items) {
             OrderItem orderItem = new OrderItem();
             orderItem.setOrderItemId(idGenerator.nextId().toString());
@@ -239,13 +225,11 @@ public class OrderServiceImpl implements IOrderService {
             orderItem.setModifiedUser(user.getUsername());
             orderItem.setCreatedTime(LocalDateTime.now());
             orderItem.setModifiedTime(LocalDateTime.now());
-            orderMapper.insertOrderItem(orderItem);
-
-            // 扣减库存
-            productMapper.decreaseStock(item.getProductId(), item.getQuantity());
+            orderItems.add(orderItem);
         }
+        orderMapper.batchInsertOrderItems(orderItems);
 
-        // 7. 更新订单状态为待支付
+        // 8. 更新订单状态为待支付
         order.setStatus(OrderStatus.PENDING_PAY);
         Map<String, Object> params = new HashMap<>();
         params.put("orderId", orderId);
@@ -253,127 +237,127 @@ public class OrderServiceImpl implements IOrderService {
         params.put("modifiedUser", user.getUsername());
         orderMapper.updateOrderStatus(params);
 
-        // 8. 设置Redis过期时间
+        // 9. 设置Redis过期时间
         String orderKey = "order:" + order.getOrderId();
         redisTemplate.opsForValue().set(orderKey, OrderStatus.PENDING_PAY.name(),
                 ORDER_EXPIRE_MINUTES, TimeUnit.MINUTES);
 
+        // 10. 加入过期延迟队列
+        orderExpiryQueue.add(orderId, order.getExpireTime());
+
         return order;
     }
 
+    // 订单已过期时提交过期状态和库存归还后再抛出过期异常：Redis 中的预占释放无法随事务回滚
     @Override
-    @Transactional
-    public boolean payOrder(String orderId, String paymentId) {
-        // 从 Redis 获取订单状态
+    @Transactional(rollbackFor = Exception.class, noRollbackFor = OrderExpiredException.class)
+    public boolean payOrder(String orderId, String paymentId, String userId) {
+        // 一个 Lua 脚本原子地把 Redis 中的状态从待支付改为已支付，重复的支付回调在这里直接拒绝
         String orderKey = "order:" + orderId;
-        String status = redisTemplate.opsForValue().get(orderKey);
+        String status = redisTemplate.execute(payScript, Collections.singletonList(orderKey),
+                OrderStatus.PENDING_PAY.name(), OrderStatus.PAID.name());
+        if (status != null && !OrderStatus.PENDING_PAY.name().equals(status)) {
+            throw new OrderStatusException("订单状态不正确");
+        }
+        if (status != null) {
+            // 后续失败回滚时删除 Redis 状态，下次以数据库为准
+            afterRollback(() -> redisTemplate.delete(orderKey));
+        }
 
-        // 如果 Redis 中没有状态，则从数据库中查询
         Order order = orderMapper.findById(orderId);
         if (order == null) {
             log.error("订单不存在: {}", orderId);
             throw new OrderNotFoundException("订单不存在：" + orderId);
         }
+        if (userId != null && !userId.equals(order.getUserId())) {
+            throw new AccessDeniedException("无权访问此订单");
+        }
 
-        log.info("从Redis获取的订单状态: {}", status);
-        log.info("从数据库获取的订单状态: {}", order.getStatus().name());
-        log.info("当前版本号: {}", order.getVersion());
-
-        // 如果 Redis 返回 null，检查订单是否过期
+        // Redis 中没有状态时以数据库为准，并检查订单是否过期
         if (status == null) {
-            // 再次检查订单的过期时间
+            if (order.getStatus() != OrderStatus.PENDING_PAY) {
+                throw new OrderStatusException("订单状态不正确");
+            }
             if (order.getExpireTime().isBefore(LocalDateTime.now())) {
-                // 更新订单状态为过期
-                order.setStatus(OrderStatus.EXPIRED);
-                order.setModifiedTime(LocalDateTime.now());
-                order.setModifiedUser("system");
-
-                // 更新数据库
-                orderMapper.updateOrder(order);
-
-                // 恢复库存
-                List<OrderItem> orderItems = orderMapper.findOrderItems(orderId);
-                for (OrderItem item : orderItems) {
-                    productMapper.increaseStock(item.getProductId(), item.getQuantity());
-                }
-
-                // 删除Redis中的key
-                redisTemplate.delete(orderKey);
+                // 与延迟队列相同的过期处理：锁定后只有仍为待支付的订单才会关闭并恢复库存，不会重复归还
+                expireOrders(Collections.singletonList(orderId));
+                orderExpiryQueue.remove(orderId);
 
                 throw new OrderExpiredException("订单已过期");
             }
-        } else {
-            // 检查订单状态
-            if (!OrderStatus.PENDING_PAY.name().equals(status)) {
-                throw new OrderStatusException("订单状态不正确");
-            }
         }
 
-        // 更新订单状态
-        order.setStatus(OrderStatus.PAID);
+        // 带版本号更新订单状态，只有仍为待支付时才会成功
         order.setPaymentId(paymentId);
         order.setPayTime(LocalDateTime.now());
         order.setModifiedTime(LocalDateTime.now());
         order.setModifiedUser("system");
+        if (orderMapper.markPaid(order) == 0) {
+            log.warn("订单已被其他操作修改，支付未生效: {}", orderId);
+            redisTemplate.delete(orderKey);
+            return false;
+        }
+        order.setStatus(OrderStatus.PAID);
 
-        // 获取订单项并更新购物车已支付数量
+        // 一条语句按订单商品累加购物车已支付数量
         List<OrderItem> orderItems = orderMapper.findOrderItems(orderId);
-        if (orderItems != null && !orderItems.isEmpty()) {
-            for (OrderItem item : orderItems) {
-                cartService.updateCartItemPaid_quantity(
-                        order.getUserId(),
-                        item.getProductId(),
-                        item.getQuantity());
-            }
-        }
+        cartService.updatePaidQuantities(order.getUserId(), orderId, toOrderItemQuantities(orderItems));
 
-        int updated = orderMapper.updateOrder(order);
-        if (updated > 0) {
-            orderKey = "order:" + orderId;
+        if (status == null) {
             redisTemplate.opsForValue().set(orderKey, OrderStatus.PAID.name());
-            return true;
         }
-        return false;
+        stockReservationService.confirm(orderId);
+        orderExpiryQueue.remove(orderId);
+        return true;
     }
 
+    @Override
     @Transactional
+    public List<String> expireOrders(List<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 1. 锁定仍处于待支付状态的订单，已支付或已取消的直接跳过
+        List<String> expiredIds = orderMapper.lockPendingOrders(orderIds);
+        if (expiredIds.isEmpty()) {
+            return expiredIds;
+        }
+
+        // 2. 一条语句批量更新为过期
+        orderMapper.batchUpdateStatus(expiredIds, OrderStatus.EXPIRED.name(), "system");
+
+        // 3. 一次查询取出所有订单项，按订单分组后批量恢复库存
+        Map<String, Map<String, Integer>> orderQuantities = new LinkedHashMap<>();
+        for (OrderItem item : orderMapper.findOrderItemsByOrderIds(expiredIds)) {
+            orderQuantities.computeIfAbsent(item.getOrderId(), id -> new LinkedHashMap<>())
+                    .merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        stockReservationService.releaseAll(orderQuantities);
+
+        // 4. 删除Redis中的key
+        redisTemplate.delete(expiredIds.stream().map(id -> "order:" + id).collect(Collectors.toList()));
+
+        return expiredIds;
+    }
+
+    // 兜底扫描：正常情况下过期订单由延迟队列处理，这里只补漏（如入队时 Redis 不可用）
+    // 每批在独立事务中处理，行锁只持有一批的时间；某批失败时该批整体回滚，已提交的批次不受影响
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void checkExpiredOrders() {
         try {
-            // 获取所有过期未支付的订单
-            List<Order> expiredOrders = orderMapper.findExpiredOrders(LocalDateTime.now());
-            log.info("找到{}个过期订单", expiredOrders.size());
-
-            for (Order order : expiredOrders) {
-                try {
-                    log.info("处理过期订单，订单ID: {}, 当前版本号: {}", order.getOrderId(), order.getVersion());
-
-                    // 更新订单状态为过期
-                    order.setStatus(OrderStatus.EXPIRED);
-                    order.setModifiedTime(LocalDateTime.now());
-                    order.setModifiedUser("system");
-
-                    // 更新数据库
-                    int updated = orderMapper.updateOrder(order);
-                    if (updated > 0) {
-                        log.info("订单状态已更新为过期: {}", order.getOrderId());
-
-                        // 恢复库存
-                        List<OrderItem> orderItems = orderMapper.findOrderItems(order.getOrderId());
-                        for (OrderItem item : orderItems) {
-                            productMapper.increaseStock(item.getProductId(), item.getQuantity());
-                        }
-
-                        // 删除Redis中的key
-                        String orderKey = "order:" + order.getOrderId();
-                        redisTemplate.delete(orderKey);
-
-                        log.info("订单{}已过期，库存已恢复", order.getOrderId());
-                    } else {
-                        log.error("更新订单状态失败: {}", order.getOrderId());
-                    }
-                } catch (Exception e) {
-                    log.error("处理过期订单失败: {}", order.getOrderId(), e);
+            int total = 0;
+            List<String> expiredIds;
+            do {
+                expiredIds = orderMapper.findExpiredOrderIds(LocalDateTime.now(), EXPIRE_SWEEP_BATCH_SIZE);
+                if (!expiredIds.isEmpty()) {
+                    List<String> batch = expiredIds;
+                    total += transactionTemplate.execute(status -> expireOrders(batch)).size();
                 }
+            } while (expiredIds.size() == EXPIRE_SWEEP_BATCH_SIZE);
+            if (total > 0) {
+                log.info("兜底扫描处理了{}个过期订单", total);
             }
         } catch (Exception e) {
             log.error("检查过期订单时发生错误", e);
@@ -403,14 +387,13 @@ public class OrderServiceImpl implements IOrderService {
         // 5. 只有创建状态或待支付状态的订单需要恢复库存
         if (status == OrderStatus.CREATED || status == OrderStatus.PENDING_PAY) {
             List<OrderItem> orderItems = orderMapper.findOrderItems(orderId);
-            for (OrderItem item : orderItems) {
-                productMapper.increaseStock(item.getProductId(), item.getQuantity());
-            }
+            stockReservationService.release(orderId, toOrderItemQuantities(orderItems));
         }
 
         // 6. 删除 Redis 中的订单状态
         String orderKey = "order:" + orderId;
         redisTemplate.delete(orderKey);
+        orderExpiryQueue.remove(orderId);
     }
 
     private String generateOrderId() {
@@ -421,50 +404,65 @@ public class OrderServiceImpl implements IOrderService {
         return timeStr + randomStr;
     }
 
-    private boolean doPayment(String paymentId, BigDecimal amount) {
-        // 这里应该调用实际的支付接口
-        // 为了演示，我们模拟支付过程
-        try {
-            Thread.sleep(1000); // 模拟支付耗时
-            return true; // 模拟支付成功
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
-        }
-    }
-
     @Override
     public Order getOrder(String orderId) {
         return orderMapper.findById(orderId);
     }
 
-    private boolean isDatabaseInitialized() {
-        try {
-            // 查询 wz_users 表是否存在数据
-            String sql = "SELECT COUNT(*) FROM wz_users";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
-            return count != null && count > 0; // 如果表存在且有数据，返回 true
-        } catch (Exception e) {
-            log.warn("数据库未初始化或表不存在: {}", e.getMessage());
-            return false; // 如果查询失败，返回 false
-        }
-    }
-
     @Override
     public List<Order> getOrdersByUserId(String userId) {
-        // 获取用户的所有订单
+        // 获取用户的所有订单（SQL 已按创建时间降序）
         List<Order> orders = orderMapper.findByUserId(userId);
 
-        // 为每个订单加载订单项
-        for (Order order : orders) {
-            List<OrderItem> items = orderMapper.findOrderItems(order.getOrderId());
-            order.setItems(items);
+        // 按批一次查询订单项，避免每个订单查询一次
+        for (int from = 0; from < orders.size(); from += ORDER_PAGE_SIZE) {
+            attachItems(orders.subList(from, Math.min(from + ORDER_PAGE_SIZE, orders.size())));
         }
+        return orders;
+    }
 
-        // 按创建时间降序排序（最新的订单在前）
-        orders.sort((o1, o2) -> o2.getCreatedTime().compareTo(o1.getCreatedTime()));
+    @Override
+    public CursorPage<Order> getOrdersByCursor(String userId, String cursor, int size) {
+        size = Math.min(Math.max(1, size), ORDER_PAGE_SIZE);
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+
+        // 多取一条判断是否还有下一页
+        List<Order> orders = orderMapper.findOrdersAfter(userId,
+                position != null ? position.getTime() : null,
+                position != null ? position.getId() : null,
+                size + 1);
+        String nextCursor = null;
+        if (orders.size() > size) {
+            orders = orders.subList(0, size);
+            Order last = orders.get(size - 1);
+            nextCursor = CursorUtil.encode(last.getCreatedTime(), last.getOrderId());
+        }
+        attachItems(orders);
+        return new CursorPage<>(orders, nextCursor, null);
+    }
 
-        return orders;
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamOrdersByUserId(String userId, Consumer<List<Order>> consumer) {
+        String cursor = null;
+        do {
+            CursorPage<Order> page = getOrdersByCursor(userId, cursor, ORDER_PAGE_SIZE);
+            consumer.accept(page.getList());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    // 一次 IN 查询加载一批订单的订单项
+    private void attachItems(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<String> orderIds = orders.stream().map(Order::getOrderId).collect(Collectors.toList());
+        Map<String, List<OrderItem>> itemsByOrder = orderMapper.findOrderItemsByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        for (Order order : orders) {
+            order.setItems(itemsByOrder.getOrDefault(order.getOrderId(), new ArrayList<>()));
+        }
     }
 
     @Override
@@ -497,7 +495,7 @@ public class OrderServiceImpl implements IOrderService {
         }
     }
 
-    private Order createOrderFromItems(String userId, List<CartItem> items) {
+    private Order createOrderFromItems(String userId, String username, List<CartItem> items) {
         // 创建订单
         Order order = new Order();
         String orderId = String.valueOf(idGenerator.nextId());
@@ -505,9 +503,9 @@ public class OrderServiceImpl implements IOrderService {
         order.setUserId(userId);
         order.setStatus(OrderStatus.PENDING_PAY); // 直接设置枚举值
 
-        // 计算总金额
+        // 计算总金额（按未支付的数量）
         BigDecimal totalAmount = items.stream()
-                .map(item -> item.getPrice().multiply(new BigDecimal(item.getQuantity())))
+                .map(item -> item.getPrice().multiply(new BigDecimal(item.getQuantity() - item.getPaidQuantity())))
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         order.setTotalAmount(totalAmount);
@@ -516,14 +514,12 @@ public class OrderServiceImpl implements IOrderService {
         LocalDateTime now = LocalDateTime.now();
         order.setCreatedTime(now);
         order.setModifiedTime(now);
-        String username = userMapper.findByUid(userId).getUsername();
         order.setCreatedUser(username);
         order.setModifiedUser(username);
-       
-        // 保存订单
-        orderMapper.insert(order);
+        order.setExpireTime(now.plusMinutes(ORDER_EXPIRE_MINUTES));
 
         // 创建订单项
+        List<OrderItem> orderItems = new ArrayList<>(items.size());
         for (CartItem item : items) {
             OrderItem orderItem = new OrderItem();
             orderItem.setOrderItemId(idGenerator.nextId().toString());
@@ -536,61 +532,92 @@ public class OrderServiceImpl implements IOrderService {
             orderItem.setCreatedTime(now);
             orderItem.setModifiedUser(username);
             orderItem.setModifiedTime(now);
+            orderItems.add(orderItem);
+        }
 
-            orderMapper.insertOrderItem(orderItem);
+        // 一次性预占所有商品的库存（按实际下单数量）
+        stockReservationService.reserve(orderId, toOrderItemQuantities(orderItems));
 
-            // 扣减库存
-            productMapper.decreaseStock(item.getProductId(), item.getQuantity());
-        }
+        // 保存订单及所有订单项（一条批量插入）
+        saveOrder(order, orderItems);
 
         // 设置订单过期时间
         String orderKey = "order:" + orderId;
         redisTemplate.opsForValue().set(orderKey, OrderStatus.PENDING_PAY.name(),
                 ORDER_EXPIRE_MINUTES, TimeUnit.MINUTES);
+        orderExpiryQueue.add(orderId, order.getExpireTime());
 
         return order;
     }
 
-    private void decreaseStock(String productId, Integer quantity) {
-        productMapper.decreaseStock(productId, quantity);
+    // 合并同一商品的数量: 商品ID -> 数量
+    private Map<String, Integer> toQuantities(List<CartItem> items) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private Map<String, Integer> toOrderItemQuantities(List<OrderItem> orderItems) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : orderItems) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
     }
 
+    /**
+     * 一条 IN 查询取出选中商品的当前价格和库存，一次遍历完成校验，并按当前价格结算
+     */
     private void validateCartItems(List<CartItem> cartItems) {
+        List<String> productIds = cartItems.stream()
+                .map(CartItem::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : productMapper.findByIds(productIds)) {
+            products.put(product.getProductId(), product);
+        }
+
         for (CartItem item : cartItems) {
-            Product product = productMapper.findById(item.getProductId());
+            Product product = products.get(item.getProductId());
             if (product == null) {
                 throw new ProductNotFoundException("商品不存在: " + item.getProductId());
             }
-            if (product.getStock() < item.getQuantity()) {
+            int quantity = item.getQuantity() - item.getPaidQuantity();
+            if (quantity <= 0) {
+                throw new CartNotFoundException("商品已支付: " + product.getName());
+            }
+            if (product.getStock() < quantity) {
                 throw new InsuffientStockException("商品库存不足: " + product.getName());
             }
+            if (product.getPrice().compareTo(item.getPrice()) != 0) {
+                log.info("购物车商品价格已变化，按当前价格结算: 商品ID = {}, 加入时价格 = {}, 当前价格 = {}",
+                        item.getProductId(), item.getPrice(), product.getPrice());
+                item.setPrice(product.getPrice());
+            }
         }
     }
 
-    private List<OrderItem> createOrderItemsFromCart(String orderId, List<CartItem> cartItems) {
-        return cartItems.stream().map(item -> {
-            OrderItem orderItem = new OrderItem();
-            orderItem.setOrderItemId(idGenerator.nextId().toString());
-            orderItem.setOrderId(orderId);
-            orderItem.setProductId(item.getProductId());
-            orderItem.setProductName(item.getProductName());
-            orderItem.setQuantity(item.getQuantity());
-            orderItem.setPrice(item.getPrice());
-            orderItem.setCreatedTime(LocalDateTime.now());
-            orderItem.setCreatedUser("system");
-            return orderItem;
-        }).collect(Collectors.toList());
+    private void afterRollback(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    task.run();
+                }
+            }
+        });
     }
 
-    private OrderItem createOrderItem(String orderId, CartItem item) {
-        OrderItem orderItem = new OrderItem();
-        orderItem.setOrderItemId(idGenerator.nextId().toString());
-        orderItem.setOrderId(orderId);
-        orderItem.setProductId(item.getProductId());
-        orderItem.setProductName(item.getProductName());
-        orderItem.setQuantity(item.getQuantity());
-        orderItem.setPrice(item.getPrice());
-        orderItem.setCreatedTime(LocalDateTime.now());
-        return orderItem;
+    private static <T> DefaultRedisScript<T> loadScript(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
     }
-}
\ No newline at end of file
+}
@@ -11,11 +11,21 @@ import com.wyc21.mapper.ProductMapper;
 import java.util.List;
 import java.time.LocalDateTime;
 import org.springframework.transaction.annotation.Transactional;
-import com.wyc21.entity.Category;
 
 import com.wyc21.util.SnowflakeIdGenerator;
+import com.wyc21.util.ProductCache;
+import com.wyc21.util.CountCache;
+import com.wyc21.util.CursorUtil;
+import com.wyc21.entity.CursorPage;
+import com.wyc21.entity.RatingSummary;
+import com.wyc21.service.ex.ProductNotFoundException;
+import com.wyc21.service.ex.ServiceException;
+import com.wyc21.util.RatingAggregator;
+import com.wyc21.service.IStockReservationService;
+import com.wyc21.service.ProductSearchService;
+import com.wyc21.service.CategoryService;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.Collections;
 
 @Service
 @Slf4j
@@ -27,18 +37,56 @@ public class ProductServiceImpl implements ProductService {
     @Autowired
     private SnowflakeIdGenerator idGenerator;
 
+    @Autowired
+    private IStockReservationService stockReservationService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private CountCache countCache;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private RatingAggregator ratingAggregator;
+
+    // 单页最大条数
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // 页码分页允许的最大偏移量，超出时只返回总数，更深的翻页使用游标分页
+    private static final int MAX_PAGE_OFFSET = 10000;
+
+    private static final BigDecimal MAX_RATING = new BigDecimal("5");
+
     @Override
     public PageResult<Product> getProducts(Long categoryId, String keyword, int pageNum, int pageSize,
             String imageUrl) {
         // 验证并修正分页参数
         pageNum = Math.max(1, pageNum); // 页码最小为1
-        pageSize = Math.max(1, pageSize); // 每页大小最小为1
+        pageSize = Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE); // 每页大小 1~100
         log.info("categoryId: {}", categoryId);
+
+        // 有关键词时走全文索引，索引未就绪时回退到数据库查询；
+        // imageUrl 条件索引中没有，带该条件时直接查数据库
+        if (hasText(keyword) && !hasText(imageUrl)) {
+            PageResult<Product> result = productSearchService.search(keyword.trim(),
+                    categoryId != null ? String.valueOf(categoryId) : null, pageNum, pageSize);
+            if (result != null) {
+                return result;
+            }
+        }
+
         // 计算偏移量
-        int offset = (pageNum - 1) * pageSize;
+        long offset = (long) (pageNum - 1) * pageSize;
        
         // 查询数据
-        List<Product> products = productMapper.findProducts(categoryId, keyword, offset, pageSize, imageUrl);
+        List<Product> products = offset > MAX_PAGE_OFFSET ? Collections.emptyList()
+                : productMapper.findProducts(categoryId, keyword, (int) offset, pageSize, imageUrl);
         long total = productMapper.countProducts(categoryId, keyword, imageUrl);
        
         // 返回分页结果
@@ -47,7 +95,7 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Product getProduct(String productId) {
-        return productMapper.findById(productId);
+        return productCache.get(productId);
     }
 
     @Override
@@ -75,40 +123,9 @@ public class ProductServiceImpl implements ProductService {
             throw new IllegalArgumentException("分类不能为空");
         }
 
-        // 处理分类
-        String[] categories = product.getCategoryId().split(",");
-        String mainCategoryId = null;
-        String parentId = null;
-
-        for (int i = 0; i < categories.length; i++) {
-            String categoryName = categories[i].trim();
-            Category existingCategory = productMapper.findCategoryByName(categoryName);
-
-            if (existingCategory == null) {
-                // 创建新分类
-                Category newCategory = new Category();
-                newCategory.setCategoryId(String.valueOf(idGenerator.nextId()));
-                newCategory.setName(categoryName);
-                newCategory.setParentId(parentId);
-                newCategory.setLevel(i + 1);
-                newCategory.setSortOrder(1);
-                newCategory.setIsActive(true);
-                newCategory.setCreatedTime(LocalDateTime.now());
-                newCategory.setModifiedTime(LocalDateTime.now());
-
-                productMapper.insertCategory(newCategory);
-
-                if (i == 0) {
-                    mainCategoryId = newCategory.getCategoryId();
-                }
-                parentId = newCategory.getCategoryId();
-            } else {
-                if (i == 0) {
-                    mainCategoryId = existingCategory.getCategoryId();
-                }
-                parentId = existingCategory.getCategoryId();
-            }
-        }
+        // 按名称路径解析分类（内存前缀树），缺少的分类逐级创建；商品归属顶级分类
+        List<String> categoryIds = categoryService.resolvePath(CategoryService.splitPath(product.getCategoryId()));
+        String mainCategoryId = categoryIds.get(0);
 
         // 设置商品信息
         product.setProductId(String.valueOf(idGenerator.nextId()));
@@ -121,6 +138,7 @@ public class ProductServiceImpl implements ProductService {
 
         // 插入商品
         productMapper.insertProduct(product);
+        productSearchService.update(product.getProductId());
     }
 
     @Override
@@ -153,6 +171,13 @@ public class ProductServiceImpl implements ProductService {
         // 更新修改时间
         product.setModifiedTime(LocalDateTime.now());
         productMapper.updateProduct(product);
+        productCache.evict(product.getProductId());
+        productSearchService.update(product.getProductId());
+
+        // 库存被直接修改，同步到库存预占引擎
+        if (product.getStock() != null) {
+            stockReservationService.refresh(product.getProductId(), product.getStock());
+        }
     }
 
     @Override
@@ -178,16 +203,28 @@ public class ProductServiceImpl implements ProductService {
         product.setIsActive(0);
         product.setModifiedTime(LocalDateTime.now());
         productMapper.updateProduct(product);
+        productCache.evict(productId);
+        productSearchService.update(productId);
     }
 
     @Override
     public PageResult<Product> searchProducts(String keyword, int page, int size) {
+        page = Math.max(1, page);
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+
+        // 优先走全文索引：按相关度排序，一次查询得到结果和总数
+        if (hasText(keyword)) {
+            PageResult<Product> result = productSearchService.search(keyword.trim(), null, page, size);
+            if (result != null) {
+                return result;
+            }
+        }
+
         // 计算分页偏移量
-        int offset = (page - 1) * size;
-        System.out.println("==================== " + offset);
+        long offset = (long) (page - 1) * size;
         // 获取匹配的商品列表
-        List<Product> products = productMapper.searchProducts(keyword, offset, size);
-        System.out.println("==================== " + products);
+        List<Product> products = offset > MAX_PAGE_OFFSET ? Collections.emptyList()
+                : productMapper.searchProducts(keyword, (int) offset, size);
         // 获取总记录数
         int total = productMapper.countSearchProducts(keyword);
 
@@ -195,6 +232,20 @@ public class ProductServiceImpl implements ProductService {
         return new PageResult<>(products, total, page, size);
     }
 
+    @Override
+    public CursorPage<Product> searchProductsByCursor(String keyword, String cursor, int size) {
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        // 没有关键词时按全部在售商品分页
+        if (!hasText(keyword)) {
+            return getProductsByCursor(null, cursor, size, false);
+        }
+        CursorPage<Product> result = productSearchService.searchAfter(keyword.trim(), null, cursor, size);
+        if (result == null) {
+            throw new ServiceException("搜索索引尚未就绪，请稍后重试");
+        }
+        return result;
+    }
+
     @Override
     public List<Product> getProductsByUserId(String userId) {
         return productMapper.findProductsByUserId(userId); // 调用Mapper方法
@@ -202,43 +253,109 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public PageResult<ProductReview> getProductReviews(String productId, int page, int size) {
-        int offset = (page - 1) * size;
-        List<ProductReview> reviews = productMapper.findReviewsByProductId(productId, offset, size);
+        page = Math.max(1, page);
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        long offset = (long) (page - 1) * size;
+        List<ProductReview> reviews = offset > MAX_PAGE_OFFSET ? Collections.emptyList()
+                : productMapper.findReviewsByProductId(productId, (int) offset, size);
         int total = productMapper.countReviewsByProductId(productId);
         return new PageResult<>(reviews, total, page, size);
     }
 
+    @Override
+    public CursorPage<Product> getProductsByCursor(Long categoryId, String cursor, int size, boolean withTotal) {
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+
+        // 多取一条判断是否还有下一页
+        List<Product> products = productMapper.findProductsAfter(categoryId,
+                position != null ? position.getTime() : null,
+                position != null ? position.getId() : null,
+                size + 1);
+        String nextCursor = null;
+        if (products.size() > size) {
+            products = products.subList(0, size);
+            Product last = products.get(size - 1);
+            nextCursor = CursorUtil.encode(last.getCreatedTime(), last.getProductId());
+        }
+
+        Long total = null;
+        if (withTotal) {
+            total = countCache.get("products:" + categoryId,
+                    () -> productMapper.countProducts(categoryId, null, null));
+        }
+        return new CursorPage<>(products, nextCursor, total);
+    }
+
+    @Override
+    public CursorPage<ProductReview> getProductReviewsByCursor(String productId, String cursor, int size,
+            boolean withTotal) {
+        size = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        CursorUtil.Cursor position = CursorUtil.decode(cursor);
+
+        List<ProductReview> reviews = productMapper.findReviewsAfter(productId,
+                position != null ? position.getTime() : null,
+                position != null ? position.getId() : null,
+                size + 1);
+        String nextCursor = null;
+        if (reviews.size() > size) {
+            reviews = reviews.subList(0, size);
+            ProductReview last = reviews.get(size - 1);
+            nextCursor = CursorUtil.encode(last.getCreatedTime(), last.getReviewId());
+        }
+
+        Long total = null;
+        if (withTotal) {
+            total = countCache.get("reviews:" + productId,
+                    () -> (long) productMapper.countReviewsByProductId(productId));
+        }
+        return new CursorPage<>(reviews, nextCursor, total);
+    }
+
     @Override
     @Transactional
     public void addReview(ProductReview review) {
+        if (review.getRating() == null || review.getRating().compareTo(BigDecimal.ZERO) <= 0
+                || review.getRating().compareTo(MAX_RATING) > 0) {
+            throw new IllegalArgumentException("评分必须在0到5之间");
+        }
         review.setReviewId(String.valueOf(idGenerator.nextId()));
         review.setCreatedTime(LocalDateTime.now());
         review.setModifiedTime(LocalDateTime.now());
         productMapper.insertReview(review);
 
-        // 更新商品的评分和评论数
-        Product product = productMapper.findById(review.getProductId());
-        if (product != null) {
-            product.setReviewCount(product.getReviewCount() + 1);
-            // 更新平均评分
-            BigDecimal newRating = calculateNewRating(product, review.getRating());
-            product.setRating(newRating);
-            productMapper.updateProduct(product);
-        }
+        // 评分和评论数由聚合组件在提交后累加，定时批量写入，不再读改写整行商品
+        ratingAggregator.record(review.getProductId(), review.getRating(), 1);
     }
 
     @Override
     @Transactional
     public void deleteReview(String reviewId, String userId) {
-        productMapper.deleteReview(reviewId, userId, LocalDateTime.now());
+        ProductReview review = productMapper.findReviewById(reviewId);
+        if (review == null) {
+            return;
+        }
+        // 只有本次确实删除时才扣减，重复删除或删除他人评论不影响评分
+        if (productMapper.deleteReview(reviewId, userId, LocalDateTime.now()) > 0) {
+            ratingAggregator.record(review.getProductId(), review.getRating(), -1);
+        }
     }
 
-    private BigDecimal calculateNewRating(Product product, BigDecimal newRating) {
-        BigDecimal currentRating = product.getRating();
-        int currentCount = product.getReviewCount();
+    @Override
+    public RatingSummary getRatingSummary(String productId) {
+        RatingSummary summary = ratingAggregator.getSummary(productId);
+        if (summary == null) {
+            throw new ProductNotFoundException("商品不存在");
+        }
+        return summary;
+    }
+
+    @Override
+    public int recomputeRatings(String productId) {
+        return ratingAggregator.recompute(productId);
+    }
 
-        return currentRating.multiply(new BigDecimal(currentCount))
-                .add(newRating)
-                .divide(new BigDecimal(currentCount + 1), 1, RoundingMode.HALF_UP);
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,583 @@
+package com.wyc21.service.impl;
+
+import com.wyc21.entity.Product;
+import com.wyc21.mapper.ProductMapper;
+import com.wyc21.service.IStockReservationService;
+import com.wyc21.service.ex.BusinessException;
+import com.wyc21.service.ex.InsuffientStockException;
+import com.wyc21.service.ex.ProductNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存预占引擎
+ *
+ * redis 模式下商品库存预加载到 Redis，一个订单的所有商品通过一次 Lua 脚本原子预占/释放，
+ * 数据库库存由定时任务批量异步扣减（每批带批次ID，同一批次只落库一次），并定期与 wz_products.stock 对账。
+ * Redis 不可用时自动切换为直接扣减数据库（sql 模式），恢复后先对账再切回。
+ * 直接扣减数据库的订单在 wz_stock_reservations 中留有记录，释放时只有删除到记录的订单才归还数据库库存，
+ * 其余订单在调用方事务提交后释放 Redis 中的预占，两条路径都不会重复归还。
+ */
+@Service
+@Slf4j
+public class StockReservationServiceImpl implements IStockReservationService {
+
+    private static final String STOCK_KEY = "stock:";
+    private static final String RESERVED_KEY = "stock:reserved:";
+    private static final String PENDING_KEY = "stock:pending";
+    private static final String FLUSHING_KEY = "stock:pending:flushing";
+    private static final String FLUSH_LOCK_KEY = "stock:flush:lock";
+    // 正在落库的增量中记录批次ID的字段
+    private static final String BATCH_FIELD = "#batch";
+
+    // 预占记录保留时间，需要长于订单过期时间
+    private static final long RESERVED_EXPIRE_SECONDS = 24 * 60 * 60;
+    private static final long FLUSH_LOCK_SECONDS = 60;
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    private static final String DECREASE_STOCK_SQL = "UPDATE wz_products SET stock = stock - ?, modified_time = NOW() WHERE product_id = ?";
+    // 批次ID为主键，重复落库同一批次时插入0行
+    private static final String INSERT_FLUSH_LOG_SQL = "INSERT IGNORE INTO wz_stock_flush_log (batch_id, product_count) VALUES (?, ?)";
+    private static final String PURGE_FLUSH_LOG_SQL = "DELETE FROM wz_stock_flush_log WHERE created_time < NOW() - INTERVAL 1 DAY";
+    private static final String INSERT_RESERVATION_SQL = "INSERT INTO wz_stock_reservations (order_id) VALUES (?)";
+    private static final String LOCK_RESERVATIONS_SQL = "SELECT order_id FROM wz_stock_reservations WHERE order_id IN (%s) FOR UPDATE";
+    private static final String DELETE_RESERVATIONS_SQL = "DELETE FROM wz_stock_reservations WHERE order_id IN (%s)";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // redis: Redis 预占 + 异步落库; sql: 直接扣减数据库
+    @Value("${stock.reservation.mode:redis}")
+    private String mode;
+
+    @Value("${stock.reservation.failover-cooldown-ms:30000}")
+    private long failoverCooldownMillis;
+
+    private final DefaultRedisScript<Long> reserveScript = loadScript("lua/stock_reserve.lua", Long.class);
+    private final DefaultRedisScript<Long> releaseScript = loadScript("lua/stock_release.lua", Long.class);
+    private final DefaultRedisScript<List<String>> syncScript = loadListScript("lua/stock_sync.lua");
+    private final DefaultRedisScript<List<String>> drainScript = loadListScript("lua/stock_drain.lua");
+    private final DefaultRedisScript<Long> flushedScript = loadScript("lua/stock_flushed.lua", Long.class);
+    private final DefaultRedisScript<Long> refreshScript = loadScript("lua/stock_refresh.lua", Long.class);
+    private final DefaultRedisScript<Long> renewScript = loadScript("lua/lease_renew.lua", Long.class);
+    private final DefaultRedisScript<Long> unlockScript = loadScript("lua/unlock.lua", Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Redis 故障后在此时间之前直接走数据库
+    private volatile long redisDownUntil = 0;
+
+    // 走过数据库后 Redis 库存可能过期，需要对账后才能切回
+    private volatile boolean resyncRequired = false;
+
+    // 数据库归还库存后等待校正 Redis 库存的商品，未取得落库锁时留到下次持有锁时处理
+    private final Set<String> resyncProductIds = ConcurrentHashMap.newKeySet();
+
+    // Redis 不可用时没能释放的预占：订单ID -> (商品ID -> 数量)，恢复后在落库任务中重试
+    private final Map<String, Map<String, Integer>> pendingReleases = new ConcurrentHashMap<>();
+
+    @Override
+    public void reserve(String orderId, Map<String, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        if (useRedis()) {
+            // 订单事务回滚时归还预占的库存；脚本没有预占成功时释放不做任何修改
+            afterRollback(() -> releaseFromRedis(orderId, quantities));
+            try {
+                reserveInRedis(orderId, quantities);
+            } catch (DataAccessException e) {
+                // 脚本可能已经执行、只是没有收到结果，不能再扣减数据库，否则会扣减两次
+                markRedisDown(e);
+                throw new BusinessException("库存服务暂时不可用，请稍后重试", e);
+            }
+            return;
+        }
+        reserveInDatabase(orderId, quantities);
+    }
+
+    @Override
+    public void release(String orderId, Map<String, Integer> quantities) {
+        releaseAll(Collections.singletonMap(orderId, quantities));
+    }
+
+    @Override
+    public void releaseAll(Map<String, Map<String, Integer>> orderQuantities) {
+        Map<String, Map<String, Integer>> toRelease = new LinkedHashMap<>();
+        orderQuantities.forEach((orderId, quantities) -> {
+            if (!quantities.isEmpty()) {
+                toRelease.put(orderId, quantities);
+            }
+        });
+        if (toRelease.isEmpty()) {
+            return;
+        }
+
+        // 有数据库预占记录的订单是直接扣减数据库的：删除记录与归还库存随调用方事务一起提交，合并后一条语句归还
+        Set<String> reservedInDatabase = claimDatabaseReservations(toRelease.keySet());
+        Map<String, Integer> fromDatabase = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : toRelease.entrySet()) {
+            String orderId = entry.getKey();
+            Map<String, Integer> quantities = entry.getValue();
+            if (reservedInDatabase.contains(orderId)) {
+                quantities.forEach((productId, quantity) -> fromDatabase.merge(productId, quantity, Integer::sum));
+            } else if (isRedisMode()) {
+                // Redis 中的释放无法随事务回滚，提交后再执行；回滚后重试时预占记录仍在
+                afterCommit(() -> releaseFromRedis(orderId, quantities));
+            }
+        }
+        if (!fromDatabase.isEmpty()) {
+            releaseInDatabase(fromDatabase);
+        }
+    }
+
+    @Override
+    public void confirm(String orderId) {
+        jdbcTemplate.update(String.format(DELETE_RESERVATIONS_SQL, "?"), orderId);
+        if (!isRedisMode()) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                redisTemplate.delete(RESERVED_KEY + orderId);
+            } catch (DataAccessException e) {
+                log.warn("删除订单{}的库存预占记录失败: {}", orderId, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public Integer getStock(String productId) {
+        if (useRedis()) {
+            try {
+                String stock = redisTemplate.opsForValue().get(STOCK_KEY + productId);
+                if (stock != null) {
+                    return Integer.valueOf(stock);
+                }
+            } catch (DataAccessException e) {
+                markRedisDown(e);
+            }
+        }
+        List<Product> products = productMapper.findStockByIds(Collections.singletonList(productId));
+        return products.isEmpty() ? null : products.get(0).getStock();
+    }
+
+    @Override
+    public void refresh(String productId, Integer stock) {
+        if (!isRedisMode() || stock == null) {
+            return;
+        }
+        afterCommit(() -> {
+            if (!useRedis()) {
+                return;
+            }
+            try {
+                redisTemplate.execute(refreshScript,
+                        Arrays.asList(PENDING_KEY, STOCK_KEY + productId),
+                        productId, String.valueOf(stock));
+            } catch (DataAccessException e) {
+                markRedisDown(e);
+            }
+        });
+    }
+
+    /**
+     * 把 Redis 中累计的库存扣减批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${stock.reservation.flush-interval-ms:1000}")
+    public void flushPendingStock() {
+        if (!isRedisMode() || System.currentTimeMillis() < redisDownUntil) {
+            return;
+        }
+        try {
+            retryReleases();
+            withFlushLock(() -> {
+                flush();
+                syncReleased();
+                if (resyncRequired) {
+                    syncAll();
+                    resyncRequired = false;
+                    log.info("Redis库存已与数据库对账，恢复Redis预占");
+                }
+            });
+        } catch (DataAccessException e) {
+            markRedisDown(e);
+        }
+    }
+
+    /**
+     * 定期对账：以数据库库存减去未落库的扣减量为准校正 Redis 库存
+     */
+    @Scheduled(initialDelayString = "${stock.reservation.reconcile-interval-ms:300000}", fixedDelayString = "${stock.reservation.reconcile-interval-ms:300000}")
+    public void reconcileStock() {
+        if (!useRedis()) {
+            return;
+        }
+        try {
+            withFlushLock(() -> {
+                flush();
+                syncAll();
+                jdbcTemplate.update(PURGE_FLUSH_LOG_SQL);
+            });
+        } catch (DataAccessException e) {
+            markRedisDown(e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadStock() {
+        if (!isRedisMode()) {
+            return;
+        }
+        try {
+            withFlushLock(() -> {
+                flush();
+                syncAll();
+                log.info("商品库存已预加载到Redis");
+            });
+        } catch (DataAccessException e) {
+            markRedisDown(e);
+        }
+    }
+
+    private void reserveInRedis(String orderId, Map<String, Integer> quantities) {
+        List<String> productIds = new ArrayList<>(quantities.keySet());
+        List<String> keys = new ArrayList<>(productIds.size() + 2);
+        keys.add(RESERVED_KEY + orderId);
+        keys.add(PENDING_KEY);
+        List<String> args = new ArrayList<>(productIds.size() * 2 + 1);
+        args.add(String.valueOf(RESERVED_EXPIRE_SECONDS));
+        for (String productId : productIds) {
+            keys.add(STOCK_KEY + productId);
+            args.add(productId);
+            args.add(String.valueOf(quantities.get(productId)));
+        }
+
+        Long result = redisTemplate.execute(reserveScript, keys, args.toArray());
+        if (result != null && result < 0) {
+            // 库存尚未加载到 Redis，从数据库加载后重试一次
+            syncStock(productMapper.findStockByIds(productIds), false);
+            result = redisTemplate.execute(reserveScript, keys, args.toArray());
+        }
+        if (result == null) {
+            throw new IllegalStateException("库存预占脚本没有返回结果");
+        }
+        if (result < 0) {
+            throw new ProductNotFoundException("商品不存在：" + productIds.get((int) (-result - 1)));
+        }
+        if (result > 0) {
+            throw new InsuffientStockException("商品库存不足：" + productIds.get((int) (result - 1)));
+        }
+    }
+
+    private boolean releaseInRedis(String orderId, Map<String, Integer> quantities) {
+        List<String> productIds = new ArrayList<>(quantities.keySet());
+        List<String> keys = new ArrayList<>(productIds.size() + 2);
+        keys.add(RESERVED_KEY + orderId);
+        keys.add(PENDING_KEY);
+        for (String productId : productIds) {
+            keys.add(STOCK_KEY + productId);
+        }
+        Long result = redisTemplate.execute(releaseScript, keys, productIds.toArray());
+        return result != null && result == 1;
+    }
+
+    // 释放 Redis 中的预占；Redis 不可用时记下，恢复后重试，脚本按预占记录释放，重复执行不会多归还
+    private void releaseFromRedis(String orderId, Map<String, Integer> quantities) {
+        if (System.currentTimeMillis() < redisDownUntil) {
+            pendingReleases.put(orderId, quantities);
+            return;
+        }
+        try {
+            releaseInRedis(orderId, quantities);
+        } catch (DataAccessException e) {
+            pendingReleases.put(orderId, quantities);
+            markRedisDown(e);
+        }
+    }
+
+    private void retryReleases() {
+        for (Map.Entry<String, Map<String, Integer>> entry : pendingReleases.entrySet()) {
+            releaseInRedis(entry.getKey(), entry.getValue());
+            pendingReleases.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void reserveInDatabase(String orderId, Map<String, Integer> quantities) {
+        // 一条 UPDATE 扣减所有商品；有商品库存不足时抛异常由订单事务整体回滚
+        int updated = productMapper.batchDecreaseStock(new TreeMap<>(quantities));
+        if (updated < quantities.size()) {
+            throw new InsuffientStockException("商品库存不足：" + findInsufficient(quantities));
+        }
+        jdbcTemplate.update(INSERT_RESERVATION_SQL, orderId);
+    }
+
+    // 锁定并删除订单的数据库预占记录，返回删除到记录的订单
+    private Set<String> claimDatabaseReservations(Set<String> orderIds) {
+        String placeholders = String.join(",", Collections.nCopies(orderIds.size(), "?"));
+        Object[] args = orderIds.toArray();
+        List<String> reserved = jdbcTemplate.queryForList(String.format(LOCK_RESERVATIONS_SQL, placeholders),
+                String.class, args);
+        if (reserved.isEmpty()) {
+            return Collections.emptySet();
+        }
+        jdbcTemplate.update(String.format(DELETE_RESERVATIONS_SQL, placeholders), args);
+        return new HashSet<>(reserved);
+    }
+
+    // 扣减失败后找出库存不足的商品，用于提示
+    private String findInsufficient(Map<String, Integer> quantities) {
+        Map<String, Integer> stocks = new HashMap<>();
+        for (Product product : productMapper.findStockByIds(new ArrayList<>(quantities.keySet()))) {
+            stocks.put(product.getProductId(), product.getStock());
+        }
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            Integer stock = stocks.get(entry.getKey());
+            if (stock == null || stock < entry.getValue()) {
+                return entry.getKey();
+            }
+        }
+        return String.join(",", quantities.keySet());
+    }
+
+    private void releaseInDatabase(Map<String, Integer> quantities) {
+        productMapper.batchIncreaseStock(new TreeMap<>(quantities));
+        if (!isRedisMode()) {
+            return;
+        }
+        // 已加载到 Redis 的库存同样需要归还；按数据库库存覆盖 Redis 库存要在落库锁内进行，
+        // 否则落库事务已提交、正在落库的增量尚未删除时会把这部分扣减算两次
+        List<String> productIds = new ArrayList<>(quantities.keySet());
+        afterCommit(() -> {
+            if (!useRedis()) {
+                return;
+            }
+            resyncProductIds.addAll(productIds);
+            try {
+                withFlushLock(this::syncReleased);
+            } catch (DataAccessException e) {
+                markRedisDown(e);
+            }
+        });
+    }
+
+    // 在落库锁内按数据库库存校正等待中的商品
+    private void syncReleased() {
+        if (resyncProductIds.isEmpty()) {
+            return;
+        }
+        List<String> productIds = new ArrayList<>(resyncProductIds);
+        resyncProductIds.removeAll(productIds);
+        try {
+            syncStock(productMapper.findStockByIds(productIds), true);
+        } catch (RuntimeException e) {
+            resyncProductIds.addAll(productIds);
+            throw e;
+        }
+    }
+
+    /**
+     * 取出一批增量写入数据库。每批带有批次ID，批次ID与库存扣减在同一事务中写入 wz_stock_flush_log，
+     * 落库后、删除 Redis 中的批次前中断时，下次取出同一批次会因批次已存在而跳过，不会重复扣减
+     */
+    private void flush() {
+        List<String> drained = redisTemplate.execute(drainScript, Arrays.asList(PENDING_KEY, FLUSHING_KEY),
+                UUID.randomUUID().toString());
+        if (drained == null || drained.isEmpty()) {
+            return;
+        }
+
+        String batchId = null;
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (int i = 0; i + 1 < drained.size(); i += 2) {
+            if (BATCH_FIELD.equals(drained.get(i))) {
+                batchId = drained.get(i + 1);
+                continue;
+            }
+            int quantity = Integer.parseInt(drained.get(i + 1));
+            if (quantity != 0) {
+                batchArgs.add(new Object[] { quantity, drained.get(i) });
+            }
+        }
+        if (batchId == null) {
+            throw new IllegalStateException("库存落库批次缺少批次ID");
+        }
+        // 与下单时相同的加锁顺序
+        batchArgs.sort(Comparator.comparing(args -> (String) args[1]));
+
+        long start = System.currentTimeMillis();
+        String id = batchId;
+        boolean applied = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(INSERT_FLUSH_LOG_SQL, id, batchArgs.size()) == 0) {
+                return false;
+            }
+            jdbcTemplate.batchUpdate(DECREASE_STOCK_SQL, batchArgs);
+            // 提交前确认仍持有落库锁，锁已失效时回滚，由新的持有者处理同一批次
+            renewFlushLock();
+            return true;
+        }));
+        redisTemplate.execute(flushedScript, Collections.singletonList(FLUSHING_KEY), id);
+        if (applied) {
+            log.debug("库存扣减已落库: 批次{}, {}个商品, 耗时{}ms", id, batchArgs.size(),
+                    System.currentTimeMillis() - start);
+        } else {
+            log.warn("库存扣减批次{}已落库过，跳过", id);
+        }
+    }
+
+    private void syncAll() {
+        syncStock(productMapper.findAllStock(), true);
+    }
+
+    private void syncStock(List<Product> products, boolean overwrite) {
+        for (int from = 0; from < products.size(); from += SYNC_BATCH_SIZE) {
+            if (overwrite) {
+                // 覆盖只在落库锁内进行，每批之前续期，锁已失效时停止
+                renewFlushLock();
+            }
+            List<Product> batch = products.subList(from, Math.min(from + SYNC_BATCH_SIZE, products.size()));
+            List<String> keys = new ArrayList<>(batch.size() + 2);
+            keys.add(PENDING_KEY);
+            keys.add(FLUSHING_KEY);
+            List<String> args = new ArrayList<>(batch.size() * 2 + 1);
+            args.add(overwrite ? "1" : "0");
+            for (Product product : batch) {
+                keys.add(STOCK_KEY + product.getProductId());
+                args.add(product.getProductId());
+                args.add(String.valueOf(product.getStock()));
+            }
+
+            List<String> drifted = redisTemplate.execute(syncScript, keys, args.toArray());
+            if (drifted != null) {
+                for (int i = 0; i + 2 < drifted.size(); i += 3) {
+                    log.warn("Redis库存与数据库不一致，已校正: 商品ID = {}, Redis库存 = {}, 校正后 = {}",
+                            drifted.get(i), drifted.get(i + 1), drifted.get(i + 2));
+                }
+            }
+        }
+    }
+
+    private void withFlushLock(Runnable task) {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(FLUSH_LOCK_KEY, nodeId,
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            task.run();
+        } catch (FlushLockLostException e) {
+            log.warn("库存落库锁已失效，本次中止: {}", e.getMessage());
+        } finally {
+            redisTemplate.execute(unlockScript, Collections.singletonList(FLUSH_LOCK_KEY), nodeId);
+        }
+    }
+
+    // 续期落库锁，锁已被其他节点持有时抛出异常
+    private void renewFlushLock() {
+        Long renewed = redisTemplate.execute(renewScript, Collections.singletonList(FLUSH_LOCK_KEY), nodeId,
+                String.valueOf(TimeUnit.SECONDS.toMillis(FLUSH_LOCK_SECONDS)));
+        if (renewed == null || renewed == 0) {
+            throw new FlushLockLostException(nodeId);
+        }
+    }
+
+    private boolean isRedisMode() {
+        return "redis".equalsIgnoreCase(mode);
+    }
+
+    private boolean useRedis() {
+        return isRedisMode() && !resyncRequired && System.currentTimeMillis() >= redisDownUntil;
+    }
+
+    private void markRedisDown(Exception e) {
+        redisDownUntil = System.currentTimeMillis() + failoverCooldownMillis;
+        resyncRequired = true;
+        log.error("Redis库存预占不可用，{}ms内改为直接扣减数据库: {}", failoverCooldownMillis, e.getMessage());
+    }
+
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    private void afterRollback(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    task.run();
+                }
+            }
+        });
+    }
+
+    private static <T> DefaultRedisScript<T> loadScript(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    private static class FlushLockLostException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private FlushLockLostException(String nodeId) {
+            super("节点" + nodeId + "已不再持有落库锁");
+        }
+    }
+
+    // 返回字符串列表的脚本；List.class 无法携带元素类型，在这里集中做一次转换
+    @SuppressWarnings("unchecked")
+    private static DefaultRedisScript<List<String>> loadListScript(String path) {
+        return loadScript(path, (Class<List<String>>) (Class<?>) List.class);
+    }
+}
@@ -2,12 +2,15 @@ package com.wyc21.service.impl;
 
 
 import java.time.LocalDateTime;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import com.wyc21.util.PasswordUtils;
+import com.wyc21.util.PasswordHasher;
 import com.wyc21.entity.User;
 import com.wyc21.mapper.UserMapper;
 import com.wyc21.service.IUserService;
@@ -15,9 +18,8 @@ import com.wyc21.service.ex.InsertException;
 import com.wyc21.service.ex.UsernameDuplicatedException;
 import com.wyc21.service.ex.UserNotFoundException;
 import com.wyc21.service.ex.PasswordNotMatchException;
-import com.wyc21.util.JwtUtil;
-import com.wyc21.util.RedisUtil;
-import com.wyc21.util.IpUtil;
+import com.wyc21.service.ex.TooManyRequestsException;
+import com.wyc21.service.TokenService;
 import com.wyc21.util.CookieUtil;
 import com.wyc21.util.SnowflakeIdGenerator;
 import com.wyc21.mapper.IdGeneratorMapper;
@@ -27,28 +29,27 @@ import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.wyc21.mapper.BrowseHistoryMapper;
-import org.springframework.data.redis.core.RedisTemplate;
-import com.wyc21.entity.BrowseHistory; // Adjust the package name if necessary
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyc21.service.BrowseHistoryService;
 
 @Service
 public class UserServiceImpl implements IUserService {
 
     private static final Logger log = LoggerFactory.getLogger(UserServiceImpl.class);
 
-    private static final String REDIS_BROWSE_HISTORY_KEY = "browse_history:";
-
     @Autowired
     private UserMapper userMapper;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenService tokenService;
 
     @Autowired
-    private RedisUtil redisUtil;
+    private PasswordHasher passwordHasher;
 
+    // 哈希完成后的数据库、Redis 操作放到通用线程池，不占用有界的哈希线程
     @Autowired
-    private IpUtil ipUtil;
+    @Qualifier("applicationTaskExecutor")
+    private Executor ioExecutor;
+
 
 
 
@@ -59,13 +60,13 @@ public class UserServiceImpl implements IUserService {
     @Autowired
     private BrowseHistoryMapper browseHistoryMapper;
 
-   
-
     @Autowired
-    private ObjectMapper objectMapper;
+    private BrowseHistoryService browseHistoryService;
+
+   
 
     @Override
-    public void reg(User user) {
+    public CompletableFuture<Void> reg(User user) {
         // 根据用户名查询用户数据,判断用户是否被注册过
         User result = userMapper.findByUsername(user.getUsername());
         if (result != null) {
@@ -77,9 +78,14 @@ public class UserServiceImpl implements IUserService {
         user.setUid(uid);
         log.debug("hahahahaahahsssss用户ID: {}", uid);
 
-        // 密码加密
-        user.setPassword(PasswordUtils.hashPassword(user.getPassword()));
+        // 密码加密在哈希线程池中执行，完成后写入数据库
+        return passwordHasher.hash(user.getPassword()).thenAcceptAsync(hashed -> {
+            user.setPassword(hashed);
+            insertUser(user);
+        }, ioExecutor);
+    }
 
+    private void insertUser(User user) {
         // 补全数据
         user.setIsDelete(0);
         user.setCreatedUser(user.getUsername());
@@ -101,7 +107,8 @@ public class UserServiceImpl implements IUserService {
     }
 
     @Override
-    public User login(String username, String password, HttpServletRequest request, HttpServletResponse response) {
+    public CompletableFuture<User> login(String username, String password, HttpServletRequest request,
+            HttpServletResponse response) {
         // 根据用户名查询用户数据
         User result = userMapper.findByUsername(username);
         if (result == null) {
@@ -113,19 +120,46 @@ public class UserServiceImpl implements IUserService {
             throw new UserNotFoundException("用户不存在");
         }
 
-        // 判断密码是否匹配
+        // 请求对象不能跨线程使用，先取出浏览器指纹
+        String fingerprint = request.getHeader("X-Device-Fingerprint");
+
+        // 密码校验在哈希线程池中执行，同步浏览记录、签发令牌需要访问数据库和 Redis，切换到通用线程池
         String hashedPassword = result.getPassword();
-        if (!PasswordUtils.checkPassword(password, hashedPassword)) {
-            throw new PasswordNotMatchException("密码错误");
+        return passwordHasher.verify(password, hashedPassword).thenApplyAsync(matched -> {
+            if (!matched) {
+                throw new PasswordNotMatchException("密码错误");
+            }
+            if (passwordHasher.needsRehash(hashedPassword)) {
+                rehashPassword(result, password);
+            }
+            return completeLogin(result, fingerprint);
+        }, ioExecutor);
+    }
+
+    /**
+     * 已存储的哈希强度低于当前配置时，用本次登录的明文重新计算；
+     * 哈希线程池繁忙时跳过，下次登录再处理
+     */
+    private void rehashPassword(User user, String password) {
+        try {
+            passwordHasher.hash(password).thenAcceptAsync(hashed -> {
+                User updateUser = new User();
+                updateUser.setUid(user.getUid());
+                updateUser.setPassword(hashed);
+                updateUser.setModifiedUser(user.getUsername());
+                updateUser.setModifiedTime(LocalDateTime.now());
+                userMapper.updatePassword(updateUser);
+            }, ioExecutor).exceptionally(e -> {
+                log.warn("重新计算用户{}的密码哈希失败: {}", user.getUid(), e.getMessage());
+                return null;
+            });
+        } catch (TooManyRequestsException e) {
+            log.debug("哈希线程池繁忙，跳过用户{}的密码重新哈希", user.getUid());
         }
+    }
 
-        // 获取IP和地理位置
-        String ip = ipUtil.getIpAddress(request);
-        String ipLocation = ipUtil.getIpLocation(ip);
+    private User completeLogin(User result, String fingerprint) {
         log.info("uid地址: {}", result.getUid());
-
-        // 获取浏览器指纹
-        String fingerprint = request.getHeader("X-Device-Fingerprint");
         log.info("获取到的浏览器指纹: {}", fingerprint);
 
         if (fingerprint != null) {
@@ -133,58 +167,24 @@ public class UserServiceImpl implements IUserService {
                 // 1. 先插入或更新浏览器指纹记录
                 browseHistoryMapper.insertFingerprintRecord(fingerprint, result.getUid());
 
-                // 2. 将Redis中的浏览记录同步到数据库
-                String fingerprintKey = REDIS_BROWSE_HISTORY_KEY + fingerprint;
-                Set<String> keys = redisUtil.keys(fingerprintKey + ":*");
-
-                if (keys != null && !keys.isEmpty()) {
-                    for (String key : keys) {
-                        String value = redisUtil.get(key);
-                        try {
-                            BrowseHistory history = objectMapper.readValue(value, BrowseHistory.class);
-                            browseHistoryMapper.insertBrowseHistory(
-                                    history.getHistoryId(),
-                                    history.getFingerprintId(),
-                                    result.getUid(),
-                                    history.getProductId(),
-                                    history.getBrowseTime());
-                        } catch (Exception e) {
-                            log.error("插入浏览记录失败: {}", e.getMessage());
-                        }
-                    }
-                }
+                // 2. 将该指纹在Redis中的浏览记录同步到数据库并关联到用户
+                browseHistoryService.syncFingerprint(fingerprint, result.getUid());
             } catch (Exception e) {
                 log.error("处理浏览记录时发生错误: {}", e.getMessage());
                 // 继续登录流程，不影响用户登录
             }
         }
 
-        // 生成访问令牌和刷新令牌
-        String accessToken = jwtUtil.generateAccessToken(
-                result.getUid(),
-                result.getUsername(),
-                ip,
-                ipLocation);
-
-        String refreshToken = jwtUtil.generateRefreshToken(
-                result.getUid(),
-                result.getUsername());
-
-        // 存储访问令牌到Redis，设置15分钟过期
-        String accessTokenKey = "access_token:" + result.getUid();
-        redisUtil.setToken(accessTokenKey, accessToken, 15 * 60 * 1000L);
-
-        // 存储刷新令牌到Redis，设置7天过期
-        String refreshTokenKey = "refresh_token:" + result.getUid();
-        redisUtil.setToken(refreshTokenKey, refreshToken, 7 * 24 * 60 * 60 * 1000L);
+        // 生成访问令牌和刷新令牌，刷新令牌由令牌服务登记到会话
+        Map<String, String> tokens = tokenService.issueTokens(result.getUid(), result.getUsername(), result.getPower());
 
         // 设置返回的用户对象
         User user = new User();
         user.setUid(result.getUid());
         user.setUsername(result.getUsername());
         user.setAvatar(result.getAvatar());
-        user.setAccessToken(accessToken);
-        user.setRefreshToken(refreshToken);
+        user.setAccessToken(tokens.get("accessToken"));
+        user.setRefreshToken(tokens.get("refreshToken"));
         user.setPhone(result.getPhone());
         user.setEmail(result.getEmail());
         user.setGender(result.getGender());
@@ -233,21 +233,26 @@ public class UserServiceImpl implements IUserService {
     }
 
     @Override
-    public void updatePassword(String uid, String oldPassword, String newPassword) {
+    public CompletableFuture<Void> updatePassword(String uid, String oldPassword, String newPassword) {
         // 获取用户信息
         User result = userMapper.findByUid(uid); // 现在是String类型
         if (result == null || result.getIsDelete() == 1) {
             throw new UserNotFoundException("用户不存在");
         }
 
-        // 验证旧密码
-        if (!PasswordUtils.checkPassword(oldPassword, result.getPassword())) {
-            throw new PasswordNotMatchException("原密码错误");
-        }
-
-        // 加密新密码
-        String hashedPassword = PasswordUtils.hashPassword(newPassword);
+        // 验证旧密码，通过后加密新密码
+        return passwordHasher.verify(oldPassword, result.getPassword())
+                .thenCompose(matched -> {
+                    if (!matched) {
+                        throw new PasswordNotMatchException("原密码错误");
+                    }
+                    return passwordHasher.hash(newPassword);
+                })
+                .thenAcceptAsync(hashedPassword -> savePassword(result, hashedPassword), ioExecutor);
+    }
 
+    private void savePassword(User result, String hashedPassword) {
+        String uid = result.getUid();
         // 创建更新对象
         User updateUser = new User();
         updateUser.setUid(uid); // 现在是String类型
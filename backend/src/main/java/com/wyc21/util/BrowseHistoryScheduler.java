@@ -1,19 +1,63 @@
 package com.wyc21.util;
 
 import com.wyc21.service.BrowseHistoryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 浏览记录同步任务，使用独立的单线程调度器，不占用公共定时任务线程。
+ * 多节点部署时通过 partitions/partition-index 把指纹分给不同节点同步。
+ */
+@Slf4j
 @Component
 public class BrowseHistoryScheduler {
-    
+
     @Autowired
     private BrowseHistoryService browseHistoryService;
-    
-    // 每50分钟执行一次同步
-    @Scheduled(fixedRate = 3000000)
+
+    @Value("${browse.history.sync.interval-ms:300000}")
+    private long intervalMillis;
+
+    @Value("${browse.history.sync.partitions:1}")
+    private int partitions;
+
+    @Value("${browse.history.sync.partition-index:0}")
+    private int partitionIndex;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "browse-history-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::scheduleSyncBrowseHistory,
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
     public void scheduleSyncBrowseHistory() {
-        browseHistoryService.syncBrowseHistoryToDatabase();
+        long start = System.currentTimeMillis();
+        try {
+            int synced = browseHistoryService.syncBrowseHistoryToDatabase(partitions, partitionIndex);
+            log.info("浏览记录同步完成，分区 {}/{}，同步 {} 条，耗时 {} ms",
+                    partitionIndex, partitions, synced, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("浏览记录同步失败，耗时 {} ms: {}", System.currentTimeMillis() - start, e.getMessage());
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,234 @@
+package com.wyc21.util;
+
+import com.wyc21.entity.BrowseHistory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection.StringTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 浏览记录异步写入：请求线程只把浏览事件放入内存环形缓冲区，
+ * 后台定时取出后按指纹分组，通过 Redis 管道批量写入有序集合（只保存商品ID，保留最近N条并设置过期时间），
+ * 同时按固定间隔用 JDBC 批量插入 wz_browse_history。
+ */
+@Slf4j
+@Component
+public class BrowseHistoryWriter {
+
+    private static final String BROWSE_HISTORY_KEY = "browse:history:";
+
+    private static final String INSERT_FINGERPRINT_SQL =
+            "INSERT INTO wz_browser_fingerprints (fingerprint_id, created_user) VALUES (?, 'system') "
+                    + "ON DUPLICATE KEY UPDATE last_seen_time = CURRENT_TIMESTAMP";
+
+    private static final String UPSERT_HISTORY_SQL =
+            "INSERT INTO wz_browse_history (history_id, fingerprint_id, user_id, product_id, browse_time, created_user) "
+                    + "VALUES (?, ?, ?, ?, ?, 'system') "
+                    + "ON DUPLICATE KEY UPDATE user_id = COALESCE(VALUES(user_id), user_id)";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${browse.history.buffer-size:65536}")
+    private int bufferSize;
+
+    // 每个指纹在 Redis 中保留的最近浏览条数
+    @Value("${browse.history.max-per-fingerprint:100}")
+    private int maxPerFingerprint;
+
+    @Value("${browse.history.redis-ttl-hours:168}")
+    private long redisTtlHours;
+
+    @Value("${browse.history.flush-batch-size:1000}")
+    private int flushBatchSize;
+
+    @Value("${browse.history.persist-interval-ms:10000}")
+    private long persistIntervalMillis;
+
+    @Value("${browse.history.persist-batch-size:2000}")
+    private int persistBatchSize;
+
+    private RingBuffer<BrowseEvent> buffer;
+
+    // 以下字段只在刷新线程中访问（定时任务不会并发执行）
+    private final List<BrowseEvent> pendingPersist = new ArrayList<>();
+    private long lastPersistTime = System.currentTimeMillis();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        buffer = new RingBuffer<>(bufferSize);
+    }
+
+    /**
+     * 记录一次浏览，不访问 Redis 和数据库；缓冲区已满时丢弃
+     */
+    public void record(String userId, String fingerprint, String productId) {
+        if (!buffer.offer(new BrowseEvent(userId, fingerprint, productId, System.currentTimeMillis()))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${browse.history.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        long droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            log.warn("浏览记录缓冲区已满，丢弃 {} 条记录", droppedCount);
+        }
+
+        List<BrowseEvent> events = new ArrayList<>();
+        while (buffer.drain(events::add, flushBatchSize) > 0) {
+            writeToRedis(events);
+            pendingPersist.addAll(events);
+            events.clear();
+        }
+
+        long now = System.currentTimeMillis();
+        if (pendingPersist.size() >= persistBatchSize
+                || (!pendingPersist.isEmpty() && now - lastPersistTime >= persistIntervalMillis)) {
+            persist();
+            lastPersistTime = now;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        // 停机前把缓冲区和待落库的记录全部写出
+        flush();
+        if (!pendingPersist.isEmpty()) {
+            persist();
+        }
+    }
+
+    private void writeToRedis(List<BrowseEvent> events) {
+        Map<String, List<BrowseEvent>> byFingerprint = new LinkedHashMap<>();
+        for (BrowseEvent event : events) {
+            byFingerprint.computeIfAbsent(event.fingerprint, k -> new ArrayList<>()).add(event);
+        }
+        long ttlMillis = TimeUnit.HOURS.toMillis(redisTtlHours);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Map.Entry<String, List<BrowseEvent>> entry : byFingerprint.entrySet()) {
+                    String key = BROWSE_HISTORY_KEY + entry.getKey();
+                    Set<StringTuple> tuples = new LinkedHashSet<>();
+                    for (BrowseEvent event : entry.getValue()) {
+                        tuples.add(new DefaultStringTuple(
+                                event.productId, (double) event.browseTime));
+                    }
+                    conn.zAdd(key, tuples);
+                    // 只保留分数最高（最近浏览）的 N 条
+                    conn.zRemRange(key, 0, -(maxPerFingerprint + 1));
+                    conn.pExpire(key, ttlMillis);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            // Redis 只是最近浏览的缓存，失败时记录仍会落库
+            log.warn("浏览记录写入Redis失败: {}", e.getMessage());
+        }
+    }
+
+    private void persist() {
+        List<BrowseHistory> histories = new ArrayList<>(pendingPersist.size());
+        for (BrowseEvent event : pendingPersist) {
+            BrowseHistory history = new BrowseHistory();
+            history.setHistoryId(historyId(event.fingerprint, event.productId, event.browseTime));
+            history.setFingerprintId(event.fingerprint);
+            history.setUserId(event.userId);
+            history.setProductId(event.productId);
+            history.setBrowseTime(new Date(event.browseTime));
+            histories.add(history);
+        }
+        pendingPersist.clear();
+
+        try {
+            upsert(histories);
+            log.debug("浏览记录落库 {} 条", histories.size());
+        } catch (DataAccessException e) {
+            // Redis 中仍保留最近记录，会由定时同步任务补齐
+            log.error("浏览记录落库失败，{} 条待同步任务补齐: {}", histories.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 批量写入浏览记录，记录ID由指纹、商品和浏览时间确定，重复写入只补充用户ID
+     *
+     * @return 写入的记录数
+     */
+    public int upsert(List<BrowseHistory> histories) {
+        if (histories.isEmpty()) {
+            return 0;
+        }
+        Set<String> fingerprints = new LinkedHashSet<>();
+        List<Object[]> rows = new ArrayList<>(histories.size());
+        for (BrowseHistory history : histories) {
+            fingerprints.add(history.getFingerprintId());
+            rows.add(new Object[] {
+                    history.getHistoryId(),
+                    history.getFingerprintId(),
+                    history.getUserId(),
+                    history.getProductId(),
+                    new Timestamp(history.getBrowseTime().getTime())
+            });
+        }
+        List<Object[]> fingerprintRows = new ArrayList<>(fingerprints.size());
+        for (String fingerprint : fingerprints) {
+            fingerprintRows.add(new Object[] { fingerprint });
+        }
+
+        // 浏览记录外键引用指纹表，先确保指纹存在
+        jdbcTemplate.batchUpdate(INSERT_FINGERPRINT_SQL, fingerprintRows);
+        jdbcTemplate.batchUpdate(UPSERT_HISTORY_SQL, rows);
+        return rows.size();
+    }
+
+    /**
+     * 同一指纹在同一毫秒浏览同一商品只记一条，写入和同步两条路径生成相同的ID
+     */
+    public static String historyId(String fingerprint, String productId, long browseTime) {
+        String name = fingerprint + "|" + productId + "|" + browseTime;
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static final class BrowseEvent {
+        private final String userId;
+        private final String fingerprint;
+        private final String productId;
+        private final long browseTime;
+
+        private BrowseEvent(String userId, String fingerprint, String productId, long browseTime) {
+            this.userId = userId;
+            this.fingerprint = fingerprint;
+            this.productId = productId;
+            this.browseTime = browseTime;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.wyc21.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyc21.entity.Cart;
+import com.wyc21.entity.CartItem;
+import com.wyc21.entity.Product;
+import com.wyc21.mapper.CartMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 购物车存储：每个用户的购物车是一个 Redis 哈希 cart:<userId>（productId -> 数量/价格快照，#cart -> cartId），
+ * 加入、修改、删除都是一次 Lua 脚本调用，读取只访问 Redis。
+ * 修改过的用户记入 cart:dirty，由定时任务批量写回 wz_carts/wz_cart_items；
+ * 购物车不在 Redis 中（首次访问、过期或 Redis 数据丢失）时从数据库重建。
+ */
+@Slf4j
+@Component
+public class CartStore {
+
+    private static final String CART_KEY = "cart:";
+    private static final String CART_ID_FIELD = "#cart";
+    private static final String DIRTY_KEY = "cart:dirty";
+    private static final String FLUSHING_KEY = "cart:dirty:flushing";
+    private static final String FLUSH_LOCK_KEY = "cart:flush:lock";
+
+    private static final long FLUSH_LOCK_SECONDS = 60;
+
+    private static final String UPSERT_CART_SQL =
+            "INSERT INTO wz_carts (cart_id, user_id, created_user) VALUES (?, ?, 'system') "
+                    + "ON DUPLICATE KEY UPDATE modified_time = NOW()";
+
+    // 已支付数量由支付流程直接累加到数据库，这里只在 Redis 快照更大时补齐
+    private static final String UPSERT_ITEM_SQL =
+            "INSERT INTO wz_cart_items (cart_item_id, cart_id, product_id, quantity, price, product_name, paid_quantity, created_user) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, 'system') "
+                    + "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), "
+                    + "paid_quantity = GREATEST(paid_quantity, VALUES(paid_quantity))";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CartMapper cartMapper;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 每次修改后续期，过期后从数据库重建
+    @Value("${cart.redis-ttl-hours:168}")
+    private long redisTtlHours;
+
+    @Value("${cart.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private final DefaultRedisScript<Long> loadScript = loadScript("lua/cart_load.lua", Long.class);
+    private final DefaultRedisScript<String> addScript = loadScript("lua/cart_add.lua", String.class);
+    private final DefaultRedisScript<String> updateScript = loadScript("lua/cart_update.lua", String.class);
+    private final DefaultRedisScript<String> removeScript = loadScript("lua/cart_remove.lua", String.class);
+    private final DefaultRedisScript<Long> clearScript = loadScript("lua/cart_clear.lua", Long.class);
+    private final DefaultRedisScript<Long> paidScript = loadScript("lua/cart_paid.lua", Long.class);
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> drainScript = loadScript("lua/cart_drain.lua", List.class);
+    private final DefaultRedisScript<Long> unlockScript = loadScript("lua/unlock.lua", Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 用户购物车中的全部商品（含已支付数量）
+     */
+    public List<CartItem> getItems(String userId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CART_KEY + userId);
+        if (entries.isEmpty()) {
+            load(userId);
+            entries = stringRedisTemplate.opsForHash().entries(CART_KEY + userId);
+        }
+        String cartId = (String) entries.get(CART_ID_FIELD);
+        List<CartItem> items = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (!CART_ID_FIELD.equals(entry.getKey())) {
+                items.add(toCartItem(userId, (String) entry.getKey(), cartId, (String) entry.getValue()));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 加入购物车，商品已在购物车中时累加数量
+     */
+    public CartItem add(String userId, Product product, int quantity) {
+        Entry entry = new Entry();
+        entry.setCartItemId(idGenerator.nextId().toString());
+        entry.setQuantity(quantity);
+        entry.setPaidQuantity(0);
+        entry.setPrice(product.getPrice());
+        entry.setProductName(product.getName());
+        entry.setImageUrl(product.getImageUrl());
+        String result = execute(userId, addScript, userId, product.getProductId(),
+                String.valueOf(quantity), toJson(entry), ttlSeconds());
+        return toCartItem(userId, product.getProductId(), null, result);
+    }
+
+    /**
+     * 修改商品数量，商品已被删除时返回 null
+     */
+    public CartItem setQuantity(String userId, CartItem item, int quantity) {
+        String result = execute(userId, updateScript, userId, item.getProductId(), item.getCartItemId(),
+                String.valueOf(quantity), ttlSeconds());
+        return result == null || result.isEmpty() ? null : toCartItem(userId, item.getProductId(), null, result);
+    }
+
+    /**
+     * 删除购物车商品，未找到时返回 null
+     */
+    public CartItem remove(String userId, String cartItemId) {
+        String result = execute(userId, removeScript, userId, cartItemId, ttlSeconds());
+        return result == null || result.isEmpty() ? null : toCartItem(userId, null, null, result);
+    }
+
+    public void clear(String userId) {
+        execute(userId, clearScript, userId, ttlSeconds());
+    }
+
+    /**
+     * 支付成功后同步已支付数量（商品ID -> 数量）；购物车不在 Redis 中时无需处理
+     */
+    public void addPaidQuantities(String userId, Map<String, Integer> paidQuantities) {
+        List<String> args = new ArrayList<>(paidQuantities.size() * 2 + 1);
+        args.add(userId);
+        for (Map.Entry<String, Integer> entry : paidQuantities.entrySet()) {
+            args.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue()));
+        }
+        stringRedisTemplate.execute(paidScript, Arrays.asList(CART_KEY + userId, DIRTY_KEY), args.toArray());
+    }
+
+    @Scheduled(fixedDelayString = "${cart.flush-interval-ms:1000}")
+    public void flush() {
+        try {
+            withFlushLock(this::flushDirty);
+        } catch (DataAccessException e) {
+            // 待落库用户仍保留在 cart:dirty:flushing 中，下次继续
+            log.error("购物车落库失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    // 执行购物车脚本，购物车未加载时从数据库重建后重试一次
+    private <T> T execute(String userId, DefaultRedisScript<T> script, Object... args) {
+        List<String> keys = Arrays.asList(CART_KEY + userId, DIRTY_KEY);
+        T result = stringRedisTemplate.execute(script, keys, args);
+        if (result == null) {
+            load(userId);
+            result = stringRedisTemplate.execute(script, keys, args);
+        }
+        return result;
+    }
+
+    /**
+     * 从数据库重建用户购物车；数据库中还没有购物车时只在 Redis 中分配 cartId，落库时再插入
+     */
+    private void load(String userId) {
+        Cart cart = cartMapper.findByUserId(userId);
+        String cartId = cart != null ? cart.getCartId() : idGenerator.nextId().toString();
+
+        // 同一商品有多条记录时合并到第一条，落库时删除其余记录
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (cart != null) {
+            for (CartItem item : cartMapper.findCartItemsByUserId(userId)) {
+                Entry existing = entries.get(item.getProductId());
+                if (existing != null) {
+                    existing.setQuantity(existing.getQuantity() + item.getQuantity());
+                    existing.setPaidQuantity(existing.getPaidQuantity() + paidQuantity(item));
+                    continue;
+                }
+                Entry entry = new Entry();
+                entry.setCartItemId(item.getCartItemId());
+                entry.setQuantity(item.getQuantity());
+                entry.setPaidQuantity(paidQuantity(item));
+                entry.setPrice(item.getPrice());
+                entry.setProductName(item.getProductName());
+                entry.setImageUrl(item.getImageUrl());
+                entries.put(item.getProductId(), entry);
+            }
+        }
+
+        List<String> args = new ArrayList<>(entries.size() * 2 + 2);
+        args.add(ttlSeconds());
+        args.add(cartId);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            args.add(entry.getKey());
+            args.add(toJson(entry.getValue()));
+        }
+        stringRedisTemplate.execute(loadScript, Collections.singletonList(CART_KEY + userId), args.toArray());
+    }
+
+    private void flushDirty() {
+        @SuppressWarnings("unchecked")
+        List<String> userIds = stringRedisTemplate.execute(drainScript, Arrays.asList(DIRTY_KEY, FLUSHING_KEY));
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        for (int from = 0; from < userIds.size(); from += flushBatchSize) {
+            List<String> batch = userIds.subList(from, Math.min(from + flushBatchSize, userIds.size()));
+            List<CartSnapshot> snapshots = readSnapshots(batch);
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(snapshots));
+            } catch (DataAccessException e) {
+                // 整批失败时逐个购物车重试，跳过无法写入的购物车（如用户已被删除），避免阻塞其他用户
+                log.warn("购物车批量落库失败，逐个重试: {}", e.getMessage());
+                for (CartSnapshot snapshot : snapshots) {
+                    try {
+                        transactionTemplate.executeWithoutResult(
+                                status -> persist(Collections.singletonList(snapshot)));
+                    } catch (DataAccessException ex) {
+                        log.error("购物车落库失败，已跳过: userId={}, cartId={}, {}",
+                                snapshot.userId, snapshot.cartId, ex.getMessage());
+                    }
+                }
+            }
+        }
+        stringRedisTemplate.delete(FLUSHING_KEY);
+        log.debug("购物车已落库: {}个用户, 耗时{}ms", userIds.size(), System.currentTimeMillis() - start);
+    }
+
+    // 一次管道读取一批购物车；Redis 中已不存在的购物车跳过，避免误删数据库记录
+    private List<CartSnapshot> readSnapshots(List<String> userIds) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                conn.hGetAll(CART_KEY + userId);
+            }
+            return null;
+        });
+
+        List<CartSnapshot> snapshots = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> entries = (Map<String, String>) results.get(i);
+            String cartId = entries != null ? entries.get(CART_ID_FIELD) : null;
+            if (cartId == null) {
+                continue;
+            }
+            CartSnapshot snapshot = new CartSnapshot(userIds.get(i), cartId);
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (!CART_ID_FIELD.equals(entry.getKey())) {
+                    snapshot.items.add(toCartItem(snapshot.userId, entry.getKey(), cartId, entry.getValue()));
+                }
+            }
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * 把购物车快照写回数据库：插入/更新购物车和商品，删除快照中已不存在的商品
+     */
+    private void persist(List<CartSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        List<Object[]> cartRows = new ArrayList<>(snapshots.size());
+        List<Object[]> itemRows = new ArrayList<>();
+        List<Object> deleteArgs = new ArrayList<>();
+        StringBuilder cartIds = new StringBuilder();
+        StringBuilder keptItems = new StringBuilder();
+        for (CartSnapshot snapshot : snapshots) {
+            cartRows.add(new Object[] { snapshot.cartId, snapshot.userId });
+            deleteArgs.add(snapshot.cartId);
+            cartIds.append(cartIds.length() == 0 ? "?" : ", ?");
+            for (CartItem item : snapshot.items) {
+                itemRows.add(new Object[] {
+                        item.getCartItemId(),
+                        snapshot.cartId,
+                        item.getProductId(),
+                        item.getQuantity(),
+                        item.getPrice(),
+                        item.getProductName(),
+                        item.getPaidQuantity()
+                });
+            }
+        }
+        for (CartSnapshot snapshot : snapshots) {
+            for (CartItem item : snapshot.items) {
+                deleteArgs.add(item.getCartItemId());
+                keptItems.append(keptItems.length() == 0 ? "?" : ", ?");
+            }
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_CART_SQL, cartRows);
+        if (!itemRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_ITEM_SQL, itemRows);
+        }
+        String deleteSql = "DELETE FROM wz_cart_items WHERE cart_id IN (" + cartIds + ")";
+        if (keptItems.length() > 0) {
+            deleteSql += " AND cart_item_id NOT IN (" + keptItems + ")";
+        }
+        jdbcTemplate.update(deleteSql, deleteArgs.toArray());
+    }
+
+    private void withFlushLock(Runnable task) {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(FLUSH_LOCK_KEY, nodeId,
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            stringRedisTemplate.execute(unlockScript, Collections.singletonList(FLUSH_LOCK_KEY), nodeId);
+        }
+    }
+
+    private CartItem toCartItem(String userId, String productId, String cartId, String json) {
+        Entry entry;
+        try {
+            entry = objectMapper.readValue(json, Entry.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("购物车数据格式错误: " + json, e);
+        }
+        CartItem item = new CartItem();
+        item.setCartItemId(entry.getCartItemId());
+        item.setCartId(cartId != null ? cartId : entry.getCartId());
+        item.setUserId(userId);
+        item.setProductId(productId != null ? productId : entry.getProductId());
+        item.setQuantity(entry.getQuantity());
+        item.setPaidQuantity(entry.getPaidQuantity() != null ? entry.getPaidQuantity() : 0);
+        item.setPrice(entry.getPrice());
+        item.setProductName(entry.getProductName());
+        item.setImageUrl(entry.getImageUrl());
+        return item;
+    }
+
+    private String toJson(Entry entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("购物车数据序列化失败", e);
+        }
+    }
+
+    private static int paidQuantity(CartItem item) {
+        return item.getPaidQuantity() != null ? item.getPaidQuantity() : 0;
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(TimeUnit.HOURS.toSeconds(redisTtlHours));
+    }
+
+    private static <T> DefaultRedisScript<T> loadScript(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    /**
+     * Redis 中的商品快照，cartId/productId 只在脚本返回结果中出现
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        private String cartItemId;
+        private String cartId;
+        private String productId;
+        private Integer quantity;
+        private Integer paidQuantity;
+        private BigDecimal price;
+        private String productName;
+        private String imageUrl;
+    }
+
+    private static final class CartSnapshot {
+        private final String userId;
+        private final String cartId;
+        private final List<CartItem> items = new ArrayList<>();
+
+        private CartSnapshot(String userId, String cartId) {
+            this.userId = userId;
+            this.cartId = cartId;
+        }
+    }
+}
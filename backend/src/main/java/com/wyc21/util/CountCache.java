@@ -0,0 +1,48 @@
+package com.wyc21.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 分页总数缓存：COUNT(*) 结果在 Redis 中缓存一段时间，返回的是近似值
+ */
+@Slf4j
+@Component
+public class CountCache {
+
+    private static final String COUNT_KEY = "count:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${pagination.count-cache-seconds:60}")
+    private long cacheSeconds;
+
+    public long get(String key, Supplier<Long> loader) {
+        String redisKey = COUNT_KEY + key;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(redisKey);
+            if (cached != null) {
+                return Long.parseLong(cached);
+            }
+        } catch (DataAccessException e) {
+            log.warn("读取计数缓存失败: {}", e.getMessage());
+            return loader.get();
+        }
+
+        long count = loader.get();
+        try {
+            stringRedisTemplate.opsForValue().set(redisKey, String.valueOf(count), cacheSeconds, TimeUnit.SECONDS);
+        } catch (DataAccessException e) {
+            log.warn("写入计数缓存失败: {}", e.getMessage());
+        }
+        return count;
+    }
+}
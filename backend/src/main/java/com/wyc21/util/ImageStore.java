@@ -0,0 +1,381 @@
+package com.wyc21.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 商品图片服务：启动时把 classpath 下的图片解压到本地磁盘目录，并建立内存索引（大小、内容哈希、MIME 类型）。
+ * 响应时支持 ETag/Last-Modified 条件请求(304)和单段 Range 请求(206)，
+ * 文件内容优先交给 Tomcat sendfile 零拷贝发送，不支持时用 FileChannel.transferTo。
+ * 带内容哈希(?v=)的地址永久缓存，内容变化后地址随之变化；带宽度(?w=)的地址返回缩略图，见 {@link ImageVariantStore}。
+ */
+@Slf4j
+@Component
+public class ImageStore {
+
+    private static final String URL_PREFIX = "/products/images/";
+
+    // Tomcat NIO 连接器的 sendfile 支持，end 为开区间
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    // 缩略图暂时无法生成时输出的原图不能按缩略图地址缓存
+    private static final String NO_STORE_CACHE_CONTROL = "no-store";
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", "image/jpeg",
+            "jpeg", "image/jpeg",
+            "png", "image/png",
+            "gif", "image/gif",
+            "webp", "image/webp",
+            "avif", "image/avif",
+            "svg", "image/svg+xml");
+
+    @Value("${image.location:classpath*:images/*}")
+    private String location;
+
+    @Value("${image.cache-dir:${java.io.tmpdir}/wz-images}")
+    private String cacheDir;
+
+    // 图片地址的前缀（后端对外地址）
+    @Value("${image.base-url:http://localhost:8088}")
+    private String baseUrl;
+
+    // 不带内容哈希的地址的缓存时间，过期后用 ETag 重新验证
+    @Value("${image.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @Autowired
+    private ImageVariantStore variantStore;
+
+    private volatile Map<String, Image> index = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() throws IOException {
+        long start = System.currentTimeMillis();
+        Path dir = Paths.get(cacheDir, "original");
+        Files.createDirectories(dir);
+
+        Map<String, Image> images = new HashMap<>();
+        long totalBytes = 0;
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location)) {
+            String name = resource.getFilename();
+            if (name == null || name.isEmpty() || !resource.isReadable()) {
+                continue;
+            }
+            Image image = extract(resource, dir.resolve(name));
+            images.put(name, image);
+            totalBytes += image.getSize();
+        }
+        index = Collections.unmodifiableMap(images);
+        log.info("商品图片索引完成: {}张, {}KB, 目录 {}, 耗时{}ms",
+                images.size(), totalBytes / 1024, dir, System.currentTimeMillis() - start);
+    }
+
+    public Image get(String name) {
+        return index.get(name);
+    }
+
+    /**
+     * 指定宽度的缩略图，无法缩小时返回原图，暂时无法生成时返回 null
+     */
+    public Image get(Image original, int width) {
+        return variantStore.get(original, width);
+    }
+
+    /**
+     * 图片访问地址：/images/x.jpeg -> {base-url}/products/images/x.jpeg?v={内容哈希}；
+     * 外部地址原样返回，索引中不存在的图片不带哈希
+     */
+    public String url(String imageUrl) {
+        if (imageUrl == null || imageUrl.isEmpty() || imageUrl.startsWith("http")) {
+            return imageUrl;
+        }
+        String name = imageUrl.substring(imageUrl.lastIndexOf('/') + 1);
+        Image image = index.get(name);
+        String url = baseUrl + URL_PREFIX + name;
+        return image != null ? url + "?v=" + image.getHash() : url;
+    }
+
+    /**
+     * img 标签的 srcset：各档位缩略图加原图，如 "...?v=ab12&w=240 240w, ...?v=ab12 1200w"；
+     * 外部地址或索引中不存在的图片返回 null
+     */
+    public String srcset(String imageUrl) {
+        if (imageUrl == null || imageUrl.isEmpty() || imageUrl.startsWith("http")) {
+            return null;
+        }
+        Image image = index.get(imageUrl.substring(imageUrl.lastIndexOf('/') + 1));
+        if (image == null || image.getWidth() <= 0) {
+            return null;
+        }
+        String url = url(imageUrl);
+        StringBuilder srcset = new StringBuilder();
+        for (int width : variantStore.getWidths()) {
+            if (width < image.getWidth()) {
+                srcset.append(url).append("&w=").append(width).append(' ').append(width).append("w, ");
+            }
+        }
+        return srcset.append(url).append(' ').append(image.getWidth()).append('w').toString();
+    }
+
+    /**
+     * 输出图片，处理条件请求和 Range 请求
+     *
+     * @param immutable 请求地址中的内容哈希与当前原图一致，可永久缓存
+     */
+    public void serve(Image image, boolean immutable, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        serve(image, immutable ? IMMUTABLE_CACHE_CONTROL : "public, max-age=" + maxAgeSeconds, request, response);
+    }
+
+    /**
+     * 缩略图暂时无法生成（线程池已满、超时或失败）时输出原图，不允许缓存，下次请求重新尝试缩略图
+     */
+    public void serveFallback(Image original, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        serve(original, NO_STORE_CACHE_CONTROL, request, response);
+    }
+
+    private void serve(Image image, String cacheControl, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 设置 ETag/Last-Modified，命中时返回 304
+        if (new ServletWebRequest(request, response).checkNotModified(image.getEtag(), image.getLastModified())) {
+            return;
+        }
+
+        long size = image.getSize();
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && size > 0 && ifRangeMatches(request, image)) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                // 多段范围时返回完整内容
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                    if (start >= size || start > end) {
+                        throw new IllegalArgumentException("范围超出文件大小");
+                    }
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentType(image.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + image.getName() + "\"");
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由 Tomcat 在请求处理结束后用 sendfile 发送
+            request.setAttribute(SENDFILE_FILENAME, image.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(image.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+
+    // If-Range 与当前版本不一致时忽略 Range，返回完整内容
+    private boolean ifRangeMatches(HttpServletRequest request, Image image) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(image.getEtag());
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == image.getLastModified();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 复制到磁盘的同时计算内容哈希，先写临时文件再原子替换，多个实例共用目录时也不会读到半个文件
+     */
+    private Image extract(Resource resource, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest(), 0, 8);
+        return new Image(target.getFileName().toString(), target, Files.size(target), hash,
+                contentType(target.getFileName().toString()), lastModified(resource), readWidth(target));
+    }
+
+    // 只读取图片头部得到像素宽度，无法识别的格式返回 0
+    private static int readWidth(Path path) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                return 0;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return reader.getWidth(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            log.warn("读取图片尺寸失败: {}, {}", path, e.getMessage());
+            return 0;
+        }
+    }
+
+    public static String contentType(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        String type = CONTENT_TYPES.get(extension);
+        if (type == null) {
+            type = URLConnection.guessContentTypeFromName(name);
+        }
+        return type != null ? type : "application/octet-stream";
+    }
+
+    // HTTP 日期精确到秒
+    private static long lastModified(Resource resource) {
+        long millis;
+        try {
+            millis = resource.lastModified();
+        } catch (IOException e) {
+            millis = System.currentTimeMillis();
+        }
+        return millis / 1000 * 1000;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 磁盘上的一张图片
+     */
+    public static final class Image {
+        private final String name;
+        private final Path path;
+        private final long size;
+        private final String hash;
+        private final String etag;
+        private final String contentType;
+        private final long lastModified;
+        // 像素宽度，未知时为 0
+        private final int width;
+
+        public Image(String name, Path path, long size, String hash, String contentType, long lastModified,
+                int width) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+            this.etag = "\"" + hash + "\"";
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.width = width;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+    }
+}
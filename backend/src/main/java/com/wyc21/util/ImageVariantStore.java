@@ -0,0 +1,338 @@
+package com.wyc21.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 商品图片缩略图：按宽度档位在第一次请求时生成，生成在独立的有界线程池中执行，
+ * 同一缩略图的并发请求共用一次生成。生成结果写入本地磁盘目录，按最近使用顺序淘汰，总大小不超过配置的字节上限。
+ * 文件名包含原图内容哈希，原图变化后自动生成新的缩略图。
+ * 线程池已满、生成超时或失败时返回 null，由调用方改为输出原图且不允许缓存，不影响页面展示。
+ */
+@Slf4j
+@Component
+public class ImageVariantStore {
+
+    // 缩略图文件名: {原图哈希}-w{宽度}.{扩展名}
+    private static final Pattern VARIANT_NAME = Pattern.compile("([0-9a-f]+)-w(\\d+)\\.(jpe?g|png)");
+
+    @Value("${image.cache-dir:${java.io.tmpdir}/wz-images}")
+    private String cacheDir;
+
+    // 缩略图宽度档位，请求的宽度向上取到最近的档位，避免任意宽度撑满缓存
+    @Value("${image.variant.widths:240,480,960}")
+    private int[] widths;
+
+    // JPEG 压缩质量 0~1
+    @Value("${image.variant.quality:0.8}")
+    private float quality;
+
+    @Value("${image.variant.threads:2}")
+    private int threads;
+
+    @Value("${image.variant.queue-capacity:100}")
+    private int queueCapacity;
+
+    // 请求线程等待生成的最长时间，超时返回原图，生成仍在后台完成
+    @Value("${image.variant.timeout-ms:3000}")
+    private long timeoutMillis;
+
+    // 磁盘缓存的字节上限
+    @Value("${image.variant.max-cache-bytes:268435456}")
+    private long maxCacheBytes;
+
+    private Path dir;
+
+    private ThreadPoolExecutor executor;
+
+    // 正在生成的缩略图，同一个 key 只提交一次
+    private final Map<String, CompletableFuture<ImageStore.Image>> pending = new ConcurrentHashMap<>();
+
+    // 按访问顺序排列的磁盘缓存索引，最久未使用的在最前面；cachedBytes 与其一起在 synchronized (cache) 中修改
+    private final LinkedHashMap<String, ImageStore.Image> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    @PostConstruct
+    public void init() throws IOException {
+        widths = Arrays.stream(widths).filter(w -> w > 0).sorted().distinct().toArray();
+        dir = Paths.get(cacheDir, "variants");
+        Files.createDirectories(dir);
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "image-variant-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        loadExisting();
+        log.info("缩略图档位: {}, 线程数: {}, 磁盘缓存 {}张/{}KB, 上限 {}KB",
+                Arrays.toString(widths), threads, cache.size(), cachedBytes / 1024, maxCacheBytes / 1024);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public int[] getWidths() {
+        return widths.clone();
+    }
+
+    /**
+     * 取指定宽度的缩略图，不能缩小（请求宽度不小于原图、格式不支持）时返回原图；
+     * 线程池已满、生成超时或失败时返回 null，这些情况下次请求可能成功，原图不能按缩略图地址长期缓存
+     */
+    public ImageStore.Image get(ImageStore.Image original, int width) {
+        int target = fit(width);
+        if (target <= 0 || target >= original.getWidth() || extension(original.getName()) == null) {
+            return original;
+        }
+        String key = original.getHash() + "-w" + target + "." + extension(original.getName());
+        ImageStore.Image cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<ImageStore.Image> future = pending.get(key);
+        if (future == null) {
+            CompletableFuture<ImageStore.Image> created = new CompletableFuture<>();
+            future = pending.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                try {
+                    executor.execute(() -> generate(original, target, key, created));
+                } catch (RejectedExecutionException e) {
+                    pending.remove(key, created);
+                    log.debug("缩略图生成队列已满，暂时返回原图: {}", key);
+                    return null;
+                }
+            }
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("缩略图生成超时，暂时返回原图: {}", key);
+        } catch (ExecutionException e) {
+            log.warn("缩略图生成失败，暂时返回原图: {}, {}", key, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // 向上取到最近的档位，超过最大档位时返回 0（使用原图）
+    private int fit(int width) {
+        for (int w : widths) {
+            if (w >= width) {
+                return w;
+            }
+        }
+        return 0;
+    }
+
+    private ImageStore.Image lookup(String key) {
+        synchronized (cache) {
+            ImageStore.Image image = cache.get(key);
+            if (image == null || Files.exists(image.getPath())) {
+                return image;
+            }
+            // 文件已被外部删除
+            cache.remove(key);
+            cachedBytes -= image.getSize();
+            return null;
+        }
+    }
+
+    private void generate(ImageStore.Image original, int width, String key,
+            CompletableFuture<ImageStore.Image> future) {
+        try {
+            long start = System.currentTimeMillis();
+            ImageStore.Image variant = write(original, width, key);
+            add(variant);
+            future.complete(variant);
+            log.info("生成缩略图: {} -> {}, {}KB -> {}KB, 耗时{}ms", original.getName(), key,
+                    original.getSize() / 1024, variant.getSize() / 1024, System.currentTimeMillis() - start);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            pending.remove(key, future);
+        }
+    }
+
+    private ImageStore.Image write(ImageStore.Image original, int width, String key) throws IOException {
+        BufferedImage source = ImageIO.read(original.getPath().toFile());
+        if (source == null) {
+            throw new IOException("无法解码图片: " + original.getName());
+        }
+        String format = "png".equals(extension(key)) ? "png" : "jpeg";
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+        BufferedImage scaled = scale(source, width, height,
+                "png".equals(format) && source.getColorModel().hasAlpha());
+
+        Path target = dir.resolve(key);
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if ("jpeg".equals(format)) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(quality);
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                }
+                writer.write(null, new IIOImage(scaled, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            // 先写临时文件再原子替换，多个实例共用目录时也不会读到半个文件
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return toImage(target, width);
+    }
+
+    /**
+     * 逐级减半缩小后再缩放到目标尺寸，双线性插值一次缩小太多倍会丢失细节
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    private void add(ImageStore.Image image) {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (cache) {
+            ImageStore.Image previous = cache.put(image.getName(), image);
+            cachedBytes += image.getSize() - (previous != null ? previous.getSize() : 0);
+            Iterator<ImageStore.Image> it = cache.values().iterator();
+            while (cachedBytes > maxCacheBytes && it.hasNext()) {
+                ImageStore.Image eldest = it.next();
+                if (eldest == image) {
+                    continue;
+                }
+                it.remove();
+                cachedBytes -= eldest.getSize();
+                evicted.add(eldest.getPath());
+            }
+        }
+        for (Path path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("删除缩略图失败: {}, {}", path, e.getMessage());
+            }
+        }
+        if (!evicted.isEmpty()) {
+            log.info("缩略图缓存超出上限，淘汰{}张", evicted.size());
+        }
+    }
+
+    /**
+     * 启动时登记目录中已有的缩略图，按修改时间从旧到新加入，超出上限的最旧文件被淘汰
+     */
+    private void loadExisting() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        Map<Path, Long> modified = new LinkedHashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            if (VARIANT_NAME.matcher(name).matches()) {
+                modified.put(file, Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+        List<Path> ordered = new ArrayList<>(modified.keySet());
+        ordered.sort(Comparator.comparing(modified::get));
+        for (Path file : ordered) {
+            Matcher matcher = VARIANT_NAME.matcher(file.getFileName().toString());
+            matcher.matches();
+            add(toImage(file, Integer.parseInt(matcher.group(2))));
+        }
+    }
+
+    private static ImageStore.Image toImage(Path path, int width) throws IOException {
+        String name = path.getFileName().toString();
+        // HTTP 日期精确到秒
+        long lastModified = Files.getLastModifiedTime(path).toMillis() / 1000 * 1000;
+        return new ImageStore.Image(name, path, Files.size(path), name.substring(0, name.lastIndexOf('.')),
+                ImageStore.contentType(name), lastModified, width);
+    }
+
+    // 支持缩放的格式，其余格式（gif、svg 等）直接返回原图
+    private static String extension(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        switch (extension) {
+            case "jpg":
+            case "jpeg":
+            case "png":
+                return extension;
+            default:
+                return null;
+        }
+    }
+}
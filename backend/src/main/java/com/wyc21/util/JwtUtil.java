@@ -1,99 +0,0 @@
-package com.wyc21.util;
-
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
-import java.security.SecureRandom;
-import java.util.Base64;
-import javax.crypto.SecretKey;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-
-@Component
-public class JwtUtil {
-
-    @Value("${jwt.secret}")
-    private String secret;
-
-    @Value("${jwt.access-token-expiration}")
-    private Long accessTokenExpiration;
-
-    @Value("${jwt.refresh-token-expiration}")
-    private Long refreshTokenExpiration;
-
-    private final SecureRandom secureRandom = new SecureRandom();
-
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
-    }
-
-    public String generateAccessToken(String userId, String username, String ip, String ipLocation) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + 900000); // 15分钟后过期
-
-        return Jwts.builder()
-                .subject(username)
-                .claim("uid", userId) // 使用String类型的userId
-                .claim("ip", ip)
-                .claim("location", ipLocation)
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
-    }
-
-    public String generateRefreshToken(String userId, String username) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + 604800000); // 7天后过期
-
-        return Jwts.builder()
-                .subject(username)
-                .claim("uid", userId) // 使用String类型的userId
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
-    }
-
-    public Claims validateToken(String token) {
-        try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    public boolean isTokenExpired(Claims claims) {
-        return claims.getExpiration().before(new Date());
-    }
-
-    public String generateToken(String username, Long userId) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + 900000); // 15分钟后过期
-
-        return Jwts.builder()
-                .subject(username)
-                .claim("uid", userId) // 添加用户ID到token中
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
-    }
-
-    // 从token中获取用户ID
-    public String getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        return claims.get("uid", String.class); // 获取String类型的userId
-    }
-}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.wyc21.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于 Redis 有序集合的订单过期延迟队列，score 为订单过期时间戳
+ */
+@Slf4j
+@Component
+public class OrderExpiryQueue {
+
+    private static final String QUEUE_KEY = "order:expire:queue";
+    private static final String PROCESSING_KEY = "order:expire:processing";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final DefaultRedisScript<List<String>> claimScript = new DefaultRedisScript<>();
+
+    @SuppressWarnings("unchecked")
+    public OrderExpiryQueue() {
+        claimScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/order_expire_claim.lua")));
+        // List.class 无法携带元素类型，脚本返回的是订单ID字符串列表
+        claimScript.setResultType((Class<List<String>>) (Class<?>) List.class);
+    }
+
+    /**
+     * 订单进入延迟队列，入队失败时由定时全表检查兜底
+     */
+    public void add(String orderId, LocalDateTime expireTime) {
+        long score = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try {
+            stringRedisTemplate.opsForZSet().add(QUEUE_KEY, orderId, score);
+        } catch (DataAccessException e) {
+            log.warn("订单{}加入过期队列失败: {}", orderId, e.getMessage());
+        }
+    }
+
+    /**
+     * 订单已支付或取消，移出延迟队列
+     */
+    public void remove(String orderId) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, orderId);
+        } catch (DataAccessException e) {
+            log.warn("订单{}移出过期队列失败: {}", orderId, e.getMessage());
+        }
+    }
+
+    /**
+     * 领取已到期的订单（包括其他节点租约过期未处理完的订单）
+     */
+    public List<String> claimDue(int limit, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        List<String> ids = stringRedisTemplate.execute(claimScript,
+                Arrays.asList(QUEUE_KEY, PROCESSING_KEY),
+                String.valueOf(now), String.valueOf(now + leaseMillis), String.valueOf(limit));
+        return ids != null ? ids : Collections.emptyList();
+    }
+
+    /**
+     * 处理完成，释放租约
+     */
+    public void complete(Collection<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().remove(PROCESSING_KEY, orderIds.toArray());
+    }
+}
@@ -0,0 +1,137 @@
+package com.wyc21.util;
+
+import com.wyc21.service.ex.TooManyRequestsException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 密码哈希：bcrypt 计算放在独立的有界线程池中执行，不占用 Tomcat 请求线程；
+ * 队列已满时直接拒绝（返回429），避免登录高峰拖垮整个服务。
+ * 启动时按目标耗时校准 bcrypt cost，已存储的低 cost 哈希在登录成功后重新计算。
+ */
+@Slf4j
+@Component
+public class PasswordHasher {
+
+    private static final int MIN_COST = 10;
+    private static final int MAX_COST = 16;
+
+    // 固定 cost，0 表示启动时自动校准
+    @Value("${password.hash.cost:0}")
+    private int configuredCost;
+
+    // 自动校准时单次哈希的目标耗时
+    @Value("${password.hash.target-ms:250}")
+    private long targetMillis;
+
+    @Value("${password.hash.threads:0}")
+    private int threads;
+
+    @Value("${password.hash.queue-capacity:200}")
+    private int queueCapacity;
+
+    private volatile int cost = MIN_COST;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        cost = configuredCost > 0 ? configuredCost : calibrate();
+        log.info("密码哈希线程数: {}, 队列容量: {}, bcrypt cost: {}", poolSize, queueCapacity, cost);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 异步计算密码哈希
+     */
+    public CompletableFuture<String> hash(String plainPassword) {
+        int currentCost = cost;
+        return submit(() -> BCrypt.hashpw(plainPassword, BCrypt.gensalt(currentCost)));
+    }
+
+    /**
+     * 异步校验密码，哈希格式错误时视为不匹配
+     */
+    public CompletableFuture<Boolean> verify(String plainPassword, String hashedPassword) {
+        return submit(() -> {
+            try {
+                return hashedPassword != null && BCrypt.checkpw(plainPassword, hashedPassword);
+            } catch (IllegalArgumentException e) {
+                log.warn("密码哈希格式错误: {}", e.getMessage());
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 已存储的哈希 cost 低于当前 cost 时需要重新计算。
+     * 只升不降，避免不同配置的节点之间反复重算。
+     */
+    public boolean needsRehash(String hashedPassword) {
+        // bcrypt 格式: $2a$10$...
+        if (hashedPassword == null || hashedPassword.length() < 7 || hashedPassword.charAt(0) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(hashedPassword.substring(4, 6)) < cost;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            throw new TooManyRequestsException("请求过多，请稍后重试");
+        }
+    }
+
+    /**
+     * 从最小 cost 开始逐级加倍，取耗时不超过目标的最大 cost
+     */
+    private int calibrate() {
+        String sample = "calibrate-password";
+        BCrypt.hashpw(sample, BCrypt.gensalt(4)); // 预热
+        int result = MIN_COST;
+        for (int c = MIN_COST; c <= MAX_COST; c++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(sample, BCrypt.gensalt(c));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (elapsed > targetMillis) {
+                break;
+            }
+            result = c;
+            // 下一级耗时约为两倍，超出目标时不再尝试
+            if (elapsed * 2 > targetMillis) {
+                break;
+            }
+        }
+        return result;
+    }
+}
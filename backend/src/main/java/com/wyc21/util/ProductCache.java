@@ -0,0 +1,145 @@
+package com.wyc21.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wyc21.entity.Product;
+import com.wyc21.mapper.ProductMapper;
+import com.wyc21.service.IStockReservationService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品两级缓存：本地 Caffeine(L1) + Redis(L2)，读穿透加载。
+ * 缓存内容不含库存，库存每次从库存预占引擎读取，库存变化不会使缓存失效；
+ * 商品信息修改后删除 L2 并通过 Redis 发布订阅通知所有节点清除 L1。
+ */
+@Slf4j
+@Component
+public class ProductCache {
+
+    private static final String CACHE_KEY = "product:cache:";
+    private static final String INVALIDATE_CHANNEL = "product:cache:invalidate";
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private IStockReservationService stockReservationService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${product.cache.local-max-size:10000}")
+    private long localMaxSize;
+
+    @Value("${product.cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    @Value("${product.cache.redis-ttl-seconds:1800}")
+    private long redisTtlSeconds;
+
+    private Cache<String, Product> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String productId = new String(message.getBody(), StandardCharsets.UTF_8);
+            localCache.invalidate(productId);
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 获取商品信息（含实时可售库存），商品不存在时返回 null
+     */
+    public Product get(String productId) {
+        if (productId == null) {
+            return null;
+        }
+        Product cached = localCache.get(productId, this::loadFromRedis);
+        if (cached == null) {
+            return null;
+        }
+        // 返回副本，避免调用方修改缓存对象
+        Product product = new Product();
+        BeanUtils.copyProperties(cached, product);
+        product.setStock(stockReservationService.getStock(productId));
+        return product;
+    }
+
+    /**
+     * 商品信息修改后使缓存失效，在事务中调用时等到提交后执行
+     */
+    public void evict(String productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doEvict(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                doEvict(productId);
+            }
+        });
+    }
+
+    private void doEvict(String productId) {
+        localCache.invalidate(productId);
+        try {
+            stringRedisTemplate.delete(CACHE_KEY + productId);
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, productId);
+        } catch (DataAccessException e) {
+            // 其他节点的本地缓存会在 TTL 到期后自然失效
+            log.warn("商品{}缓存失效通知失败: {}", productId, e.getMessage());
+        }
+    }
+
+    private Product loadFromRedis(String productId) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(CACHE_KEY + productId);
+            if (json != null) {
+                return objectMapper.readValue(json, Product.class);
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("读取商品{}的Redis缓存失败: {}", productId, e.getMessage());
+        }
+
+        Product product = productMapper.findById(productId);
+        if (product == null) {
+            return null;
+        }
+        product.setStock(null);
+        try {
+            stringRedisTemplate.opsForValue().set(CACHE_KEY + productId,
+                    objectMapper.writeValueAsString(product), redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("写入商品{}的Redis缓存失败: {}", productId, e.getMessage());
+        }
+        return product;
+    }
+}
@@ -0,0 +1,252 @@
+package com.wyc21.util;
+
+import com.wyc21.entity.RatingSummary;
+import com.wyc21.mapper.ProductMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品评分增量聚合：评论新增/删除在事务提交后只累加本地计数器（LongAdder），
+ * 定时把各商品的增量用一条批量 UPDATE 累加到 wz_products 的聚合列（评论数、评分总和、1~5 星分布），
+ * 平均分在同一条语句中由聚合列算出。增量相加与顺序无关，多个节点各自累加、各自刷新即可。
+ * 评分总和按 rating*10 的整数累加，避免小数误差。
+ */
+@Slf4j
+@Component
+public class RatingAggregator {
+
+    // MySQL 单表 UPDATE 按从左到右的顺序赋值，rating 使用的是更新后的 review_count 和 rating_sum
+    private static final String FLUSH_SQL = "UPDATE wz_products SET "
+            + "review_count = GREATEST(review_count + ?, 0), "
+            + "rating_sum = GREATEST(rating_sum + ?, 0), "
+            + "rating_1 = GREATEST(rating_1 + ?, 0), "
+            + "rating_2 = GREATEST(rating_2 + ?, 0), "
+            + "rating_3 = GREATEST(rating_3 + ?, 0), "
+            + "rating_4 = GREATEST(rating_4 + ?, 0), "
+            + "rating_5 = GREATEST(rating_5 + ?, 0), "
+            + "rating = IF(review_count = 0, 0, ROUND(rating_sum / 10 / review_count, 2)) "
+            + "WHERE product_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 商品ID -> 尚未写入数据库的增量；累加在 compute 中进行，刷新时整个条目移出后再读取，两者不会交错
+    private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一条评论的新增(+1)或删除(-1)，在事务中调用时等到提交后生效
+     */
+    public void record(String productId, BigDecimal rating, int sign) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(productId, rating, sign);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(productId, rating, sign);
+            }
+        });
+    }
+
+    private void add(String productId, BigDecimal rating, int sign) {
+        long tenths = tenths(rating);
+        int star = star(rating);
+        pending.compute(productId, (k, delta) -> {
+            if (delta == null) {
+                delta = new Delta();
+            }
+            delta.count.add(sign);
+            delta.sum.add(sign * tenths);
+            delta.stars[star - 1].add(sign);
+            return delta;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${product.rating.flush-interval-ms:5000}")
+    public void flush() {
+        List<String> productIds = new ArrayList<>();
+        List<long[]> values = new ArrayList<>();
+        for (String productId : pending.keySet()) {
+            // 移出后不会再有累加写入这个条目，并发的累加会新建条目留到下次；已刷新的商品不再占用内存
+            Delta delta = pending.remove(productId);
+            if (delta == null) {
+                continue;
+            }
+            long[] value = delta.drain();
+            if (!isZero(value)) {
+                productIds.add(productId);
+                values.add(value);
+            }
+        }
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            long[] value = values.get(i);
+            rows.add(new Object[] { value[0], value[1], value[2], value[3], value[4], value[5], value[6],
+                    productIds.get(i) });
+        }
+        try {
+            // 整批在一个事务中提交：任何一行失败时全部回滚，加回全部增量才不会重复累加已写入的行
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, rows));
+        } catch (DataAccessException | TransactionException e) {
+            // 增量加回计数器，下次重试
+            for (int i = 0; i < productIds.size(); i++) {
+                long[] value = values.get(i);
+                pending.compute(productIds.get(i), (k, delta) -> {
+                    if (delta == null) {
+                        delta = new Delta();
+                    }
+                    delta.restore(value);
+                    return delta;
+                });
+            }
+            log.error("商品评分写入失败，{}个商品的增量保留到下次: {}", productIds.size(), e.getMessage());
+            return;
+        }
+        productIds.forEach(productCache::evict);
+        log.info("商品评分写入完成: {}个商品, 耗时{}ms", productIds.size(), System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * 评分汇总：数据库聚合列加上本节点尚未写入的增量，不扫描评论表；商品不存在时返回 null
+     */
+    public RatingSummary getSummary(String productId) {
+        Map<String, Object> row = productMapper.findRatingAggregates(productId);
+        if (row == null) {
+            return null;
+        }
+        long count = number(row.get("review_count"));
+        long sum = number(row.get("rating_sum"));
+        long[] stars = new long[5];
+        for (int i = 0; i < 5; i++) {
+            stars[i] = number(row.get("rating_" + (i + 1)));
+        }
+        Delta delta = pending.get(productId);
+        if (delta != null) {
+            count += delta.count.sum();
+            sum += delta.sum.sum();
+            for (int i = 0; i < 5; i++) {
+                stars[i] += delta.stars[i].sum();
+            }
+        }
+
+        RatingSummary summary = new RatingSummary();
+        summary.setProductId(productId);
+        summary.setReviewCount((int) Math.max(count, 0));
+        summary.setRatingSum(Math.max(sum, 0));
+        summary.setRating(count > 0
+                ? BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count * 10), 2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO);
+        for (int i = 0; i < 5; i++) {
+            summary.getDistribution()[i] = (int) Math.max(stars[i], 0);
+        }
+        return summary;
+    }
+
+    /**
+     * 按 wz_reviews 重新计算聚合列，productId 为 null 时重新计算全部商品；
+     * 本节点对应的未写入增量已包含在评论表中，一并丢弃
+     */
+    public int recompute(String productId) {
+        if (productId == null) {
+            pending.clear();
+        } else {
+            pending.remove(productId);
+        }
+        long start = System.currentTimeMillis();
+        int updated = productMapper.recomputeRatings(productId);
+        if (productId != null) {
+            productCache.evict(productId);
+        }
+        log.info("商品评分重新计算完成: {}, {}个商品, 耗时{}ms", productId != null ? productId : "全部",
+                updated, System.currentTimeMillis() - start);
+        return updated;
+    }
+
+    // 评分按 0.1 分精度换算为整数
+    private static long tenths(BigDecimal rating) {
+        return rating.movePointRight(1).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    // 半星四舍五入到整星，限制在 1~5
+    private static int star(BigDecimal rating) {
+        int star = rating.setScale(0, RoundingMode.HALF_UP).intValue();
+        return Math.min(5, Math.max(1, star));
+    }
+
+    private static boolean isZero(long[] value) {
+        for (long v : value) {
+            if (v != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    // 单个商品的增量计数器
+    private static class Delta {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAdder[] stars = {
+                new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder() };
+
+        // 取出: [评论数, 评分总和, 1星, ..., 5星]
+        private long[] drain() {
+            long[] value = new long[7];
+            value[0] = count.sumThenReset();
+            value[1] = sum.sumThenReset();
+            for (int i = 0; i < 5; i++) {
+                value[i + 2] = stars[i].sumThenReset();
+            }
+            return value;
+        }
+
+        private void restore(long[] value) {
+            count.add(value[0]);
+            sum.add(value[1]);
+            for (int i = 0; i < 5; i++) {
+                stars[i].add(value[i + 2]);
+            }
+        }
+    }
+}
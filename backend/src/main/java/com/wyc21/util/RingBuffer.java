@@ -0,0 +1,85 @@
+package com.wyc21.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 无锁有界环形缓冲区：多个线程并发写入，单个线程批量取出。
+ * 每个槽位带序号，写入方通过 CAS 领取位置，缓冲区满时直接返回 false，不阻塞调用方。
+ */
+public class RingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] slots;
+    // 槽位序号等于位置时可写，等于位置+1时可读
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // 只在读取线程中访问
+    private long head;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 写入一个元素，缓冲区已满时返回 false
+     */
+    public boolean offer(T item) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index] = item;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 取出最多 max 个元素，只能由单个线程调用
+     *
+     * @return 实际取出的数量
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<T> consumer, int max) {
+        int count = 0;
+        while (count < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            T item = (T) slots[index];
+            slots[index] = null;
+            sequences.set(index, head + capacity);
+            head++;
+            count++;
+            consumer.accept(item);
+        }
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
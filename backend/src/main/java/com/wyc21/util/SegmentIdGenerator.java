@@ -0,0 +1,186 @@
+package com.wyc21.util;
+
+import com.wyc21.entity.IdAlloc;
+import com.wyc21.mapper.IdGeneratorMapper;
+import com.wyc21.service.IIdGenerator;
+import com.wyc21.service.ex.InsertException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 号段ID生成器（双缓冲）
+ * 从 wz_id_generator 表通过乐观锁批量领取号段，在内存中递增发放；
+ * 当前号段消耗约10%时由后台线程预取下一个号段，步长根据消耗速度自动调整。
+ * 生成的ID单调递增、与时钟无关，订单和订单项主键按顺序追加写入。
+ */
+@Slf4j
+@Primary
+@Component
+public class SegmentIdGenerator implements IIdGenerator {
+
+    // 乐观锁冲突时的最大重试次数
+    private static final int MAX_RETRIES = 10;
+
+    // 单个号段的最大步长
+    private static final long MAX_STEP = 1_000_000L;
+
+    @Autowired
+    private IdGeneratorMapper idGeneratorMapper;
+
+    @Value("${id.segment.id-type:order}")
+    private String idType;
+
+    @Value("${id.segment.step:1000}")
+    private int initialStep;
+
+    // 期望单个号段的使用时长，消耗更快则步长加倍，更慢则减半
+    @Value("${id.segment.duration-ms:900000}")
+    private long segmentDurationMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Segment current = new Segment(1, 0, 0);
+
+    // 预取中的下一个号段，只在持有 lock 时修改
+    private volatile Future<Segment> next;
+
+    // 以下字段只在号段加载线程中访问
+    private long minStep;
+    private long step;
+    private long lastFetchTime;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "segment-id-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        minStep = initialStep;
+        step = initialStep;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        loader.shutdownNow();
+    }
+
+    @Override
+    public Long nextId() {
+        while (true) {
+            Segment segment = current;
+            long id = segment.value.getAndIncrement();
+            if (id <= segment.max) {
+                if (segment.max - id < segment.prefetchThreshold && next == null) {
+                    prefetch(segment);
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * 当前号段剩余不足时提交后台预取，不阻塞发号线程
+     */
+    private void prefetch(Segment segment) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (next == null && current == segment) {
+                next = loader.submit(this::fetchSegment);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前号段已用完，切换到预取的号段（未预取时同步加载）
+     */
+    private void switchSegment(Segment exhausted) {
+        lock.lock();
+        try {
+            if (current != exhausted) {
+                return;
+            }
+            Future<Segment> future = next;
+            if (future == null) {
+                future = loader.submit(this::fetchSegment);
+            }
+            next = null;
+            current = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InsertException("获取ID号段被中断", e);
+        } catch (ExecutionException e) {
+            throw new InsertException("获取ID号段失败", e.getCause());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从数据库领取一个号段，乐观锁冲突时重试
+     */
+    private Segment fetchSegment() {
+        if (lastFetchTime == 0) {
+            // 首次领取时才初始化记录，此时数据库迁移已经完成
+            idGeneratorMapper.initIfAbsent(idType, 0L, initialStep);
+        }
+        adjustStep();
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            IdAlloc alloc = idGeneratorMapper.findByIdType(idType);
+            long newMaxId = alloc.getCurrentMaxId() + step;
+            Integer updated = idGeneratorMapper.updateMaxId(idType, newMaxId, alloc.getVersion());
+            if (updated != null && updated > 0) {
+                lastFetchTime = System.currentTimeMillis();
+                log.info("领取ID号段: {} ({}, {}]", idType, alloc.getCurrentMaxId(), newMaxId);
+                return new Segment(alloc.getCurrentMaxId() + 1, newMaxId, step);
+            }
+        }
+        throw new InsertException("领取ID号段失败，乐观锁冲突次数过多: " + idType);
+    }
+
+    /**
+     * 根据上一个号段的使用时长调整步长
+     */
+    private void adjustStep() {
+        if (lastFetchTime == 0) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - lastFetchTime;
+        if (elapsed < segmentDurationMillis && step * 2 <= MAX_STEP) {
+            step *= 2;
+        } else if (elapsed >= segmentDurationMillis * 2 && step / 2 >= minStep) {
+            step /= 2;
+        }
+    }
+
+    private static class Segment {
+        private final AtomicLong value;
+        private final long max;
+        // 剩余数量低于该值时开始预取，即消耗约10%
+        private final long prefetchThreshold;
+
+        private Segment(long start, long max, long step) {
+            this.value = new AtomicLong(start);
+            this.max = max;
+            this.prefetchThreshold = step * 9 / 10;
+        }
+    }
+}
@@ -1,8 +1,31 @@
 package com.wyc21.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 import com.wyc21.service.IIdGenerator;
 
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁雪花ID生成器
+ * 时间戳和毫秒内序列打包在一个 AtomicLong 中通过 CAS 推进；
+ * 工作机器ID启动时从 Redis 租用并定时续期，多实例部署不会产生重复ID
+ */
+@Slf4j
 @Component
 public class SnowflakeIdGenerator implements IIdGenerator {
     /**
@@ -46,69 +69,160 @@ public class SnowflakeIdGenerator implements IIdGenerator {
     private final long sequenceMask = -1L ^ (-1L << sequenceBits);
 
     /**
-     * 工作机器ID(0~31)
+     * 支持的最大机器id，结果是31
      */
-    private long workerId = 0L;
+    private final long maxWorkerId = -1L ^ (-1L << workerIdBits);
+
+    /**
+     * 支持的最大数据标识id，结果是31
+     */
+    private final long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
+
+    private static final String WORKER_LEASE_KEY = "snowflake:worker:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
     /**
      * 数据中心ID(0~31)
      */
-    private long datacenterId = 0L;
+    @Value("${snowflake.datacenter-id:0}")
+    private long datacenterId;
 
     /**
-     * 毫秒内序列(0~4095)
+     * 固定的工作机器ID(0~31)，小于0时从 Redis 租用
      */
-    private long sequence = 0L;
+    @Value("${snowflake.worker-id:-1}")
+    private long configuredWorkerId;
+
+    @Value("${snowflake.worker-lease-ms:30000}")
+    private long workerLeaseMillis;
 
     /**
-     * 上次生成ID的时间截
+     * 工作机器ID(0~31)，续期失败重新租用时会变化
      */
-    private long lastTimestamp = -1L;
+    private volatile long workerId = -1L;
 
-    @Override
-    public synchronized Long nextId() {
-        long timestamp = timeGen();
-
-        // 如果当前时间小于上一次ID生成的时间戳，说明系统时钟回退过这个时候应当抛出异常
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException(
-                    String.format("Clock moved backwards. Refusing to generate id for %d milliseconds",
-                            lastTimestamp - timestamp));
+    /**
+     * 高位为上次生成ID的时间戳(相对twepoch)，低12位为毫秒内序列
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final DefaultRedisScript<Long> renewScript = loadScript("lua/lease_renew.lua");
+    private final DefaultRedisScript<Long> unlockScript = loadScript("lua/unlock.lua");
+
+    @PostConstruct
+    public void init() {
+        if (datacenterId < 0 || datacenterId > maxDatacenterId) {
+            throw new IllegalArgumentException(
+                    String.format("datacenter Id can't be greater than %d or less than 0", maxDatacenterId));
         }
+        if (configuredWorkerId > maxWorkerId) {
+            throw new IllegalArgumentException(
+                    String.format("worker Id can't be greater than %d", maxWorkerId));
+        }
+        if (configuredWorkerId >= 0) {
+            workerId = configuredWorkerId;
+        } else {
+            leaseWorkerId();
+        }
+        log.info("雪花ID生成器已启动, datacenterId: {}, workerId: {}", datacenterId, workerId);
+    }
 
-        // 如果是同一时间生成的，则进行毫秒内序列
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            // 毫秒内序列溢出
-            if (sequence == 0) {
-                // 阻塞到下一个毫秒,获得新的时间戳
-                timestamp = tilNextMillis(lastTimestamp);
-            }
+    @PreDestroy
+    public void destroy() {
+        if (configuredWorkerId >= 0) {
+            return;
         }
-        // 时间戳改变，毫秒内序列重置
-        else {
-            sequence = 0L;
+        try {
+            stringRedisTemplate.execute(unlockScript, Collections.singletonList(leaseKey(workerId)), nodeId);
+        } catch (DataAccessException e) {
+            log.warn("释放workerId失败: {}", e.getMessage());
         }
+    }
 
-        // 上次生成ID的时间截
-        lastTimestamp = timestamp;
+    @Override
+    public Long nextId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long timestamp = timeGen() - twepoch;
+            if (timestamp > current >>> sequenceBits) {
+                // 时间戳前进，毫秒内序列重置
+                next = timestamp << sequenceBits;
+            } else {
+                // 同一毫秒或时钟回退：序列加一，溢出时进位到下一毫秒（向未来借用），不再抛出异常
+                next = current + 1;
+            }
+        } while (!state.compareAndSet(current, next));
 
         // 移位并通过或运算拼到一起组成64位的ID
-        return ((timestamp - twepoch) << timestampLeftShift) //
+        return ((next >>> sequenceBits) << timestampLeftShift) //
                 | (datacenterId << datacenterIdShift) //
                 | (workerId << workerIdShift) //
-                | sequence;
+                | (next & sequenceMask);
+    }
+
+    /**
+     * 定时续期租用的workerId，租约已被他人占用时重新租用
+     */
+    @Scheduled(fixedDelayString = "${snowflake.worker-renew-ms:10000}")
+    public void renewWorkerId() {
+        if (configuredWorkerId >= 0) {
+            return;
+        }
+        try {
+            Long renewed = stringRedisTemplate.execute(renewScript,
+                    Collections.singletonList(leaseKey(workerId)), nodeId, String.valueOf(workerLeaseMillis));
+            if (renewed == null || renewed == 0) {
+                log.warn("workerId {} 的租约已失效，重新租用", workerId);
+                leaseWorkerId();
+            }
+        } catch (DataAccessException e) {
+            log.warn("续期workerId失败: {}", e.getMessage());
+        }
     }
 
     /**
-     * 阻塞到下一个毫秒，直到获得新的时间戳
+     * 从随机位置开始依次尝试租用一个空闲的workerId
      */
-    private long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
+    private void leaseWorkerId() {
+        int start = ThreadLocalRandom.current().nextInt((int) maxWorkerId + 1);
+        try {
+            for (int i = 0; i <= maxWorkerId; i++) {
+                long candidate = (start + i) & maxWorkerId;
+                Boolean leased = stringRedisTemplate.opsForValue().setIfAbsent(leaseKey(candidate), nodeId,
+                        workerLeaseMillis, TimeUnit.MILLISECONDS);
+                if (Boolean.TRUE.equals(leased)) {
+                    workerId = candidate;
+                    return;
+                }
+            }
+            throw new IllegalStateException("没有可用的workerId, datacenterId: " + datacenterId);
+        } catch (DataAccessException e) {
+            if (workerId >= 0) {
+                // 保留当前workerId，等待下次续期
+                log.warn("租用workerId失败，继续使用 {}: {}", workerId, e.getMessage());
+                return;
+            }
+            // Redis 不可用时随机选择，请在多实例部署时配置 snowflake.worker-id
+            workerId = start;
+            log.warn("Redis不可用，随机使用workerId {}: {}", workerId, e.getMessage());
         }
-        return timestamp;
+    }
+
+    private String leaseKey(long id) {
+        return WORKER_LEASE_KEY + datacenterId + ":" + id;
+    }
+
+    private static DefaultRedisScript<Long> loadScript(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
     }
 
     /**
@@ -117,4 +231,4 @@ public class SnowflakeIdGenerator implements IIdGenerator {
     private long timeGen() {
         return System.currentTimeMillis();
     }
-}
\ No newline at end of file
+}
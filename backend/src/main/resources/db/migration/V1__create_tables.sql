@@ -1,7 +1,4 @@
-DROP DATABASE IF EXISTS store;
-
-CREATE DATABASE store CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
-use store;
+-- 初始表结构
 
 
 CREATE TABLE IF NOT EXISTS wz_id_generator (
@@ -1,4 +1,4 @@
-USE store;
+-- 初始数据
 
 -- 清空所有表数据（按照外键依赖的反序清空）
 SET FOREIGN_KEY_CHECKS = 0;
@@ -0,0 +1,23 @@
+-- 热点查询的二级索引
+
+-- 过期订单扫描 findExpiredOrders / findExpiredOrderIds
+CREATE INDEX idx_orders_status_expire ON wz_orders (status, expire_time);
+
+-- 用户订单列表及游标分页 findByUserId / findOrdersAfter
+CREATE INDEX idx_orders_user_created ON wz_orders (user_id, created_time, order_id);
+
+-- 购物车商品查找 findCartItemByProductId
+CREATE INDEX idx_cart_items_cart_product ON wz_cart_items (cart_id, product_id);
+
+-- 用户当前购物车查找
+CREATE INDEX idx_carts_user_checked_out ON wz_carts (user_id, is_checked_out);
+
+-- 商品评论列表及游标分页 findReviewsByProductId / findReviewsAfter
+CREATE INDEX idx_reviews_product_created ON wz_reviews (product_id, is_deleted, created_time, review_id);
+
+-- 商品列表及游标分页 findProducts / findProductsAfter
+CREATE INDEX idx_products_active_category_created ON wz_products (is_active, category_id, created_time, product_id);
+CREATE INDEX idx_products_active_created ON wz_products (is_active, created_time, product_id);
+
+-- 浏览记录游标分页 findBrowseHistoryAfter
+CREATE INDEX idx_browse_history_user_time ON wz_browse_history (user_id, browse_time, history_id);
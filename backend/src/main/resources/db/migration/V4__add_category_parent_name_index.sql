@@ -0,0 +1,2 @@
+-- 分类创建时按 (父分类, 名称) 查找是否已存在 CategoryServiceImpl.resolvePath
+CREATE INDEX idx_categories_parent_name ON wz_categories (parent_id, name);
@@ -0,0 +1,32 @@
+-- 商品评分聚合列：评分总和（乘以10，按整数累加）和 1~5 星分布，由 RatingAggregator 增量更新
+ALTER TABLE wz_products
+    ADD COLUMN rating_sum BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN rating_1 INT NOT NULL DEFAULT 0,
+    ADD COLUMN rating_2 INT NOT NULL DEFAULT 0,
+    ADD COLUMN rating_3 INT NOT NULL DEFAULT 0,
+    ADD COLUMN rating_4 INT NOT NULL DEFAULT 0,
+    ADD COLUMN rating_5 INT NOT NULL DEFAULT 0;
+
+-- 按 wz_reviews 中未删除的评论重新计算评分、评论数和星级分布（半星四舍五入到整星）
+UPDATE wz_products p
+LEFT JOIN (
+    SELECT product_id,
+           COUNT(*) AS review_count,
+           SUM(ROUND(rating * 10)) AS rating_sum,
+           SUM(LEAST(GREATEST(ROUND(rating), 1), 5) = 1) AS rating_1,
+           SUM(LEAST(GREATEST(ROUND(rating), 1), 5) = 2) AS rating_2,
+           SUM(LEAST(GREATEST(ROUND(rating), 1), 5) = 3) AS rating_3,
+           SUM(LEAST(GREATEST(ROUND(rating), 1), 5) = 4) AS rating_4,
+           SUM(LEAST(GREATEST(ROUND(rating), 1), 5) = 5) AS rating_5
+    FROM wz_reviews
+    WHERE is_deleted = 0
+    GROUP BY product_id
+) r ON r.product_id = p.product_id
+SET p.review_count = IFNULL(r.review_count, 0),
+    p.rating_sum = IFNULL(r.rating_sum, 0),
+    p.rating_1 = IFNULL(r.rating_1, 0),
+    p.rating_2 = IFNULL(r.rating_2, 0),
+    p.rating_3 = IFNULL(r.rating_3, 0),
+    p.rating_4 = IFNULL(r.rating_4, 0),
+    p.rating_5 = IFNULL(r.rating_5, 0),
+    p.rating = IF(IFNULL(r.review_count, 0) = 0, 0, ROUND(r.rating_sum / 10 / r.review_count, 2));
@@ -0,0 +1,7 @@
+-- 已落库的库存扣减批次：批次ID与库存扣减在同一事务中写入，重复执行同一批次时跳过 StockReservationServiceImpl.flush
+CREATE TABLE IF NOT EXISTS wz_stock_flush_log (
+    batch_id VARCHAR(64) PRIMARY KEY,
+    product_count INT NOT NULL DEFAULT 0,
+    created_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_stock_flush_log_created (created_time)
+);
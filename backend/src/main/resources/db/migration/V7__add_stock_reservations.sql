@@ -0,0 +1,6 @@
+-- 直接扣减数据库库存的订单：与扣减在同一事务中写入，归还库存时在同一事务中删除，删除成功才归还
+-- 没有记录的订单不会再按数据库归还，事务回滚后重试也不会重复归还 StockReservationServiceImpl
+CREATE TABLE IF NOT EXISTS wz_stock_reservations (
+    order_id VARCHAR(64) PRIMARY KEY,
+    created_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,23 @@
+-- 加入购物车：商品已在购物车中时累加数量，否则写入新的商品快照
+-- KEYS[1]: 购物车 cart:<userId>
+-- KEYS[2]: 待落库的用户集合 cart:dirty
+-- ARGV[1]: userId  ARGV[2]: productId  ARGV[3]: 增加的数量
+-- ARGV[4]: 新商品快照JSON  ARGV[5]: 过期秒数
+-- 返回: 购物车未加载时为 nil，否则为写入后的商品快照(附带 cartId)
+local cartId = redis.call('HGET', KEYS[1], '#cart')
+if not cartId then
+    return false
+end
+local current = redis.call('HGET', KEYS[1], ARGV[2])
+local item
+if current then
+    item = cjson.decode(current)
+    item.quantity = item.quantity + tonumber(ARGV[3])
+else
+    item = cjson.decode(ARGV[4])
+end
+redis.call('HSET', KEYS[1], ARGV[2], cjson.encode(item))
+redis.call('EXPIRE', KEYS[1], ARGV[5])
+redis.call('SADD', KEYS[2], ARGV[1])
+item.cartId = cartId
+return cjson.encode(item)
@@ -0,0 +1,14 @@
+-- 清空购物车，只保留 cartId
+-- KEYS[1]: 购物车 cart:<userId>
+-- KEYS[2]: 待落库的用户集合 cart:dirty
+-- ARGV[1]: userId  ARGV[2]: 过期秒数
+-- 返回: 购物车未加载时为 nil，否则为 1
+local cartId = redis.call('HGET', KEYS[1], '#cart')
+if not cartId then
+    return false
+end
+redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], '#cart', cartId)
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+redis.call('SADD', KEYS[2], ARGV[1])
+return 1
@@ -0,0 +1,11 @@
+-- 取出待落库的用户; 上次落库未完成时继续返回上次的用户
+-- KEYS[1]: 待落库的用户集合 cart:dirty
+-- KEYS[2]: 正在落库的用户集合 cart:dirty:flushing
+-- 返回: {userId, ...}
+if redis.call('EXISTS', KEYS[2]) == 0 then
+    if redis.call('EXISTS', KEYS[1]) == 0 then
+        return {}
+    end
+    redis.call('RENAME', KEYS[1], KEYS[2])
+end
+return redis.call('SMEMBERS', KEYS[2])
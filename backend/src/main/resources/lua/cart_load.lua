@@ -0,0 +1,15 @@
+-- 从数据库重建购物车，其他请求已加载时不覆盖
+-- KEYS[1]: 购物车 cart:<userId> (hash: productId -> 商品快照JSON, #cart -> cartId)
+-- ARGV[1]: 过期秒数
+-- ARGV[2]: cartId
+-- ARGV[3..n]: productId, 商品快照JSON 交替排列
+-- 返回: 1 已写入; 0 已存在
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('HSET', KEYS[1], '#cart', ARGV[2])
+for i = 3, #ARGV, 2 do
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,23 @@
+-- 累加购物车商品的已支付数量; 购物车未加载时不处理，下次加载时从数据库读取
+-- KEYS[1]: 购物车 cart:<userId>
+-- KEYS[2]: 待落库的用户集合 cart:dirty
+-- ARGV[1]: userId
+-- ARGV[2..n]: productId, 已支付数量增量 交替排列
+-- 返回: 更新的商品数
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+local updated = 0
+for i = 2, #ARGV, 2 do
+    local current = redis.call('HGET', KEYS[1], ARGV[i])
+    if current then
+        local item = cjson.decode(current)
+        item.paidQuantity = (item.paidQuantity or 0) + tonumber(ARGV[i + 1])
+        redis.call('HSET', KEYS[1], ARGV[i], cjson.encode(item))
+        updated = updated + 1
+    end
+end
+if updated > 0 then
+    redis.call('SADD', KEYS[2], ARGV[1])
+end
+return updated
@@ -0,0 +1,24 @@
+-- 按 cartItemId 删除购物车商品
+-- KEYS[1]: 购物车 cart:<userId>
+-- KEYS[2]: 待落库的用户集合 cart:dirty
+-- ARGV[1]: userId  ARGV[2]: cartItemId  ARGV[3]: 过期秒数
+-- 返回: 购物车未加载时为 nil; 未找到时为空串; 否则为被删除的商品快照(附带 cartId, productId)
+local cartId = redis.call('HGET', KEYS[1], '#cart')
+if not cartId then
+    return false
+end
+local entries = redis.call('HGETALL', KEYS[1])
+for i = 1, #entries, 2 do
+    if entries[i] ~= '#cart' then
+        local item = cjson.decode(entries[i + 1])
+        if item.cartItemId == ARGV[2] then
+            redis.call('HDEL', KEYS[1], entries[i])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('SADD', KEYS[2], ARGV[1])
+            item.cartId = cartId
+            item.productId = entries[i]
+            return cjson.encode(item)
+        end
+    end
+end
+return ''
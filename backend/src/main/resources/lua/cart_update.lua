@@ -0,0 +1,24 @@
+-- 修改购物车商品数量
+-- KEYS[1]: 购物车 cart:<userId>
+-- KEYS[2]: 待落库的用户集合 cart:dirty
+-- ARGV[1]: userId  ARGV[2]: productId  ARGV[3]: cartItemId
+-- ARGV[4]: 新数量  ARGV[5]: 过期秒数
+-- 返回: 购物车未加载时为 nil; 商品已不在购物车中时为空串; 否则为修改后的商品快照(附带 cartId)
+local cartId = redis.call('HGET', KEYS[1], '#cart')
+if not cartId then
+    return false
+end
+local current = redis.call('HGET', KEYS[1], ARGV[2])
+if not current then
+    return ''
+end
+local item = cjson.decode(current)
+if item.cartItemId ~= ARGV[3] then
+    return ''
+end
+item.quantity = tonumber(ARGV[4])
+redis.call('HSET', KEYS[1], ARGV[2], cjson.encode(item))
+redis.call('EXPIRE', KEYS[1], ARGV[5])
+redis.call('SADD', KEYS[2], ARGV[1])
+item.cartId = cartId
+return cjson.encode(item)
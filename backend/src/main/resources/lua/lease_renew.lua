@@ -0,0 +1,6 @@
+-- 续期自己持有的租约
+-- KEYS[1]: 租约  ARGV[1]: 持有者标识  ARGV[2]: 租约时长(毫秒)
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
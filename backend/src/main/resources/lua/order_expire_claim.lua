@@ -0,0 +1,17 @@
+-- 领取到期的订单，领取后在租约期内由当前节点处理，租约过期未完成的订单可被重新领取
+-- KEYS[1]: 延迟队列 order:expire:queue (zset: orderId -> 过期时间戳)
+-- KEYS[2]: 处理中 order:expire:processing (zset: orderId -> 租约到期时间戳)
+-- ARGV[1]: 当前时间戳  ARGV[2]: 租约到期时间戳  ARGV[3]: 最多领取数量
+local ids = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])
+local remain = tonumber(ARGV[3]) - #ids
+if remain > 0 then
+    local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, remain)
+    for _, id in ipairs(due) do
+        redis.call('ZREM', KEYS[1], id)
+        table.insert(ids, id)
+    end
+end
+for _, id in ipairs(ids) do
+    redis.call('ZADD', KEYS[2], ARGV[2], id)
+end
+return ids
@@ -0,0 +1,9 @@
+-- 订单状态转换: 只有当前为待支付时才改为已支付（同时去掉过期时间）
+-- KEYS[1]: 订单状态 order:<orderId>
+-- ARGV[1]: 期望的当前状态 PENDING_PAY  ARGV[2]: 新状态 PAID
+-- 返回: 转换前的状态，key 不存在时为 nil
+local status = redis.call('GET', KEYS[1])
+if status == ARGV[1] then
+    redis.call('SET', KEYS[1], ARGV[2])
+end
+return status
@@ -0,0 +1,11 @@
+-- 取出待处理的支付回调; 上次处理未完成时继续返回上次的回调
+-- KEYS[1]: 待处理队列 payment:queue
+-- KEYS[2]: 正在处理的队列 payment:queue:processing
+-- 返回: {回调内容, ...}
+if redis.call('EXISTS', KEYS[2]) == 0 then
+    if redis.call('EXISTS', KEYS[1]) == 0 then
+        return {}
+    end
+    redis.call('RENAME', KEYS[1], KEYS[2])
+end
+return redis.call('LRANGE', KEYS[2], 0, -1)
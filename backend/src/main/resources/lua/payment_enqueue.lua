@@ -0,0 +1,10 @@
+-- 支付回调去重并入队：同一 paymentId 在去重有效期内只入队一次
+-- KEYS[1]: 去重标记 payment:dedupe:<paymentId>
+-- KEYS[2]: 待处理队列 payment:queue (list)
+-- ARGV[1]: 去重有效期(秒)  ARGV[2]: 回调内容
+-- 返回: 1 已入队; 0 重复回调
+if not redis.call('SET', KEYS[1], '1', 'NX', 'EX', ARGV[1]) then
+    return 0
+end
+redis.call('RPUSH', KEYS[2], ARGV[2])
+return 1
@@ -0,0 +1,34 @@
+-- 一批支付回调处理结束：处理失败的回调放回队列，重试次数用尽的移入死信队列，然后删除正在处理的队列
+-- 锁已不属于当前节点时不做任何修改，由新的持有者重新处理整批回调
+-- KEYS[1]: 正在处理的队列 payment:queue:processing
+-- KEYS[2]: 待处理队列 payment:queue
+-- KEYS[3]: 死信队列 payment:queue:failed
+-- KEYS[4]: 失败次数 payment:attempts (hash: 回调内容 -> 次数)
+-- KEYS[5]: 处理锁 payment:apply:lock
+-- ARGV[1]: 持有者标识  ARGV[2]: 最大尝试次数  ARGV[3..]: 处理失败的回调内容
+-- 返回: 放回队列的条数; -1 锁已失效
+if redis.call('GET', KEYS[5]) ~= ARGV[1] then
+    return -1
+end
+local failed = {}
+for i = 3, #ARGV do
+    failed[ARGV[i]] = true
+end
+local requeued = 0
+for _, callback in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+    if failed[callback] then
+        failed[callback] = nil
+        local attempts = redis.call('HINCRBY', KEYS[4], callback, 1)
+        if attempts >= tonumber(ARGV[2]) then
+            redis.call('RPUSH', KEYS[3], callback)
+            redis.call('HDEL', KEYS[4], callback)
+        else
+            redis.call('RPUSH', KEYS[2], callback)
+            requeued = requeued + 1
+        end
+    else
+        redis.call('HDEL', KEYS[4], callback)
+    end
+end
+redis.call('DEL', KEYS[1])
+return requeued
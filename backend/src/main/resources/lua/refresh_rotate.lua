@@ -0,0 +1,12 @@
+-- 刷新令牌轮换：只有会话当前的刷新令牌才能换取新令牌
+-- KEYS[1]: 会话  ARGV[1]: 旧令牌jti  ARGV[2]: 新令牌jti  ARGV[3]: 有效期(毫秒)
+local current = redis.call('GET', KEYS[1])
+if current == ARGV[1] then
+    redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+    return 1
+end
+if current then
+    -- 已轮换过的旧令牌被再次使用，视为泄露，作废整个会话
+    redis.call('DEL', KEYS[1])
+end
+return 0
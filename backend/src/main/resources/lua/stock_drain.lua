@@ -0,0 +1,13 @@
+-- 取出待落库的库存增量; 上次落库未完成时继续返回上次的增量
+-- KEYS[1]: 待落库增量 stock:pending
+-- KEYS[2]: 正在落库的增量 stock:pending:flushing (hash: productId -> 数量, #batch -> 批次ID)
+-- ARGV[1]: 新批次ID，正在落库的增量没有批次ID时写入
+-- 返回: {productId, quantity, ..., '#batch', 批次ID}
+if redis.call('EXISTS', KEYS[2]) == 0 then
+    if redis.call('EXISTS', KEYS[1]) == 0 then
+        return {}
+    end
+    redis.call('RENAME', KEYS[1], KEYS[2])
+end
+redis.call('HSETNX', KEYS[2], '#batch', ARGV[1])
+return redis.call('HGETALL', KEYS[2])
@@ -0,0 +1,8 @@
+-- 批次落库完成后删除正在落库的增量; 批次ID不一致说明已是其他节点取出的新批次，不删除
+-- KEYS[1]: 正在落库的增量 stock:pending:flushing
+-- ARGV[1]: 已落库的批次ID
+-- 返回: 1 已删除; 0 批次不一致
+if redis.call('HGET', KEYS[1], '#batch') == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
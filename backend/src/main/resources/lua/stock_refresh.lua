@@ -0,0 +1,7 @@
+-- 商品库存被直接修改后重置Redis库存并丢弃该商品尚未落库的增量
+-- KEYS[1]: 待落库增量 stock:pending
+-- KEYS[2]: 商品库存 stock:<productId>
+-- ARGV[1]: productId  ARGV[2]: 新库存
+redis.call('HDEL', KEYS[1], ARGV[1])
+redis.call('SET', KEYS[2], ARGV[2])
+return 1
@@ -0,0 +1,21 @@
+-- 原子释放一个订单预占的库存
+-- KEYS[1]: 订单预占记录 stock:reserved:<orderId>
+-- KEYS[2]: 待落库增量 stock:pending
+-- KEYS[3..n]: 商品库存 stock:<productId>
+-- ARGV[1..n]: 与 KEYS[3..n] 一一对应的 productId
+-- 返回: 1 已释放; 0 没有预占记录(未经Redis预占或已释放过)
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+for i = 1, #ARGV do
+    local quantity = redis.call('HGET', KEYS[1], ARGV[i])
+    if quantity then
+        if redis.call('EXISTS', KEYS[i + 2]) == 1 then
+            redis.call('INCRBY', KEYS[i + 2], quantity)
+        end
+        redis.call('HINCRBY', KEYS[2], ARGV[i], -tonumber(quantity))
+    end
+end
+redis.call('DEL', KEYS[1])
+return 1
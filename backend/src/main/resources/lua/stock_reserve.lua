@@ -0,0 +1,32 @@
+-- 原子预占一个订单的全部商品库存（全部成功或全部失败）
+-- KEYS[1]: 订单预占记录 stock:reserved:<orderId> (hash: productId -> quantity)
+-- KEYS[2]: 待落库增量 stock:pending (hash: productId -> 待扣减数量)
+-- KEYS[3..n]: 商品库存 stock:<productId>
+-- ARGV[1]: 预占记录过期秒数
+-- ARGV[2..n]: 与 KEYS[3..n] 一一对应的 productId, quantity 交替排列
+-- 返回: 0 成功(或已预占过); -i 第i个商品库存未加载; i 第i个商品库存不足
+local n = #KEYS - 2
+
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+
+for i = 1, n do
+    local stock = redis.call('GET', KEYS[i + 2])
+    if not stock then
+        return -i
+    end
+    if tonumber(stock) < tonumber(ARGV[i * 2 + 1]) then
+        return i
+    end
+end
+
+for i = 1, n do
+    local productId = ARGV[i * 2]
+    local quantity = tonumber(ARGV[i * 2 + 1])
+    redis.call('DECRBY', KEYS[i + 2], quantity)
+    redis.call('HINCRBY', KEYS[2], productId, quantity)
+    redis.call('HSET', KEYS[1], productId, quantity)
+end
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 0
@@ -0,0 +1,26 @@
+-- 根据数据库库存加载/校正Redis库存: Redis库存 = 数据库库存 - 尚未落库的增量
+-- KEYS[1]: 待落库增量 stock:pending
+-- KEYS[2]: 正在落库的增量 stock:pending:flushing
+-- KEYS[3..n]: 商品库存 stock:<productId>
+-- ARGV[1]: 1 覆盖不一致的库存; 0 只加载不存在的库存
+-- ARGV[2..n]: 与 KEYS[3..n] 一一对应的 productId, 数据库库存 交替排列
+-- 返回: 被校正的商品 {productId, 校正前库存, 校正后库存, ...}
+local overwrite = ARGV[1] == '1'
+local drifted = {}
+
+for i = 1, #KEYS - 2 do
+    local productId = ARGV[i * 2]
+    local pending = tonumber(redis.call('HGET', KEYS[1], productId) or '0')
+    local flushing = tonumber(redis.call('HGET', KEYS[2], productId) or '0')
+    local expected = tonumber(ARGV[i * 2 + 1]) - pending - flushing
+    local current = redis.call('GET', KEYS[i + 2])
+    if not current then
+        redis.call('SET', KEYS[i + 2], expected)
+    elseif overwrite and tonumber(current) ~= expected then
+        redis.call('SET', KEYS[i + 2], expected)
+        table.insert(drifted, productId)
+        table.insert(drifted, current)
+        table.insert(drifted, tostring(expected))
+    end
+end
+return drifted
@@ -0,0 +1,122 @@
+package com.wyc21.security;
+
+import com.wyc21.service.TokenService;
+import com.wyc21.support.Throughput;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 每个请求的访问令牌校验开销，三种方式对比：
+ * 原来的过滤器（每次重建密钥和解析器，校验和取 uid 各解析一次）、共享解析器只解析一次、TokenVerifier 缓存命中。
+ * 请求在一组活跃令牌中随机挑选，模拟多个用户并发访问；注销检查走本地布隆过滤器，不访问 Redis。
+ * 运行方式见 {@link Throughput}
+ */
+class TokenVerifierBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-0123456";
+    private static final int ACTIVE_TOKENS = 1000;
+
+    private TokenService tokenService;
+    private TokenVerifier tokenVerifier;
+    private String[] tokens;
+
+    @BeforeEach
+    void setUp() {
+        @SuppressWarnings("unchecked")
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.opsForZSet()).thenReturn(zSet);
+
+        tokenService = new TokenService();
+        ReflectionTestUtils.setField(tokenService, "secret", SECRET);
+        ReflectionTestUtils.setField(tokenService, "revokedExpectedSize", 1000);
+        ReflectionTestUtils.setField(tokenService, "revokedFpp", 0.01);
+        ReflectionTestUtils.setField(tokenService, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(tokenService, "listenerContainer", mock(RedisMessageListenerContainer.class));
+        tokenService.init();
+
+        tokenVerifier = new TokenVerifier();
+        ReflectionTestUtils.setField(tokenVerifier, "tokenService", tokenService);
+        ReflectionTestUtils.setField(tokenVerifier, "maxSize", 10_000L);
+        ReflectionTestUtils.setField(tokenVerifier, "ttlSeconds", 60L);
+        tokenVerifier.init();
+
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        long now = System.currentTimeMillis();
+        tokens = new String[ACTIVE_TOKENS];
+        for (int i = 0; i < ACTIVE_TOKENS; i++) {
+            tokens[i] = Jwts.builder()
+                    .id(UUID.randomUUID().toString())
+                    .claim("uid", "user-" + i)
+                    .claim("name", "user" + i)
+                    .claim("power", "user")
+                    .claim("sid", UUID.randomUUID().toString())
+                    .issuedAt(new Date(now))
+                    .expiration(new Date(now + TimeUnit.MINUTES.toMillis(15)))
+                    .signWith(key)
+                    .compact();
+        }
+    }
+
+    @Test
+    void parseTwicePerRequest() throws Exception {
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> {
+                String token = randomToken();
+                parseWithNewKey(token);
+                return parseWithNewKey(token).get("uid", String.class);
+            });
+            Throughput.report("jwt filter (new key, parse twice)", threads, ops);
+        }
+    }
+
+    @Test
+    void sharedParserOnce() throws Exception {
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> uid(tokenService.validateToken(randomToken())));
+            Throughput.report("jwt filter (shared parser, no cache)", threads, ops);
+        }
+    }
+
+    @Test
+    void cachedVerifier() throws Exception {
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> uid(tokenVerifier.verify(randomToken())));
+            Throughput.report("jwt filter (TokenVerifier cache)", threads, ops);
+        }
+    }
+
+    private String randomToken() {
+        return tokens[ThreadLocalRandom.current().nextInt(ACTIVE_TOKENS)];
+    }
+
+    // 原来 JwtTokenUtil 的做法：每次调用都重新生成密钥和解析器
+    private static Claims parseWithNewKey(String token) {
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+    }
+
+    private static String uid(Claims claims) {
+        if (claims == null) {
+            throw new IllegalStateException("令牌校验失败");
+        }
+        return claims.get("uid", String.class);
+    }
+}
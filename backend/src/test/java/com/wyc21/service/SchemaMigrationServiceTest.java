@@ -0,0 +1,135 @@
+package com.wyc21.service;
+
+import com.wyc21.support.MySqlTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 迁移脚本在真实 MySQL 上执行：每个测试新建一个临时库，结束时删除
+ */
+class SchemaMigrationServiceTest {
+
+    private static final int LATEST_VERSION = 7;
+
+    private JdbcTemplate jdbcTemplate;
+    private String database;
+
+    @BeforeEach
+    void setUp() {
+        database = MySqlTestSupport.createDatabase("wz_migration_test_");
+        jdbcTemplate = new JdbcTemplate(MySqlTestSupport.dataSource(database));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (database != null) {
+            MySqlTestSupport.dropDatabase(database);
+        }
+    }
+
+    @Test
+    void emptyDatabaseRunsEveryMigrationOnce() {
+        migrationService(2).migrate();
+
+        List<Map<String, Object>> history = history();
+        assertThat(history).extracting(row -> ((Number) row.get("version")).intValue())
+                .containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(history).allMatch(row -> ((Number) row.get("baseline")).intValue() == 0);
+
+        // 再次启动不会重复执行任何脚本
+        migrationService(2).migrate();
+        assertThat(history()).isEqualTo(history);
+    }
+
+    @Test
+    void existingDatabaseIsBaselinedAndOnlyNewerScriptsRun() {
+        // 模拟迁移机制引入前已经按 V1 建好表的库
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(
+                    new ClassPathResource("db/migration/V1__create_tables.sql"), StandardCharsets.UTF_8));
+            return null;
+        });
+
+        migrationService(2).migrate();
+
+        List<Map<String, Object>> history = history();
+        assertThat(history).hasSize(LATEST_VERSION);
+        assertThat(history).filteredOn(row -> ((Number) row.get("baseline")).intValue() == 1)
+                .extracting(row -> ((Number) row.get("version")).intValue())
+                .containsExactly(1, 2);
+        // 基线以内的初始数据脚本没有执行
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM wz_products", Integer.class)).isZero();
+        assertThat(indexNames("wz_orders")).contains("idx_orders_status_expire", "idx_orders_user_created");
+    }
+
+    @Test
+    void modifiedAppliedScriptIsRejected() {
+        migrationService(2).migrate();
+        jdbcTemplate.update("UPDATE wz_schema_version SET checksum = checksum + 1 WHERE version = 3");
+
+        assertThatThrownBy(() -> migrationService(2).migrate())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("V3__add_query_indexes.sql");
+    }
+
+    @Test
+    void hotQueriesCanUseTheQueryIndexes() {
+        migrationService(2).migrate();
+
+        // 表里数据很少时优化器可能直接全表扫描，这里只断言索引出现在候选索引中
+        assertThat(possibleKeys("SELECT order_id FROM wz_orders WHERE status = 'PENDING_PAY' "
+                + "AND expire_time < NOW() AND is_delete = 0 LIMIT 100"))
+                .contains("idx_orders_status_expire");
+        assertThat(possibleKeys("SELECT * FROM wz_orders WHERE user_id = 'u1' AND is_delete = 0 "
+                + "AND (created_time < NOW() OR (created_time = NOW() AND order_id < 'o1')) "
+                + "ORDER BY created_time DESC, order_id DESC LIMIT 20"))
+                .contains("idx_orders_user_created");
+        assertThat(possibleKeys("SELECT * FROM wz_reviews WHERE product_id = 'p1' AND is_deleted = 0 "
+                + "ORDER BY created_time DESC, review_id DESC LIMIT 20"))
+                .contains("idx_reviews_product_created");
+        assertThat(possibleKeys("SELECT * FROM wz_products WHERE is_active = 1 "
+                + "ORDER BY created_time DESC, product_id DESC LIMIT 20"))
+                .contains("idx_products_active_created");
+        assertThat(possibleKeys("SELECT * FROM wz_browse_history WHERE user_id = 'u1' "
+                + "ORDER BY browse_time DESC, history_id DESC LIMIT 20"))
+                .contains("idx_browse_history_user_time");
+    }
+
+    private SchemaMigrationService migrationService(int baselineVersion) {
+        SchemaMigrationService service = new SchemaMigrationService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "baselineVersion", baselineVersion);
+        return service;
+    }
+
+    private List<Map<String, Object>> history() {
+        return jdbcTemplate.queryForList(
+                "SELECT version, checksum, baseline, installed_time FROM wz_schema_version ORDER BY version");
+    }
+
+    private List<String> indexNames(String table) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT index_name FROM information_schema.statistics "
+                + "WHERE table_schema = DATABASE() AND table_name = ?", String.class, table);
+    }
+
+    private String possibleKeys(String sql) {
+        Map<String, Object> plan = jdbcTemplate.queryForList("EXPLAIN " + sql).get(0);
+        Object keys = plan.get("possible_keys");
+        return keys != null ? keys.toString() : "";
+    }
+}
@@ -0,0 +1,143 @@
+package com.wyc21.service;
+
+import com.wyc21.entity.User;
+import com.wyc21.mapper.UserMapper;
+import com.wyc21.support.RedisTestSupport;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 刷新令牌轮换：旧令牌被重复使用时作废整个会话；会话状态保存在 Redis 中
+ */
+class TokenServiceTest {
+
+    private static final String REVOKED_KEY = "token:revoked";
+
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate redis;
+    private TokenService tokenService;
+
+    private final String userId = "test-" + UUID.randomUUID();
+    private final List<String> revokedJtis = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        factory = RedisTestSupport.connect();
+        redis = RedisTestSupport.template(factory);
+
+        User user = new User();
+        user.setUid(userId);
+        user.setUsername("tester");
+        user.setPower("user");
+        UserMapper userMapper = mock(UserMapper.class);
+        when(userMapper.findByUid(userId)).thenReturn(user);
+
+        tokenService = new TokenService();
+        ReflectionTestUtils.setField(tokenService, "secret", "test-secret-test-secret-test-secret-0123");
+        ReflectionTestUtils.setField(tokenService, "accessTokenExpiration", 900L);
+        ReflectionTestUtils.setField(tokenService, "refreshTokenExpiration", 3600L);
+        ReflectionTestUtils.setField(tokenService, "revokedExpectedSize", 1000);
+        ReflectionTestUtils.setField(tokenService, "revokedFpp", 0.01);
+        ReflectionTestUtils.setField(tokenService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(tokenService, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(tokenService, "listenerContainer", mock(RedisMessageListenerContainer.class));
+        tokenService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (redis == null) {
+            return;
+        }
+        Set<String> sessions = redis.keys("refresh_token:" + userId + ":*");
+        if (sessions != null && !sessions.isEmpty()) {
+            redis.delete(sessions);
+        }
+        if (!revokedJtis.isEmpty()) {
+            redis.opsForZSet().remove(REVOKED_KEY, revokedJtis.toArray());
+        }
+        factory.destroy();
+    }
+
+    @Test
+    void refreshRotatesTheRefreshToken() {
+        Map<String, String> issued = tokenService.issueTokens(userId, "tester", "user");
+
+        Map<String, String> refreshed = tokenService.refresh(issued.get("refreshToken"));
+
+        assertThat(refreshed).isNotNull();
+        assertThat(refreshed.get("refreshToken")).isNotEqualTo(issued.get("refreshToken"));
+        Claims access = tokenService.validateToken(refreshed.get("accessToken"));
+        assertThat(access.get("power", String.class)).isEqualTo("user");
+        // 新令牌可以继续轮换
+        assertThat(tokenService.refresh(refreshed.get("refreshToken"))).isNotNull();
+    }
+
+    @Test
+    void reusedRefreshTokenEndsTheSession() {
+        Map<String, String> issued = tokenService.issueTokens(userId, "tester", "user");
+        Map<String, String> refreshed = tokenService.refresh(issued.get("refreshToken"));
+
+        // 已轮换过的旧令牌再次出现，视为泄露
+        assertThat(tokenService.refresh(issued.get("refreshToken"))).isNull();
+        // 会话已作废，合法持有者手中的新令牌也不能再用
+        assertThat(tokenService.refresh(refreshed.get("refreshToken"))).isNull();
+    }
+
+    @Test
+    void reuseOnlyEndsTheAffectedSession() {
+        Map<String, String> first = tokenService.issueTokens(userId, "tester", "user");
+        Map<String, String> second = tokenService.issueTokens(userId, "tester", "user");
+        tokenService.refresh(first.get("refreshToken"));
+
+        assertThat(tokenService.refresh(first.get("refreshToken"))).isNull();
+
+        assertThat(tokenService.refresh(second.get("refreshToken"))).isNotNull();
+    }
+
+    @Test
+    void logoutInvalidatesTheRefreshToken() {
+        Map<String, String> issued = tokenService.issueTokens(userId, "tester", "user");
+
+        tokenService.logout(issued.get("refreshToken"));
+
+        assertThat(tokenService.refresh(issued.get("refreshToken"))).isNull();
+    }
+
+    @Test
+    void revokedAccessTokenIsRejectedAndSessionEnds() {
+        Map<String, String> issued = tokenService.issueTokens(userId, "tester", "user");
+        Claims access = tokenService.validateToken(issued.get("accessToken"));
+        revokedJtis.add(access.getId());
+
+        assertThat(tokenService.isRevoked(access)).isFalse();
+        tokenService.revoke(access);
+
+        assertThat(tokenService.isRevoked(access)).isTrue();
+        assertThat(tokenService.refresh(issued.get("refreshToken"))).isNull();
+    }
+
+    @Test
+    void accessTokenCannotBeUsedToRefresh() {
+        Map<String, String> issued = tokenService.issueTokens(userId, "tester", "user");
+
+        assertThat(tokenService.refresh(issued.get("accessToken"))).isNull();
+        assertThat(tokenService.refresh(issued.get("refreshToken"))).isNotNull();
+    }
+}
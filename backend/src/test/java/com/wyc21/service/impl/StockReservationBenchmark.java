@@ -0,0 +1,103 @@
+package com.wyc21.service.impl;
+
+import com.wyc21.support.MySqlTestSupport;
+import com.wyc21.support.RedisTestSupport;
+import com.wyc21.support.Throughput;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个热点商品的下单预占吞吐量：redis 模式（一次 Lua 脚本）与 sql 模式（行锁扣减 + 预占记录，一个事务）对比。
+ * 每次预占一件，库存足够大，不会因库存耗尽提前结束。运行方式见 {@link Throughput}
+ */
+class StockReservationBenchmark {
+
+    private static final String PRODUCT_ID = "bench-hot-sku";
+    private static final String DECREASE_STOCK_SQL =
+            "UPDATE wz_products SET stock = stock - ?, modified_time = NOW() WHERE product_id = ? AND stock >= ?";
+    private static final String INSERT_RESERVATION_SQL = "INSERT INTO wz_stock_reservations (order_id) VALUES (?)";
+
+    private final AtomicLong orderSequence = new AtomicLong();
+
+    @Test
+    void redisMode() throws Exception {
+        DefaultRedisScript<Long> reserveScript = RedisTestSupport.script("lua/stock_reserve.lua", Long.class);
+        LettuceConnectionFactory factory = RedisTestSupport.connect();
+        StringRedisTemplate redis = RedisTestSupport.template(factory);
+        String prefix = "bench-" + UUID.randomUUID() + "-";
+        String stockKey = "stock:" + prefix + PRODUCT_ID;
+        redis.opsForValue().set(stockKey, String.valueOf(Integer.MAX_VALUE));
+        try {
+            for (int threads : Throughput.threadCounts()) {
+                double ops = Throughput.measure(threads, () -> {
+                    // 预占记录60秒后过期，不需要逐个清理
+                    List<String> keys = Arrays.asList("stock:reserved:" + prefix + orderSequence.incrementAndGet(),
+                            "stock:pending", stockKey);
+                    Long result = redis.execute(reserveScript, keys, "60", prefix + PRODUCT_ID, "1");
+                    if (result == null || result != 0) {
+                        throw new IllegalStateException("预占失败: " + result);
+                    }
+                    return result;
+                });
+                Throughput.report("stock reserve (redis lua)", threads, ops);
+            }
+        } finally {
+            redis.delete(stockKey);
+            redis.opsForHash().delete("stock:pending", prefix + PRODUCT_ID);
+            factory.destroy();
+        }
+    }
+
+    @Test
+    void sqlMode() throws Exception {
+        String database = MySqlTestSupport.createDatabase("wz_stock_bench_");
+        int maxThreads = Collections.max(Throughput.threadCounts());
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(MySqlTestSupport.url(database));
+        dataSource.setUsername(MySqlTestSupport.user());
+        dataSource.setPassword(MySqlTestSupport.password());
+        dataSource.setMaximumPoolSize(maxThreads);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE TABLE wz_products (product_id VARCHAR(32) PRIMARY KEY, "
+                    + "stock INT NOT NULL, modified_time DATETIME)");
+            new ResourceDatabasePopulator(
+                    new ClassPathResource("db/migration/V7__add_stock_reservations.sql")).execute(dataSource);
+            jdbcTemplate.update("INSERT INTO wz_products (product_id, stock) VALUES (?, ?)",
+                    PRODUCT_ID, Integer.MAX_VALUE);
+            TransactionTemplate transactionTemplate =
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+            for (int threads : Throughput.threadCounts()) {
+                double ops = Throughput.measure(threads, () -> {
+                    String orderId = String.valueOf(orderSequence.incrementAndGet());
+                    transactionTemplate.executeWithoutResult(status -> {
+                        if (jdbcTemplate.update(DECREASE_STOCK_SQL, 1, PRODUCT_ID, 1) != 1) {
+                            throw new IllegalStateException("库存不足");
+                        }
+                        jdbcTemplate.update(INSERT_RESERVATION_SQL, orderId);
+                    });
+                    return null;
+                });
+                Throughput.report("stock reserve (sql row lock)", threads, ops);
+            }
+        } finally {
+            dataSource.close();
+            MySqlTestSupport.dropDatabase(database);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.wyc21.service.impl;
+
+import com.wyc21.support.RedisTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * stock_reserve.lua / stock_release.lua 的语义，键和参数的排列与 StockReservationServiceImpl 一致
+ */
+class StockReservationScriptTest {
+
+    private static final String STOCK_KEY = "stock:";
+    private static final String RESERVED_KEY = "stock:reserved:";
+    private static final String PENDING_KEY = "stock:pending";
+
+    private final DefaultRedisScript<Long> reserveScript =
+            RedisTestSupport.script("lua/stock_reserve.lua", Long.class);
+    private final DefaultRedisScript<Long> releaseScript =
+            RedisTestSupport.script("lua/stock_release.lua", Long.class);
+
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate redis;
+
+    // 每个测试使用不同的商品ID和订单ID前缀，结束时清理
+    private final String prefix = "test-" + UUID.randomUUID() + "-";
+    private final List<String> productIds = new ArrayList<>();
+    private final List<String> orderIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        factory = RedisTestSupport.connect();
+        redis = RedisTestSupport.template(factory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (redis == null) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        productIds.forEach(productId -> keys.add(STOCK_KEY + productId));
+        orderIds.forEach(orderId -> keys.add(RESERVED_KEY + orderId));
+        redis.delete(keys);
+        if (!productIds.isEmpty()) {
+            redis.opsForHash().delete(PENDING_KEY, productIds.toArray());
+        }
+        factory.destroy();
+    }
+
+    @Test
+    void reserveDecrementsStockAndRecordsPending() {
+        String p1 = product(10);
+        String p2 = product(5);
+
+        assertThat(reserve(order(), quantities(p1, 3, p2, 5))).isZero();
+
+        assertThat(stock(p1)).isEqualTo(7);
+        assertThat(stock(p2)).isZero();
+        assertThat(pending(p1)).isEqualTo(3);
+        assertThat(pending(p2)).isEqualTo(5);
+    }
+
+    @Test
+    void reserveIsAllOrNothingWhenOneProductIsShort() {
+        String p1 = product(10);
+        String p2 = product(1);
+        String orderId = order();
+
+        // 返回库存不足的商品序号（从1开始），其他商品也不扣减
+        assertThat(reserve(orderId, quantities(p1, 3, p2, 2))).isEqualTo(2);
+
+        assertThat(stock(p1)).isEqualTo(10);
+        assertThat(stock(p2)).isEqualTo(1);
+        assertThat(pending(p1)).isZero();
+        assertThat(redis.hasKey(RESERVED_KEY + orderId)).isFalse();
+    }
+
+    @Test
+    void reserveReportsStockNotLoaded() {
+        String p1 = product(10);
+        String missing = prefix + "missing";
+        productIds.add(missing);
+
+        assertThat(reserve(order(), quantities(p1, 1, missing, 1))).isEqualTo(-2);
+        assertThat(stock(p1)).isEqualTo(10);
+    }
+
+    @Test
+    void reserveTwiceForSameOrderOnlyDecrementsOnce() {
+        String p1 = product(10);
+        String orderId = order();
+
+        assertThat(reserve(orderId, quantities(p1, 4))).isZero();
+        assertThat(reserve(orderId, quantities(p1, 4))).isZero();
+
+        assertThat(stock(p1)).isEqualTo(6);
+        assertThat(pending(p1)).isEqualTo(4);
+    }
+
+    @Test
+    void releaseRestoresStockExactlyOnce() {
+        String p1 = product(10);
+        String p2 = product(10);
+        String orderId = order();
+        reserve(orderId, quantities(p1, 2, p2, 3));
+
+        assertThat(release(orderId, p1, p2)).isEqualTo(1);
+        // 预占记录已删除，重复释放不会再次归还
+        assertThat(release(orderId, p1, p2)).isZero();
+
+        assertThat(stock(p1)).isEqualTo(10);
+        assertThat(stock(p2)).isEqualTo(10);
+        assertThat(pending(p1)).isZero();
+        assertThat(pending(p2)).isZero();
+    }
+
+    @Test
+    void releaseWithoutReservationChangesNothing() {
+        String p1 = product(10);
+
+        assertThat(release(order(), p1)).isZero();
+        assertThat(stock(p1)).isEqualTo(10);
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        int stock = 20;
+        int orders = 64;
+        String p1 = product(stock);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            ids.add(order());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (String orderId : ids) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return reserve(orderId, quantities(p1, 1));
+                }));
+            }
+            start.countDown();
+            int succeeded = 0;
+            for (Future<Long> result : results) {
+                if (result.get() == 0) {
+                    succeeded++;
+                }
+            }
+            assertThat(succeeded).isEqualTo(stock);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(stock(p1)).isZero();
+        assertThat(pending(p1)).isEqualTo(stock);
+    }
+
+    private long reserve(String orderId, Map<String, Integer> quantities) {
+        List<String> keys = new ArrayList<>();
+        keys.add(RESERVED_KEY + orderId);
+        keys.add(PENDING_KEY);
+        List<String> args = new ArrayList<>();
+        args.add("3600");
+        quantities.forEach((productId, quantity) -> {
+            keys.add(STOCK_KEY + productId);
+            args.add(productId);
+            args.add(String.valueOf(quantity));
+        });
+        return redis.execute(reserveScript, keys, args.toArray());
+    }
+
+    private long release(String orderId, String... products) {
+        List<String> keys = new ArrayList<>();
+        keys.add(RESERVED_KEY + orderId);
+        keys.add(PENDING_KEY);
+        for (String productId : products) {
+            keys.add(STOCK_KEY + productId);
+        }
+        return redis.execute(releaseScript, keys, (Object[]) products);
+    }
+
+    private String product(int stock) {
+        String productId = prefix + "p" + productIds.size();
+        productIds.add(productId);
+        redis.opsForValue().set(STOCK_KEY + productId, String.valueOf(stock));
+        return productId;
+    }
+
+    private String order() {
+        String orderId = prefix + "o" + orderIds.size();
+        orderIds.add(orderId);
+        return orderId;
+    }
+
+    private long stock(String productId) {
+        return Long.parseLong(redis.opsForValue().get(STOCK_KEY + productId));
+    }
+
+    private long pending(String productId) {
+        Object value = redis.opsForHash().get(PENDING_KEY, productId);
+        return value != null ? Long.parseLong(value.toString()) : 0;
+    }
+
+    private static Map<String, Integer> quantities(Object... pairs) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            quantities.put((String) pairs[i], (Integer) pairs[i + 1]);
+        }
+        return quantities;
+    }
+}
@@ -0,0 +1,64 @@
+package com.wyc21.support;
+
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+/**
+ * 测试用 MySQL 连接：默认连接 application.yml 中的本地 MySQL，每次使用新建的临时库，不影响开发数据；
+ * 可用环境变量 TEST_MYSQL_HOST / TEST_MYSQL_PORT / TEST_MYSQL_USER / TEST_MYSQL_PASSWORD 覆盖。
+ * 连接不上时跳过依赖 MySQL 的测试。
+ */
+public final class MySqlTestSupport {
+
+    private MySqlTestSupport() {
+    }
+
+    /**
+     * 新建一个临时库，返回库名；用完后调用 {@link #dropDatabase(String)} 删除
+     */
+    public static String createDatabase(String prefix) {
+        JdbcTemplate server = new JdbcTemplate(dataSource(""));
+        try {
+            server.queryForObject("SELECT 1", Integer.class);
+        } catch (RuntimeException e) {
+            Assumptions.abort("MySQL 不可用，跳过测试: " + e.getMessage());
+        }
+        String database = prefix + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        server.execute("CREATE DATABASE " + database + " DEFAULT CHARACTER SET utf8mb4");
+        return database;
+    }
+
+    public static void dropDatabase(String database) {
+        new JdbcTemplate(dataSource("")).execute("DROP DATABASE IF EXISTS " + database);
+    }
+
+    public static DriverManagerDataSource dataSource(String database) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        dataSource.setUrl(url(database));
+        dataSource.setUsername(user());
+        dataSource.setPassword(password());
+        return dataSource;
+    }
+
+    public static String url(String database) {
+        return "jdbc:mysql://" + env("TEST_MYSQL_HOST", "localhost") + ":" + env("TEST_MYSQL_PORT", "3306")
+                + "/" + database + "?allowPublicKeyRetrieval=true&useSSL=false&connectTimeout=2000";
+    }
+
+    public static String user() {
+        return env("TEST_MYSQL_USER", "root");
+    }
+
+    public static String password() {
+        return env("TEST_MYSQL_PASSWORD", "123456");
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
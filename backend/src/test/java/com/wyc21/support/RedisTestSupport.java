@@ -0,0 +1,59 @@
+package com.wyc21.support;
+
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.time.Duration;
+
+/**
+ * 测试用 Redis 连接：默认连接 application.yml 中的本地 Redis，使用 15 号库，不影响开发数据；
+ * 可用环境变量 TEST_REDIS_HOST / TEST_REDIS_PORT / TEST_REDIS_PASSWORD / TEST_REDIS_DATABASE 覆盖。
+ * 连接不上时跳过依赖 Redis 的测试。
+ */
+public final class RedisTestSupport {
+
+    private RedisTestSupport() {
+    }
+
+    public static LettuceConnectionFactory connect() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                env("TEST_REDIS_HOST", "localhost"), Integer.parseInt(env("TEST_REDIS_PORT", "6379")));
+        config.setPassword(env("TEST_REDIS_PASSWORD", "wz123456"));
+        config.setDatabase(Integer.parseInt(env("TEST_REDIS_DATABASE", "15")));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(config,
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(2)).build());
+        factory.afterPropertiesSet();
+        try (RedisConnection connection = factory.getConnection()) {
+            connection.ping();
+        } catch (RuntimeException e) {
+            factory.destroy();
+            Assumptions.abort("Redis 不可用，跳过测试: " + e.getMessage());
+        }
+        return factory;
+    }
+
+    public static StringRedisTemplate template(LettuceConnectionFactory factory) {
+        StringRedisTemplate template = new StringRedisTemplate(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    public static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
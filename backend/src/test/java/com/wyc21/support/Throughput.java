@@ -0,0 +1,93 @@
+package com.wyc21.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 压测工具：多个线程循环执行同一个操作，预热后统计每秒完成次数。
+ * *Benchmark 类不在 Surefire 默认的测试范围内，需要单独运行，例如
+ * mvn test -Dtest=StockReservationBenchmark -Dbenchmark.threads=1,8,32 -Dbenchmark.seconds=10
+ */
+public final class Throughput {
+
+    private Throughput() {
+    }
+
+    /**
+     * 返回每秒完成的操作数；任一线程抛出异常时整个压测失败
+     */
+    public static double measure(int threads, Callable<?> task) throws Exception {
+        long seconds = Long.getLong("benchmark.seconds", 5);
+        long warmupSeconds = Long.getLong("benchmark.warmup-seconds", Math.max(1, seconds / 2));
+
+        LongAdder completed = new LongAdder();
+        // 0 预热, 1 计数, 2 结束
+        AtomicInteger phase = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<>(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    while (true) {
+                        int current = phase.get();
+                        if (current == 2) {
+                            return null;
+                        }
+                        task.call();
+                        if (current == 1) {
+                            completed.increment();
+                        }
+                    }
+                }));
+            }
+            sleepOrFail(workers, TimeUnit.SECONDS.toMillis(warmupSeconds));
+            phase.set(1);
+            long start = System.nanoTime();
+            sleepOrFail(workers, TimeUnit.SECONDS.toMillis(seconds));
+            phase.set(2);
+            long elapsed = System.nanoTime() - start;
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+            return completed.sum() * 1e9 / elapsed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 压测使用的线程数，默认 1,4,16,64
+     */
+    public static List<Integer> threadCounts() {
+        return Arrays.stream(System.getProperty("benchmark.threads", "1,4,16,64").split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    public static void report(String name, int threads, double opsPerSecond) {
+        System.out.printf("%-40s threads=%-3d %,14.0f ops/s%n", name, threads, opsPerSecond);
+    }
+
+    // 等待期间有线程失败时立即抛出
+    private static void sleepOrFail(List<Future<Void>> workers, long millis) throws Exception {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            for (Future<Void> worker : workers) {
+                if (worker.isDone()) {
+                    worker.get();
+                }
+            }
+            Thread.sleep(Math.min(100, Math.max(1, deadline - System.currentTimeMillis())));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.wyc21.util;
+
+import com.wyc21.support.Throughput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录密码校验吞吐量（次/秒）：经有界哈希线程池校验与在调用线程上直接校验对比，并按核数折算。
+ * bcrypt 是纯计算，池线程数等于核数时吞吐量应与直接校验持平，区别在于请求线程不再被占住。
+ * 成本因子默认 10（生产环境校准的下限），可用 -Dbenchmark.bcrypt-cost 修改；运行方式见 {@link Throughput}
+ */
+class PasswordHasherBenchmark {
+
+    private static final String PASSWORD = "benchmark-password-123";
+
+    private final int cost = Integer.getInteger("benchmark.bcrypt-cost", 10);
+    private final int cores = Runtime.getRuntime().availableProcessors();
+
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        if (hasher != null) {
+            hasher.destroy();
+        }
+    }
+
+    @Test
+    void verifyOnHashPool() throws Exception {
+        hasher = new PasswordHasher();
+        ReflectionTestUtils.setField(hasher, "configuredCost", cost);
+        ReflectionTestUtils.setField(hasher, "targetMillis", 250L);
+        ReflectionTestUtils.setField(hasher, "threads", 0);
+        // 队列足够大，压测只看吞吐量，不触发拒绝
+        ReflectionTestUtils.setField(hasher, "queueCapacity", 10_000);
+        hasher.init();
+        String hashed = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> {
+                if (!hasher.verify(PASSWORD, hashed).get(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("密码校验失败");
+                }
+                return null;
+            });
+            report("bcrypt verify (hash pool)", threads, ops);
+        }
+    }
+
+    @Test
+    void verifyOnCallerThread() throws Exception {
+        String hashed = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> {
+                if (!BCrypt.checkpw(PASSWORD, hashed)) {
+                    throw new IllegalStateException("密码校验失败");
+                }
+                return null;
+            });
+            report("bcrypt verify (caller thread)", threads, ops);
+        }
+    }
+
+    private void report(String name, int threads, double ops) {
+        Throughput.report(name + " cost=" + cost, threads, ops);
+        System.out.printf("%-40s threads=%-3d %,14.1f logins/s per core%n", "", threads, ops / cores);
+    }
+}
@@ -0,0 +1,97 @@
+package com.wyc21.util;
+
+import com.wyc21.service.ex.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 密码哈希线程池有界：线程和队列都占满时立即拒绝，不排队等待
+ */
+class PasswordHasherTest {
+
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        if (hasher != null) {
+            hasher.destroy();
+        }
+    }
+
+    @Test
+    void hashAndVerifyRoundTrip() throws Exception {
+        hasher = hasher(4, 2, 10);
+
+        String hashed = hasher.hash("secret-123").get(5, TimeUnit.SECONDS);
+
+        assertThat(hashed).startsWith("$2a$04$");
+        assertThat(hasher.verify("secret-123", hashed).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(hasher.verify("wrong", hashed).get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    void malformedOrMissingHashDoesNotMatch() throws Exception {
+        hasher = hasher(4, 1, 10);
+
+        assertThat(hasher.verify("secret-123", "not-a-bcrypt-hash").get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(hasher.verify("secret-123", null).get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    void rejectsWhenWorkersAndQueueAreFull() throws Exception {
+        hasher = hasher(4, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 占住唯一的工作线程
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(hasher, "executor");
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 队列容量为1：第一个请求排队，第二个被拒绝
+        CompletableFuture<String> queued = hasher.hash("queued");
+        assertThatThrownBy(() -> hasher.hash("rejected")).isInstanceOf(TooManyRequestsException.class);
+        assertThatThrownBy(() -> hasher.verify("rejected", "$2a$04$x")).isInstanceOf(TooManyRequestsException.class);
+
+        // 工作线程空出来后，排队的请求正常完成，新请求也能再次提交
+        release.countDown();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).startsWith("$2a$04$");
+        assertThat(hasher.hash("after").get(5, TimeUnit.SECONDS)).startsWith("$2a$04$");
+    }
+
+    @Test
+    void needsRehashOnlyForLowerCost() {
+        hasher = hasher(12, 1, 10);
+
+        assertThat(hasher.needsRehash("$2a$10$abcdefghijklmnopqrstuu")).isTrue();
+        assertThat(hasher.needsRehash("$2a$12$abcdefghijklmnopqrstuu")).isFalse();
+        assertThat(hasher.needsRehash("$2a$14$abcdefghijklmnopqrstuu")).isFalse();
+        assertThat(hasher.needsRehash("plain-text")).isFalse();
+        assertThat(hasher.needsRehash(null)).isFalse();
+    }
+
+    private static PasswordHasher hasher(int cost, int threads, int queueCapacity) {
+        PasswordHasher hasher = new PasswordHasher();
+        ReflectionTestUtils.setField(hasher, "configuredCost", cost);
+        ReflectionTestUtils.setField(hasher, "targetMillis", 250L);
+        ReflectionTestUtils.setField(hasher, "threads", threads);
+        ReflectionTestUtils.setField(hasher, "queueCapacity", queueCapacity);
+        hasher.init();
+        return hasher;
+    }
+}
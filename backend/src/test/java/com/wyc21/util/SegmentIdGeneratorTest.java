@@ -0,0 +1,150 @@
+package com.wyc21.util;
+
+import com.wyc21.entity.IdAlloc;
+import com.wyc21.mapper.IdGeneratorMapper;
+import com.wyc21.service.ex.InsertException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 号段发号：多个实例共用一条 wz_id_generator 记录（内存中模拟乐观锁），并发取号不重复
+ */
+class SegmentIdGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 5_000;
+
+    private final List<SegmentIdGenerator> generators = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        generators.forEach(SegmentIdGenerator::destroy);
+    }
+
+    @Test
+    void concurrentIdsFromTwoInstancesAreUnique() throws Exception {
+        InMemoryIdGeneratorMapper mapper = new InMemoryIdGeneratorMapper();
+        // 步长很小，取号过程中会频繁切换号段并与另一个实例竞争同一条记录
+        SegmentIdGenerator first = generator(mapper, 50);
+        SegmentIdGenerator second = generator(mapper, 50);
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                SegmentIdGenerator generator = t % 2 == 0 ? first : second;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    long previous = 0;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        long id = generator.nextId();
+                        if (id <= previous) {
+                            return false;
+                        }
+                        previous = id;
+                        ids.add(id);
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).as("同一线程从同一实例取到的ID递增").isTrue();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(ids).hasSize(THREADS * IDS_PER_THREAD);
+        assertThat(ids).allMatch(id -> id > 0 && id <= mapper.currentMaxId);
+    }
+
+    @Test
+    void singleInstanceHandsOutConsecutiveIds() {
+        SegmentIdGenerator generator = generator(new InMemoryIdGeneratorMapper(), 10);
+
+        for (long expected = 1; expected <= 35; expected++) {
+            assertThat(generator.nextId()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void persistentConflictFailsWithInsertException() {
+        InMemoryIdGeneratorMapper mapper = new InMemoryIdGeneratorMapper();
+        mapper.alwaysConflict = true;
+        SegmentIdGenerator generator = generator(mapper, 10);
+
+        assertThatThrownBy(generator::nextId).isInstanceOf(InsertException.class);
+    }
+
+    private SegmentIdGenerator generator(IdGeneratorMapper mapper, int step) {
+        SegmentIdGenerator generator = new SegmentIdGenerator();
+        ReflectionTestUtils.setField(generator, "idGeneratorMapper", mapper);
+        ReflectionTestUtils.setField(generator, "idType", "order");
+        ReflectionTestUtils.setField(generator, "initialStep", step);
+        ReflectionTestUtils.setField(generator, "segmentDurationMillis", 900_000L);
+        generator.init();
+        generators.add(generator);
+        return generator;
+    }
+
+    // wz_id_generator 的一条记录，updateMaxId 按版本号做乐观锁
+    private static class InMemoryIdGeneratorMapper implements IdGeneratorMapper {
+        private volatile long currentMaxId = -1;
+        private int version;
+        private boolean alwaysConflict;
+
+        @Override
+        public Integer initIdGenerator(String idType, Long currentMaxId) {
+            return initIfAbsent(idType, currentMaxId, 0);
+        }
+
+        @Override
+        public synchronized Long getCurrentMaxId(String idType) {
+            return currentMaxId;
+        }
+
+        @Override
+        public synchronized Integer initIfAbsent(String idType, Long currentMaxId, Integer step) {
+            if (this.currentMaxId >= 0) {
+                return 0;
+            }
+            this.currentMaxId = currentMaxId;
+            this.version = 1;
+            return 1;
+        }
+
+        @Override
+        public synchronized IdAlloc findByIdType(String idType) {
+            IdAlloc alloc = new IdAlloc();
+            alloc.setIdType(idType);
+            alloc.setCurrentMaxId(currentMaxId);
+            alloc.setVersion(version);
+            return alloc;
+        }
+
+        @Override
+        public synchronized Integer updateMaxId(String idType, Long newMaxId, Integer version) {
+            if (alwaysConflict || this.version != version) {
+                return 0;
+            }
+            this.currentMaxId = newMaxId;
+            this.version++;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.wyc21.util;
+
+import com.wyc21.support.Throughput;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * 发号吞吐量：无锁 CAS 实现与在同一个生成器外加一把全局锁（相当于原来的 synchronized nextId）对比。
+ * 单个 workerId 每毫秒最多 4096 个号，超过后向未来借用，因此吞吐量上限约为每秒 409 万。
+ * 运行方式见 {@link Throughput}
+ */
+class SnowflakeIdGeneratorBenchmark {
+
+    @Test
+    void lockFree() throws Exception {
+        SnowflakeIdGenerator generator = generator();
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, generator::nextId);
+            Throughput.report("snowflake nextId (cas)", threads, ops);
+        }
+    }
+
+    @Test
+    void synchronizedBaseline() throws Exception {
+        SnowflakeIdGenerator generator = generator();
+        Object lock = new Object();
+        for (int threads : Throughput.threadCounts()) {
+            double ops = Throughput.measure(threads, () -> {
+                synchronized (lock) {
+                    return generator.nextId();
+                }
+            });
+            Throughput.report("snowflake nextId (synchronized)", threads, ops);
+        }
+    }
+
+    // 固定 workerId，不访问 Redis
+    private static SnowflakeIdGenerator generator() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        ReflectionTestUtils.setField(generator, "datacenterId", 1L);
+        ReflectionTestUtils.setField(generator, "configuredWorkerId", 1L);
+        ReflectionTestUtils.setField(generator, "workerLeaseMillis", 30_000L);
+        generator.init();
+        return generator;
+    }
+}
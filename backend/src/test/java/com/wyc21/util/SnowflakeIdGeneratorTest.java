@@ -0,0 +1,101 @@
+package com.wyc21.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 配置固定 workerId 时不访问 Redis，直接验证无锁发号在并发下的唯一性和单调性
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasingPerThread() throws Exception {
+        SnowflakeIdGenerator generator = generator(1, 3);
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    long previous = Long.MIN_VALUE;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        long id = generator.nextId();
+                        if (id <= previous) {
+                            return false;
+                        }
+                        previous = id;
+                        ids.add(id);
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).as("同一线程取到的ID递增").isTrue();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(ids).hasSize(THREADS * IDS_PER_THREAD);
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecondInsteadOfFailing() {
+        SnowflakeIdGenerator generator = generator(0, 0);
+
+        // 单线程连续取号，同一毫秒内超过 4096 个时进位到下一毫秒
+        long previous = 0;
+        for (int i = 0; i < 50_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void workerAndDatacenterBitsAreEmbedded() {
+        long id = generator(5, 17).nextId();
+
+        assertThat((id >> 12) & 0x1f).isEqualTo(17);
+        assertThat((id >> 17) & 0x1f).isEqualTo(5);
+    }
+
+    @Test
+    void differentWorkersNeverCollide() {
+        SnowflakeIdGenerator first = generator(0, 1);
+        SnowflakeIdGenerator second = generator(0, 2);
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(first.nextId());
+            ids.add(second.nextId());
+        }
+        assertThat(ids).hasSize(20_000);
+    }
+
+    private static SnowflakeIdGenerator generator(long datacenterId, long workerId) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        ReflectionTestUtils.setField(generator, "datacenterId", datacenterId);
+        ReflectionTestUtils.setField(generator, "configuredWorkerId", workerId);
+        ReflectionTestUtils.setField(generator, "workerLeaseMillis", 30_000L);
+        generator.init();
+        return generator;
+    }
+}
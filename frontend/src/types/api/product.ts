@@ -7,6 +7,7 @@ export interface Product {
   description?: string;
   category?: string;
   imageUrl: string;
+  imageSrcset?: string; // 各宽度缩略图地址
   sales?: number;
   createTime?: string;
   stock: number;
@@ -160,9 +160,8 @@ export const useUserStore = defineStore('user', {
           }
 
       
-          // 更新访问 token
-          this.accessToken = data.data;
-          localStorage.setItem('accessToken', data.data);
+          // 刷新令牌只能使用一次，同时更新访问 token 和刷新 token
+          this.setTokens(data.data);
           
         
           return true;
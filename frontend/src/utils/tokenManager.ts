@@ -102,9 +102,12 @@ export class TokenManager {
         refreshToken: this.refreshToken
       });
 
-      if (response.data?.state === 200 && response.data.data?.accessToken) {
+      if (response.data?.status === 200 && response.data.data?.accessToken) {
+        // 刷新令牌只能使用一次，同时保存新的刷新令牌
         this.accessToken = response.data.data.accessToken;
+        this.refreshToken = response.data.data.refreshToken;
         localStorage.setItem('accessToken', this.accessToken as string);
+        localStorage.setItem('refreshToken', this.refreshToken as string);
         this.setupTokenRefresh();
         return true;
       }